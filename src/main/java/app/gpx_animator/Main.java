@@ -19,6 +19,7 @@ import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.renderer.Renderer;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TilePrefetcher;
 import app.gpx_animator.ui.UIMode;
 import app.gpx_animator.ui.cli.CommandLineConfigurationFactory;
 import app.gpx_animator.ui.swing.MainFrame;
@@ -70,7 +71,7 @@ public final class Main {
             });
         } else {
             UIMode.setMode(UIMode.CLI);
-            new Renderer(configuration).render(new RenderingContext() {
+            final var renderingContext = new RenderingContext() {
                 @Override
                 public void setProgress1(final int pct, final String message) {
                     LOGGER.info("{}% {}", pct, message);
@@ -80,7 +81,14 @@ public final class Main {
                 public boolean isCancelled1() {
                     return false;
                 }
-            });
+            };
+            if (cf.getPrefetchMinZoom() != null) {
+                final var downloaded = new TilePrefetcher(configuration, cf.getPrefetchMinZoom(), cf.getPrefetchMaxZoom())
+                        .prefetch(renderingContext);
+                LOGGER.info("{} map tiles downloaded into the tile cache", downloaded);
+            } else {
+                new Renderer(configuration).render(renderingContext);
+            }
         }
     }
 }
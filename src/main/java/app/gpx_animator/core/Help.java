@@ -98,6 +98,12 @@ public final class Help {
         w.writeOptionHelp(Option.WIDTH, "width", false, cfg.getWidth()); //NON-NLS
         w.writeOptionHelp(Option.ZOOM, "zoom", false, cfg.getZoom()); //NON-NLS
         w.writeOptionHelp(Option.GPS_TIMEOUT, "milliseconds", false, cfg.getGpsTimeout()); //NON-NLS
+        w.writeOptionHelp(Option.RENDER_THREADS, "threads", false, cfg.getRenderThreads()); //NON-NLS
+        w.writeOptionHelp(Option.ENCODER_QUEUE_SIZE, "frames", false, cfg.getEncoderQueueSize()); //NON-NLS
+        w.writeOptionHelp(Option.BACKGROUND_MAP_LOOKAHEAD, "milliseconds", false, cfg.getBackgroundMapLookahead()); //NON-NLS
+        w.writeOptionHelp(Option.TMS_CONNECTIONS_PER_HOST, "connections", false, cfg.getTmsConnectionsPerHost()); //NON-NLS
+        w.writeOptionHelp(Option.BUILD_TILE_PACK, "file", false, null); //NON-NLS
+        w.writeOptionHelp(Option.PREFETCH_TILES, "zoom[-zoom]", false, null); //NON-NLS
         w.writeOptionHelp(Option.VERSION, "version", false, null); //NON-NLS
     }
 
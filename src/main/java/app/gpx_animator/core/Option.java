@@ -90,6 +90,12 @@ public enum Option {
     SPEED_UNIT("speed-unit"),
     PREVIEW_LENGTH("preview-length"),
     GPS_TIMEOUT("gps-timeout"),
+    RENDER_THREADS("render-threads"),
+    ENCODER_QUEUE_SIZE("encoder-queue-size"),
+    BACKGROUND_MAP_LOOKAHEAD("background-map-lookahead"),
+    TMS_CONNECTIONS_PER_HOST("tms-connections-per-host"),
+    BUILD_TILE_PACK("build-tile-pack"),
+    PREFETCH_TILES("prefetch-tiles"),
     VERSION("version");
 
     private static final java.util.Map<String, Option> OPTION_MAP = new HashMap<>();
@@ -55,6 +55,9 @@ public final class Configuration {
     public static final long DEFAULT_PHOTO_ANIMATION_DURATION = 700L;
     public static final Position DEFAULT_ATTRIBUTION_POSITION = Position.BOTTOM_LEFT;
     public static final long DEFAULT_GPS_TIMEOUT = 60000L;
+    public static final int DEFAULT_RENDER_THREADS = 1;
+    public static final int DEFAULT_ENCODER_QUEUE_SIZE = 8;
+    public static final int DEFAULT_TMS_CONNECTIONS_PER_HOST = 2;
 
     private int margin = DEFAULT_MARGIN;
     private Integer width;
@@ -138,6 +141,14 @@ public final class Configuration {
     @XmlTransient
     private Long previewLength;
     private long gpsTimeout = DEFAULT_GPS_TIMEOUT;
+    @XmlTransient
+    private int renderThreads = DEFAULT_RENDER_THREADS;
+    @XmlTransient
+    private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
+    @XmlTransient
+    private Long backgroundMapLookahead;
+    @XmlTransient
+    private int tmsConnectionsPerHost = DEFAULT_TMS_CONNECTIONS_PER_HOST;
 
     @XmlElementWrapper
     @XmlElement(name = "trackConfiguration") //NON-NLS
@@ -165,8 +176,8 @@ public final class Configuration {
             final Position commentPosition, final int commentMargin,
             final File photoDirectory, final Long photoTime, final Long photoAnimationDuration,
             final boolean preview, final Long previewLength,
-            final long gpsTimeout,
-            final List<TrackConfiguration> trackConfigurationList) {
+            final long gpsTimeout, final int renderThreads, final int encoderQueueSize, final Long backgroundMapLookahead,
+            final int tmsConnectionsPerHost, final List<TrackConfiguration> trackConfigurationList) {
 
         this.margin = margin;
         this.width = width;
@@ -222,6 +233,10 @@ public final class Configuration {
         this.preview = preview;
         this.previewLength = previewLength;
         this.gpsTimeout = gpsTimeout;
+        this.renderThreads = renderThreads;
+        this.encoderQueueSize = encoderQueueSize;
+        this.backgroundMapLookahead = backgroundMapLookahead;
+        this.tmsConnectionsPerHost = tmsConnectionsPerHost;
     }
 
     public static Builder createBuilder() {
@@ -440,6 +455,46 @@ public final class Configuration {
         return gpsTimeout;
     }
 
+    /**
+     * The number of threads used to render the frames. Zero means one thread
+     * per available processor.
+     *
+     * @return the number of render threads
+     */
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * The number of frames which can wait for the encoder thread. Zero
+     * encodes the frames synchronously on the rendering thread.
+     *
+     * @return the size of the encoder queue
+     */
+    public int getEncoderQueueSize() {
+        return encoderQueueSize;
+    }
+
+    /**
+     * How far ahead the background of a moving map is loaded, in
+     * milliseconds of the video. If this is set, only the parts of the map
+     * visible in the video are loaded, just before they are needed.
+     *
+     * @return the lookahead in milliseconds, <code>null</code> to load the whole map before rendering
+     */
+    public Long getBackgroundMapLookahead() {
+        return backgroundMapLookahead;
+    }
+
+    /**
+     * The maximum number of map tiles downloaded in parallel from one server.
+     *
+     * @return the number of connections per server
+     */
+    public int getTmsConnectionsPerHost() {
+        return tmsConnectionsPerHost;
+    }
+
     public List<TrackConfiguration> getTrackConfigurationList() {
         return Collections.unmodifiableList(trackConfigurationList);
     }
@@ -526,6 +581,10 @@ public final class Configuration {
         private boolean preview = false;
         private Long previewLength;
         private long gpsTimeout = DEFAULT_GPS_TIMEOUT;
+        private int renderThreads = DEFAULT_RENDER_THREADS;
+        private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
+        private Long backgroundMapLookahead;
+        private int tmsConnectionsPerHost = DEFAULT_TMS_CONNECTIONS_PER_HOST;
 
 
         public Configuration build() {
@@ -544,8 +603,8 @@ public final class Configuration {
                     commentPosition, commentMargin,
                     photoDirectory, photoTime, photoAnimationDuration,
                     preview, previewLength,
-                    gpsTimeout,
-                    Collections.unmodifiableList(trackConfigurationList)
+                    gpsTimeout, renderThreads, encoderQueueSize, backgroundMapLookahead,
+                    tmsConnectionsPerHost, Collections.unmodifiableList(trackConfigurationList)
             );
         }
 
@@ -819,6 +878,26 @@ public final class Configuration {
             this.gpsTimeout = gpsTimeout;
             return this;
         }
+
+        public Builder renderThreads(final int renderThreads) {
+            this.renderThreads = renderThreads;
+            return this;
+        }
+
+        public Builder encoderQueueSize(final int encoderQueueSize) {
+            this.encoderQueueSize = encoderQueueSize;
+            return this;
+        }
+
+        public Builder backgroundMapLookahead(final Long backgroundMapLookahead) {
+            this.backgroundMapLookahead = backgroundMapLookahead;
+            return this;
+        }
+
+        public Builder tmsConnectionsPerHost(final int tmsConnectionsPerHost) {
+            this.tmsConnectionsPerHost = tmsConnectionsPerHost;
+            return this;
+        }
     }
 
 }
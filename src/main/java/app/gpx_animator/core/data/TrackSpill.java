@@ -0,0 +1,98 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A temporary file for the columns of tracks too big for the heap. Every
+ * column is a memory mapped region of the file, so the operating system
+ * only keeps the parts of the tracks in memory which are used, like the
+ * points around the time of the frames being rendered. The file is
+ * deleted when the spill is closed, the columns must not be used after.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TrackSpill implements AutoCloseable {
+
+    private final FileChannel channel;
+    private long size;
+
+    /**
+     * Creates an empty spill.
+     *
+     * @param file the file to store the columns, deleted when the spill is closed
+     * @throws IOException if the file can't be opened
+     */
+    public TrackSpill(@NonNull final Path file) throws IOException {
+        channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * The size of all columns allocated so far.
+     *
+     * @return the size of the file in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @NonNull
+    LongBuffer allocateLongs(final int capacity) {
+        return map((long) capacity * Long.BYTES).asLongBuffer();
+    }
+
+    @NonNull
+    DoubleBuffer allocateDoubles(final int capacity) {
+        return map((long) capacity * Double.BYTES).asDoubleBuffer();
+    }
+
+    @NonNull
+    IntBuffer allocateInts(final int capacity) {
+        return map((long) capacity * Integer.BYTES).asIntBuffer();
+    }
+
+    private synchronized ByteBuffer map(final long bytes) {
+        try {
+            final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, size, bytes);
+            // the next column starts aligned to the size of the longest value
+            size += (bytes + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+            return buffer;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
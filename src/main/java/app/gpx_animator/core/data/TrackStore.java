@@ -0,0 +1,480 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data;
+
+import app.gpx_animator.core.data.gpx.GpxPoint;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The points of a track segment ordered by time, stored column by column in
+ * primitive buffers, on the heap or in a {@link TrackSpill}. The time of
+ * every point is unique. The x and y coordinates can be changed, everything
+ * else is immutable. Ranges of a store are views sharing the columns of the
+ * store they were created from.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TrackStore {
+
+    private static final int NO_COMMENT = -1;
+
+    private final LongBuffer time;
+    private final DoubleBuffer x;
+    private final DoubleBuffer y;
+    private final DoubleBuffer lat;
+    private final DoubleBuffer lon;
+    private final DoubleBuffer speed;
+    private final IntBuffer comment;
+    private final List<String> comments;
+    private final int offset;
+    private final int size;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private TrackStore(final LongBuffer time, final DoubleBuffer x, final DoubleBuffer y, final DoubleBuffer lat, final DoubleBuffer lon,
+                       @Nullable final DoubleBuffer speed, @Nullable final IntBuffer comment, final List<String> comments,
+                       final int offset, final int size) {
+        this.time = time;
+        this.x = x;
+        this.y = y;
+        this.lat = lat;
+        this.lon = lon;
+        this.speed = speed;
+        this.comment = comment;
+        this.comments = comments;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public static Builder createBuilder() {
+        return new Builder(Builder.INITIAL_CAPACITY, null);
+    }
+
+    public static Builder createBuilder(final int expectedSize) {
+        return new Builder(Math.max(1, expectedSize), null);
+    }
+
+    /**
+     * Creates a builder storing the columns in a spill instead of the heap.
+     * The columns are allocated for the expected number of points, adding
+     * more points allocates bigger columns and leaves the old ones unused
+     * in the spill. Sorting points added out of order needs 16 bytes of
+     * heap per point while the store is built.
+     *
+     * @param expectedSize the number of points which will be added
+     * @param spill the spill to store the columns in
+     * @return a new builder
+     */
+    public static Builder createBuilder(final int expectedSize, @NonNull final TrackSpill spill) {
+        return new Builder(Math.max(1, expectedSize), spill);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTime(final int index) {
+        return time.get(offset + index);
+    }
+
+    public double getX(final int index) {
+        return x.get(offset + index);
+    }
+
+    public double getY(final int index) {
+        return y.get(offset + index);
+    }
+
+    public double getLat(final int index) {
+        return lat.get(offset + index);
+    }
+
+    public double getLon(final int index) {
+        return lon.get(offset + index);
+    }
+
+    @Nullable
+    public Double getSpeed(final int index) {
+        if (speed == null) {
+            return null;
+        }
+        final var value = speed.get(offset + index);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    @Nullable
+    public String getComment(final int index) {
+        if (comment == null) {
+            return null;
+        }
+        final var commentIndex = comment.get(offset + index);
+        return commentIndex == NO_COMMENT ? null : comments.get(commentIndex);
+    }
+
+    public void setLocation(final int index, final double newX, final double newY) {
+        x.put(offset + index, newX);
+        y.put(offset + index, newY);
+    }
+
+    public long getFirstTime() {
+        return getTime(0);
+    }
+
+    public long getLastTime() {
+        return getTime(size - 1);
+    }
+
+    /**
+     * Searches the point with exactly the specified time.
+     *
+     * @param searchTime the time to search for
+     * @return the index of the point, or <code>-(insertion point) - 1</code> like {@link Arrays#binarySearch(long[], long)}
+     */
+    public int indexOf(final long searchTime) {
+        var low = 0;
+        var high = size - 1;
+        while (low <= high) {
+            final var middle = (low + high) >>> 1;
+            final var middleTime = time.get(offset + middle);
+            if (middleTime < searchTime) {
+                low = middle + 1;
+            } else if (middleTime > searchTime) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Searches the last point at or before the specified time.
+     *
+     * @param searchTime the time to search for
+     * @return the index of the point, or <code>-1</code> if there is none
+     */
+    public int floorIndex(final long searchTime) {
+        final var index = indexOf(searchTime);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Searches the first point at or after the specified time.
+     *
+     * @param searchTime the time to search for
+     * @return the index of the point, or <code>-1</code> if there is none
+     */
+    public int ceilingIndex(final long searchTime) {
+        final var index = indexOf(searchTime);
+        if (index >= 0) {
+            return index;
+        }
+        final var insertionPoint = -index - 1;
+        return insertionPoint < size ? insertionPoint : -1;
+    }
+
+    /**
+     * Creates a view of all points between the specified times (both
+     * inclusive). Changes of the locations are visible in both stores.
+     *
+     * @param fromTime the time of the first point
+     * @param toTime the time of the last point
+     * @return the points in the specified range
+     */
+    public TrackStore range(final long fromTime, final long toTime) {
+        final var from = ceilingIndex(fromTime);
+        final var to = floorIndex(toTime);
+        if (from < 0 || to < from) {
+            return new TrackStore(time, x, y, lat, lon, speed, comment, comments, offset, 0);
+        }
+        return new TrackStore(time, x, y, lat, lon, speed, comment, comments, offset + from, to - from + 1);
+    }
+
+    /**
+     * Creates a point object for the plugins.
+     *
+     * @param index the index of the point
+     * @return a new point object
+     */
+    public GpxPoint getPoint(final int index) {
+        final var pointTime = getTime(index);
+        final var pointSpeed = getSpeed(index);
+        final var latLon = new LatLon(getLat(index), getLon(index), pointTime, pointSpeed, getComment(index));
+        return new GpxPoint(getX(index), getY(index), latLon, pointTime, pointSpeed);
+    }
+
+    @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final TrackSpill spill;
+        private int capacity;
+        private LongBuffer time;
+        private DoubleBuffer x;
+        private DoubleBuffer y;
+        private DoubleBuffer lat;
+        private DoubleBuffer lon;
+        private DoubleBuffer speed;
+        private IntBuffer comment;
+        private final List<String> comments = new ArrayList<>();
+        private final Map<String, Integer> commentIndexes = new HashMap<>();
+        private int size;
+        private boolean ordered = true;
+
+        private Builder(final int capacity, @Nullable final TrackSpill spill) {
+            this.spill = spill;
+            this.capacity = capacity;
+            time = allocateLongs(capacity);
+            x = allocateDoubles(capacity);
+            y = allocateDoubles(capacity);
+            lat = allocateDoubles(capacity);
+            lon = allocateDoubles(capacity);
+        }
+
+        @SuppressWarnings("checkstyle:ParameterNumber")
+        public Builder add(final long pointTime, final double pointX, final double pointY, final double pointLat, final double pointLon,
+                           @Nullable final Double pointSpeed, @Nullable final String pointComment) {
+            return add(pointTime, pointX, pointY, pointLat, pointLon, pointSpeed != null ? pointSpeed : Double.NaN, pointComment);
+        }
+
+        /**
+         * Adds a point without boxing its speed, a point without speed has
+         * the speed {@link Double#NaN}.
+         */
+        @SuppressWarnings("checkstyle:ParameterNumber")
+        public Builder add(final long pointTime, final double pointX, final double pointY, final double pointLat, final double pointLon,
+                           final double pointSpeed, @Nullable final String pointComment) {
+            if (size == capacity) {
+                grow();
+            }
+            if (size > 0 && pointTime < time.get(size - 1)) {
+                ordered = false;
+            }
+            time.put(size, pointTime);
+            x.put(size, pointX);
+            y.put(size, pointY);
+            lat.put(size, pointLat);
+            lon.put(size, pointLon);
+            if (!Double.isNaN(pointSpeed)) {
+                speedChannel().put(size, pointSpeed);
+            } else if (speed != null) {
+                speed.put(size, Double.NaN);
+            }
+            if (pointComment != null) {
+                final var commentIndex = commentIndexes.computeIfAbsent(pointComment, key -> {
+                    comments.add(key);
+                    return comments.size() - 1;
+                });
+                commentChannel().put(size, commentIndex);
+            } else if (comment != null) {
+                comment.put(size, NO_COMMENT);
+            }
+            size++;
+            return this;
+        }
+
+        public TrackStore build() {
+            if (ordered) {
+                makeTimesUnique();
+            } else {
+                sortByUniqueTimes();
+            }
+            return new TrackStore(trim(time), trim(x), trim(y), trim(lat), trim(lon),
+                    speed == null ? null : trim(speed),
+                    comment == null ? null : trim(comment),
+                    List.copyOf(comments), 0, size);
+        }
+
+        private LongBuffer allocateLongs(final int newCapacity) {
+            return spill != null ? spill.allocateLongs(newCapacity) : LongBuffer.allocate(newCapacity);
+        }
+
+        private DoubleBuffer allocateDoubles(final int newCapacity) {
+            return spill != null ? spill.allocateDoubles(newCapacity) : DoubleBuffer.allocate(newCapacity);
+        }
+
+        private IntBuffer allocateInts(final int newCapacity) {
+            return spill != null ? spill.allocateInts(newCapacity) : IntBuffer.allocate(newCapacity);
+        }
+
+        private DoubleBuffer speedChannel() {
+            if (speed == null) {
+                speed = allocateDoubles(capacity);
+                for (var i = 0; i < size; i++) {
+                    speed.put(i, Double.NaN);
+                }
+            }
+            return speed;
+        }
+
+        private IntBuffer commentChannel() {
+            if (comment == null) {
+                comment = allocateInts(capacity);
+                for (var i = 0; i < size; i++) {
+                    comment.put(i, NO_COMMENT);
+                }
+            }
+            return comment;
+        }
+
+        private void grow() {
+            capacity *= 2;
+            time = allocateLongs(capacity).put(0, time, 0, size);
+            x = allocateDoubles(capacity).put(0, x, 0, size);
+            y = allocateDoubles(capacity).put(0, y, 0, size);
+            lat = allocateDoubles(capacity).put(0, lat, 0, size);
+            lon = allocateDoubles(capacity).put(0, lon, 0, size);
+            if (speed != null) {
+                speed = allocateDoubles(capacity).put(0, speed, 0, size);
+            }
+            if (comment != null) {
+                comment = allocateInts(capacity).put(0, comment, 0, size);
+            }
+        }
+
+        /**
+         * Points with the same time are moved to the next free millisecond,
+         * so every point keeps a unique time. For points added in order, the
+         * next free millisecond is always right after the previous point.
+         */
+        private void makeTimesUnique() {
+            for (var i = 1; i < size; i++) {
+                time.put(i, Math.max(time.get(i), time.get(i - 1) + 1));
+            }
+        }
+
+        /**
+         * Points added out of order get the first free time at or after
+         * their own time in the order they were added, then all points are
+         * sorted by these times. The free times used are the sorted times
+         * moved to the next free millisecond, for any order of the points,
+         * so every point takes the first of these slots at or after its own
+         * time which is still free. The columns are sorted in place.
+         */
+        private void sortByUniqueTimes() {
+            final var slots = new long[size];
+            for (var i = 0; i < size; i++) {
+                slots[i] = time.get(i);
+            }
+            Arrays.sort(slots);
+            for (var i = 1; i < size; i++) {
+                slots[i] = Math.max(slots[i], slots[i - 1] + 1);
+            }
+
+            // the next slot which may be free, the last entry marks the end
+            final var nextFree = new int[size + 1];
+            for (var i = 0; i <= size; i++) {
+                nextFree[i] = i;
+            }
+            final var order = new int[size];
+            for (var i = 0; i < size; i++) {
+                final var first = Arrays.binarySearch(slots, time.get(i));
+                final var slot = findFree(nextFree, first >= 0 ? first : -first - 1);
+                order[slot] = i;
+                nextFree[slot] = slot + 1;
+            }
+
+            for (var i = 0; i < size; i++) {
+                time.put(i, slots[i]);
+            }
+            final var moved = new BitSet(size);
+            permute(x, order, moved);
+            permute(y, order, moved);
+            permute(lat, order, moved);
+            permute(lon, order, moved);
+            if (speed != null) {
+                permute(speed, order, moved);
+            }
+            if (comment != null) {
+                permute(comment, order, moved);
+            }
+        }
+
+        private static int findFree(@NonNull final int[] nextFree, final int slot) {
+            var free = slot;
+            while (nextFree[free] != free) {
+                nextFree[free] = nextFree[nextFree[free]];
+                free = nextFree[free];
+            }
+            return free;
+        }
+
+        /**
+         * Moves the value at <code>order[i]</code> to <code>i</code>, following
+         * the cycles of the permutation.
+         */
+        private void permute(@NonNull final DoubleBuffer values, @NonNull final int[] order, @NonNull final BitSet moved) {
+            moved.clear();
+            for (var start = moved.nextClearBit(0); start < size; start = moved.nextClearBit(start + 1)) {
+                final var first = values.get(start);
+                var target = start;
+                while (order[target] != start) {
+                    values.put(target, values.get(order[target]));
+                    moved.set(target);
+                    target = order[target];
+                }
+                values.put(target, first);
+                moved.set(target);
+            }
+        }
+
+        private void permute(@NonNull final IntBuffer values, @NonNull final int[] order, @NonNull final BitSet moved) {
+            moved.clear();
+            for (var start = moved.nextClearBit(0); start < size; start = moved.nextClearBit(start + 1)) {
+                final var first = values.get(start);
+                var target = start;
+                while (order[target] != start) {
+                    values.put(target, values.get(order[target]));
+                    moved.set(target);
+                    target = order[target];
+                }
+                values.put(target, first);
+                moved.set(target);
+            }
+        }
+
+        /**
+         * The columns in a spill are used as they are, the columns on the
+         * heap are copied to release the capacity reserved for more points.
+         */
+        private LongBuffer trim(@NonNull final LongBuffer values) {
+            return spill != null ? values.slice(0, size) : LongBuffer.allocate(size).put(0, values, 0, size);
+        }
+
+        private DoubleBuffer trim(@NonNull final DoubleBuffer values) {
+            return spill != null ? values.slice(0, size) : DoubleBuffer.allocate(size).put(0, values, 0, size);
+        }
+
+        private IntBuffer trim(@NonNull final IntBuffer values) {
+            return spill != null ? values.slice(0, size) : IntBuffer.allocate(size).put(0, values, 0, size);
+        }
+    }
+
+}
@@ -16,13 +16,10 @@
 package app.gpx_animator.core.data.gpx;
 
 import app.gpx_animator.core.UserException;
-import app.gpx_animator.core.data.LatLon;
-import app.gpx_animator.core.data.Waypoint;
 import app.gpx_animator.core.preferences.Preferences;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
-import java.util.Collections;
-
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,12 +30,8 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.ResourceBundle;
 
-import static app.gpx_animator.core.util.Utils.isEqual;
-
 @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
 public final class GpxContentHandler extends DefaultHandler {
 
@@ -57,70 +50,156 @@ public final class GpxContentHandler extends DefaultHandler {
 
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
-    private final List<List<LatLon>> timePointListList = new ArrayList<>();
-    private final List<LatLon> waypointList = new ArrayList<>();
-    private List<LatLon> timePointList;
-    private StringBuilder sb;
+    private final TrackPointConsumer trackPointConsumer;
+    private final TrackBuffer trackPoints;
+    private final TrackBuffer waypoints;
+    // the text of the element being read, one builder is reused for all elements
+    private final StringBuilder text = new StringBuilder();
+    private boolean readingText;
     private long time = Long.MIN_VALUE;
-    private Double speed = null;
+    private float speed = Float.NaN;
     private double lat;
     private double lon;
     private String name;
     private String cmt;
 
 
+    public GpxContentHandler() {
+        this(new TrackBuffer(), new TrackBuffer());
+    }
+
+    /**
+     * Creates a handler passing the track points to a consumer instead of
+     * keeping them, only the waypoints are kept.
+     *
+     * @param trackPointConsumer the consumer of the track points
+     */
+    public GpxContentHandler(@NonNull final TrackPointConsumer trackPointConsumer) {
+        super();
+        this.trackPointConsumer = trackPointConsumer;
+        this.trackPoints = new TrackBuffer();
+        this.waypoints = new TrackBuffer();
+    }
+
+    GpxContentHandler(@NonNull final TrackBuffer trackPoints, @NonNull final TrackBuffer waypoints) {
+        super();
+        this.trackPointConsumer = trackPoints;
+        this.trackPoints = trackPoints;
+        this.waypoints = waypoints;
+    }
+
+
     @Override
     public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
-        if (isEqual(ELEM_TRKSEG, qName)) {
-            timePointList = new ArrayList<>();
-        } else if (isEqual(ELEM_TRKPT, qName) || isEqual(ELEM_WPT, qName)) {
-            lat = Double.parseDouble(attributes.getValue(ATTR_LAT));
-            lon = Double.parseDouble(attributes.getValue(ATTR_LON));
-        } else if (isEqual(ELEM_TIME, qName)
-                || isEqual(ELEM_SPEED, qName)
-                || isEqual(ELEM_NAME, qName)
-                || isEqual(ELEM_CMT, qName)) {
-            sb = new StringBuilder();
+        startElement(qName, attributes.getValue(ATTR_LAT), attributes.getValue(ATTR_LON));
+    }
+
+    /**
+     * Handles the start of an element, independent of the XML parser.
+     *
+     * @param elementName the qualified name of the element
+     * @param latValue the value of the latitude attribute, only used for points
+     * @param lonValue the value of the longitude attribute, only used for points
+     */
+    void startElement(@NonNull final String elementName, @Nullable final String latValue, @Nullable final String lonValue) {
+        switch (elementName) {
+            case ELEM_TRKPT, ELEM_WPT -> {
+                lat = Double.parseDouble(latValue);
+                lon = Double.parseDouble(lonValue);
+            }
+            case ELEM_TIME, ELEM_SPEED, ELEM_NAME, ELEM_CMT -> {
+                text.setLength(0);
+                readingText = true;
+            }
+            default -> { }
         }
     }
 
 
     @Override
     public void characters(final char[] ch, final int start, final int length) {
-        if (sb != null) {
-            sb.append(ch, start, length);
+        if (readingText) {
+            text.append(ch, start, length);
         }
     }
 
 
     @Override
-    @SuppressWarnings("PMD.NullAssignment") // XML parsing ending elements, it's okay here
+    public void endDocument() {
+        trackPoints.trimToSize();
+        waypoints.trimToSize();
+    }
+
+
+    @Override
     public void endElement(final String uri, final String localName, final String qName) {
-        if (isEqual(ELEM_TRKSEG, qName)) {
-            timePointListList.add(timePointList);
-            timePointList = null;
-        } else if (isEqual(ELEM_TRKPT, qName)) {
-            timePointList.add(new LatLon(lat, lon, time, speed, cmt));
-            time = Long.MIN_VALUE;
-            speed = null;
-            cmt = null;
-        } else if (isEqual(ELEM_WPT, qName)) {
-            waypointList.add(new Waypoint(lat, lon, time, name));
-        } else if (isEqual(ELEM_TIME, qName)) {
-            final var dateTime = parseDateTime(sb.toString());
-            time = dateTime != null ? dateTime.toInstant().toEpochMilli() : 0;
-            sb = null;
-        } else if (isEqual(ELEM_SPEED, qName)) {
-            if (!sb.isEmpty()) {
-                speed = Double.parseDouble(sb.toString());
+        endElement(qName);
+    }
+
+    /**
+     * Handles the end of an element, independent of the XML parser.
+     *
+     * @param elementName the qualified name of the element
+     */
+    @SuppressWarnings("PMD.NullAssignment") // XML parsing ending elements, it's okay here
+    void endElement(@NonNull final String elementName) {
+        switch (elementName) {
+            case ELEM_TRKSEG -> endSegment();
+            case ELEM_TRKPT -> {
+                addPoint();
+                time = Long.MIN_VALUE;
+                speed = Float.NaN;
+                cmt = null;
+            }
+            case ELEM_WPT -> waypoints.add(lat, lon, time, Float.NaN, name, null);
+            case ELEM_TIME -> {
+                time = parseTime();
+                readingText = false;
+            }
+            case ELEM_SPEED -> {
+                if (!text.isEmpty()) {
+                    speed = Float.parseFloat(text.toString());
+                }
+                readingText = false;
+            }
+            case ELEM_NAME -> {
+                name = text.toString();
+                readingText = false;
+            }
+            case ELEM_CMT -> {
+                cmt = text.toString();
+                readingText = false;
             }
-        } else if (isEqual(ELEM_NAME, qName)) {
-            name = sb.toString();
-            sb = null;
-        } else if (isEqual(ELEM_CMT, qName)) {
-            cmt = sb.toString();
-            sb = null;
+            default -> { }
+        }
+    }
+
+
+    private void addPoint() {
+        try {
+            trackPointConsumer.addPoint(lat, lon, time, speed, cmt);
+        } catch (final UserException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private void endSegment() {
+        try {
+            trackPointConsumer.endSegment();
+        } catch (final UserException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private long parseTime() {
+        final var parsed = TimestampParser.parse(text);
+        if (parsed != TimestampParser.UNSUPPORTED) {
+            return parsed;
         }
+        final var dateTime = parseDateTime(text.toString());
+        return dateTime != null ? dateTime.toInstant().toEpochMilli() : 0;
     }
 
 
@@ -130,26 +209,34 @@ public final class GpxContentHandler extends DefaultHandler {
         }
 
         try {
-            return ZonedDateTime.parse(sb.toString());
+            return ZonedDateTime.parse(dateTimeString);
         } catch (final DateTimeParseException ignored) { }
 
         try {
-            return LocalDateTime.parse(sb.toString()).atZone(ZoneId.systemDefault());
+            return LocalDateTime.parse(dateTimeString).atZone(ZoneId.systemDefault());
         } catch (final DateTimeParseException ignored) { }
 
-        LOGGER.error("Unable to parse date and time from string '{}'", sb);
+        LOGGER.error("Unable to parse date and time from string '{}'", dateTimeString);
         throw new RuntimeException(
-                new UserException(resourceBundle.getString("gpxparser.error.datetimeformat").formatted(sb)));
+                new UserException(resourceBundle.getString("gpxparser.error.datetimeformat").formatted(dateTimeString)));
     }
 
 
-    public List<List<LatLon>> getPointLists() {
-        return Collections.unmodifiableList(timePointListList);
+    /**
+     * @return the track points of all track segments, empty if they are passed to a consumer
+     */
+    @NonNull
+    public TrackBuffer getTrackPoints() {
+        return trackPoints;
     }
 
 
-    public List<LatLon> getWaypointList() {
-        return Collections.unmodifiableList(waypointList);
+    /**
+     * @return the waypoints with their names
+     */
+    @NonNull
+    public TrackBuffer getWaypoints() {
+        return waypoints;
     }
 
 }
@@ -16,19 +16,27 @@
 package app.gpx_animator.core.data.gpx;
 
 import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 import javax.xml.XMLConstants;
-
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 public final class GpxParser {
@@ -37,23 +45,26 @@ public final class GpxParser {
         throw new InstantiationException("GpxParser is a utility class and can't be instantiated!");
     }
 
-    public static void parseGpx(final File inputGpx, final GpxContentHandler dh) throws UserException {
-        final SAXParser saxParser;
-        try {
-            final var factory = SAXParserFactory.newInstance();
-            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            saxParser = factory.newSAXParser();
-            saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-        } catch (final ParserConfigurationException | SAXException e) {
-            throw new RuntimeException("can't create XML parser", e);
-        }
+    private static final String ATTR_LAT = "lat"; //NON-NLS
+    private static final String ATTR_LON = "lon"; //NON-NLS
+
+    // the factories are not thread safe, but can be reused, so every thread keeps its own
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(GpxParser::createInputFactory);
 
+    private static XMLInputFactory createInputFactory() {
+        final var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return factory;
+    }
+
+    public static void parseGpx(final File inputGpx, final GpxContentHandler dh) throws UserException {
         try {
             try (InputStream is = new FileInputStream(inputGpx)) {
                 try (var dis = decompressStream(is)) {
-                    saxParser.parse(dis, dh);
-                } catch (final SAXException e) {
+                    read(INPUT_FACTORY.get().createXMLStreamReader(dis), dh);
+                } catch (final XMLStreamException e) {
                     throw new UserException("error parsing input GPX file", e);
                 } catch (final RuntimeException e) {
                     if (e.getCause() != null && e.getCause() instanceof UserException userException) {
@@ -67,6 +78,149 @@ public final class GpxParser {
         }
     }
 
+    /**
+     * Reads the content of a GPX file from the track cache, or parses the
+     * file and stores its content in the cache.
+     */
+    @NonNull
+    private static GpxContentHandler parseGpx(@NonNull final File inputGpx, @Nullable final Path trackCacheDir) throws UserException {
+        if (trackCacheDir == null) {
+            final var gch = new GpxContentHandler();
+            parseGpx(inputGpx, gch);
+            return gch;
+        }
+        final var cache = TrackCache.of(trackCacheDir, inputGpx);
+        final var cached = cache.load();
+        if (cached != null) {
+            return cached;
+        }
+        final var gch = new GpxContentHandler();
+        parseGpx(inputGpx, gch);
+        cache.save(gch);
+        return gch;
+    }
+
+    /**
+     * Streams the content of a GPX file into the content handler. Elements
+     * with a namespace prefix are skipped, like the handler ignores them
+     * when it is used with a SAX parser.
+     */
+    private static void read(@NonNull final XMLStreamReader reader, @NonNull final GpxContentHandler dh) throws XMLStreamException {
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (hasNoPrefix(reader)) {
+                            dh.startElement(reader.getLocalName(),
+                                    reader.getAttributeValue(null, ATTR_LAT), reader.getAttributeValue(null, ATTR_LON));
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (hasNoPrefix(reader)) {
+                            dh.endElement(reader.getLocalName());
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                            dh.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    case XMLStreamConstants.END_DOCUMENT -> dh.endDocument();
+                    default -> { }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean hasNoPrefix(@NonNull final XMLStreamReader reader) {
+        final var prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty();
+    }
+
+    /**
+     * Parses several GPX files in parallel. The consumer gets the content of
+     * the files one after the other in the order of the files, on the
+     * calling thread, so the result is the same as parsing the files one by
+     * one. Unchanged files parsed before are read from the track cache, if
+     * it is used. Only a few files more than there are threads are parsed
+     * in advance, to limit the memory used by parsed files not consumed yet.
+     *
+     * @param inputGpxFiles the files to parse
+     * @param threads the maximum number of files parsed at the same time
+     * @param trackCacheDir the directory of the track cache, or null to parse every file
+     * @param consumer receives the content of every file with its index in the list
+     * @throws UserException error to be shown to the user
+     */
+    public static void parseGpx(@NonNull final List<File> inputGpxFiles, final int threads, @Nullable final Path trackCacheDir,
+                                @NonNull final GpxConsumer consumer) throws UserException {
+        final var poolSize = Math.min(threads, inputGpxFiles.size());
+        if (poolSize <= 1) {
+            for (var index = 0; index < inputGpxFiles.size(); index++) {
+                consumer.accept(index, parseGpx(inputGpxFiles.get(index), trackCacheDir));
+            }
+            return;
+        }
+
+        final var threadNumber = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            final var thread = new Thread(runnable, "gpx-parser-%d".formatted(threadNumber.incrementAndGet())); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final var inFlight = new ArrayDeque<Future<GpxContentHandler>>();
+            var next = 0;
+            for (var index = 0; index < inputGpxFiles.size(); index++) {
+                while (next < inputGpxFiles.size() && inFlight.size() < poolSize * 2) {
+                    final var inputGpx = inputGpxFiles.get(next++);
+                    inFlight.add(executor.submit(() -> parseGpx(inputGpx, trackCacheDir)));
+                }
+                consumer.accept(index, getParsedGpx(inFlight.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GpxContentHandler getParsedGpx(@NonNull final Future<GpxContentHandler> future) throws UserException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while parsing GPX files", e); // NOPMD -- internal error
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("internal error when parsing GPX file", cause); // NOPMD -- internal error
+        }
+    }
+
+    /**
+     * Estimates the size of the XML content of a GPX file. For a compressed
+     * file, this is the uncompressed size gzip stores at the end of the
+     * file, which is only correct modulo 4 GB, but at least the size of
+     * the compressed file.
+     *
+     * @param inputGpx the GPX file
+     * @return the estimated size of the XML content in bytes
+     * @throws UserException if the file can't be read
+     */
+    public static long getContentSize(@NonNull final File inputGpx) throws UserException {
+        try (var file = new RandomAccessFile(inputGpx, "r")) { //NON-NLS
+            final var length = file.length();
+            if (length < 18 || file.read() != 0x1f || file.read() != 0x8b) {
+                return length;
+            }
+            file.seek(length - 4);
+            return Math.max(length, Integer.toUnsignedLong(Integer.reverseBytes(file.readInt())));
+        } catch (final IOException e) {
+            throw new UserException("error reading input file", e);
+        }
+    }
+
     @SuppressWarnings("PMD.CloseResource") // The returned stream will be used and closed in a try-with-resources block
     public static InputStream decompressStream(final InputStream input) throws IOException {
         final var pb = new PushbackInputStream(input, 2);
@@ -76,4 +230,9 @@ public final class GpxParser {
         return signature[0] == (byte) 0x1f && signature[1] == (byte) 0x8b ? new GZIPInputStream(pb) : pb;
     }
 
+    @FunctionalInterface
+    public interface GpxConsumer {
+        void accept(int index, @NonNull GpxContentHandler gch) throws UserException;
+    }
+
 }
@@ -0,0 +1,174 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data.gpx;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Parses the timestamps of GPX files without creating objects or throwing
+ * exceptions, for the formats used by almost every GPX file: RFC 3339 date
+ * and time with a UTC designator or a numeric offset, like
+ * <code>2021-08-14T10:15:30.250Z</code> or <code>2021-08-14T12:15:30+02:00</code>,
+ * and the same without an offset in the local time zone. The result is the
+ * same as parsing the text with {@link java.time.ZonedDateTime#parse} or
+ * {@link LocalDateTime#parse}. Everything else is left to those parsers.
+ */
+final class TimestampParser {
+
+    /**
+     * Returned for texts in a format not supported by this parser.
+     */
+    static final long UNSUPPORTED = Long.MIN_VALUE;
+
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+    private static final int MAX_FRACTION_DIGITS = 9;
+    private static final int MAX_OFFSET_HOURS = 18;
+
+    private TimestampParser() throws InstantiationException {
+        throw new InstantiationException("TimestampParser is a utility class and can't be instantiated!");
+    }
+
+    /**
+     * Parses a timestamp.
+     *
+     * @param text the timestamp
+     * @return the milliseconds since the epoch or {@link #UNSUPPORTED}
+     */
+    @SuppressWarnings({ "checkstyle:CyclomaticComplexity", "checkstyle:NPathComplexity", "checkstyle:ReturnCount" })
+    static long parse(@NonNull final CharSequence text) {
+        final var length = text.length();
+        if (length < 16 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':') {
+            return UNSUPPORTED;
+        }
+        final var year = digits(text, 0, 4);
+        final var month = digits(text, 5, 2);
+        final var day = digits(text, 8, 2);
+        final var hour = digits(text, 11, 2);
+        final var minute = digits(text, 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return UNSUPPORTED;
+        }
+
+        // seconds and their fraction are optional
+        var position = 16;
+        var second = 0;
+        var nanos = 0;
+        if (position < length && text.charAt(position) == ':') {
+            second = digits(text, position + 1, 2);
+            if (second < 0 || second > 59) {
+                return UNSUPPORTED;
+            }
+            position += 3;
+            if (position < length && text.charAt(position) == '.') {
+                position++;
+                var fractionDigits = 0;
+                while (position < length && isDigit(text.charAt(position))) {
+                    if (++fractionDigits > MAX_FRACTION_DIGITS) {
+                        return UNSUPPORTED;
+                    }
+                    nanos = nanos * 10 + text.charAt(position++) - '0';
+                }
+                if (fractionDigits == 0) {
+                    return UNSUPPORTED;
+                }
+                for (var i = fractionDigits; i < MAX_FRACTION_DIGITS; i++) {
+                    nanos *= 10;
+                }
+            }
+        }
+
+        final int offsetSeconds;
+        if (position == length) {
+            // a local time, the time zone rules decide about the offset
+            return LocalDateTime.of(year, month, day, hour, minute, second, nanos)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } else if (position + 1 == length && text.charAt(position) == 'Z') {
+            offsetSeconds = 0;
+        } else if (position + 6 == length && (text.charAt(position) == '+' || text.charAt(position) == '-')
+                && text.charAt(position + 3) == ':') {
+            final var offsetHours = digits(text, position + 1, 2);
+            final var offsetMinutes = digits(text, position + 4, 2);
+            if (offsetHours < 0 || offsetHours > MAX_OFFSET_HOURS || offsetMinutes < 0 || offsetMinutes > 59
+                    || offsetHours == MAX_OFFSET_HOURS && offsetMinutes > 0) {
+                return UNSUPPORTED;
+            }
+            final var sign = text.charAt(position) == '-' ? -1 : 1;
+            offsetSeconds = sign * (offsetHours * 3_600 + offsetMinutes * 60);
+        } else {
+            return UNSUPPORTED;
+        }
+
+        final var epochSecond = toEpochDay(year, month, day) * 86_400 + hour * 3_600 + minute * 60 + second - offsetSeconds;
+        return epochSecond * 1_000 + nanos / 1_000_000;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Reads a number with a fixed count of digits.
+     *
+     * @return the number, negative if the text doesn't contain the digits
+     */
+    private static int digits(@NonNull final CharSequence text, final int start, final int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        var value = 0;
+        for (var i = start; i < start + count; i++) {
+            final var c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(final int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(final int year, final int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * The days since 1970-01-01 of a date with a year from 0 to 9999,
+     * calculated like {@link java.time.LocalDate#toEpochDay()}.
+     */
+    private static long toEpochDay(final int year, final int month, final int day) {
+        var total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data.gpx;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The points of a GPX file in the order of the file, stored column by
+ * column in primitive arrays which grow while the file is parsed, so no
+ * object is created per point. Names and comments are stored as indexes
+ * into a dictionary of the distinct strings, the columns of speeds, names
+ * and comments only exist if a point has one. Track points are split into
+ * segments, waypoints don't have segments.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TrackBuffer implements TrackPointConsumer {
+
+    static final int NO_STRING = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private double[] lat;
+    private double[] lon;
+    private long[] time;
+    private float[] speed;
+    private int[] name;
+    private int[] comment;
+    private final List<String> strings;
+    private Map<String, Integer> stringIndexes;
+    private int size;
+    private int[] segmentEnds;
+    private int segmentCount;
+
+    TrackBuffer() {
+        lat = new double[INITIAL_CAPACITY];
+        lon = new double[INITIAL_CAPACITY];
+        time = new long[INITIAL_CAPACITY];
+        strings = new ArrayList<>();
+        segmentEnds = new int[1];
+    }
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    TrackBuffer(@NonNull final double[] lat, @NonNull final double[] lon, @NonNull final long[] time, @Nullable final float[] speed,
+                @Nullable final int[] name, @Nullable final int[] comment, @NonNull final List<String> strings,
+                @NonNull final int[] segmentEnds) {
+        this.lat = lat;
+        this.lon = lon;
+        this.time = time;
+        this.speed = speed;
+        this.name = name;
+        this.comment = comment;
+        this.strings = new ArrayList<>(strings);
+        this.size = time.length;
+        this.segmentEnds = segmentEnds;
+        this.segmentCount = segmentEnds.length;
+    }
+
+    /**
+     * Adds a point to the current segment.
+     *
+     * @param pointLat     the latitude
+     * @param pointLon     the longitude
+     * @param pointTime    the time in milliseconds, or {@link Long#MIN_VALUE} if the point has none
+     * @param pointSpeed   the speed in meters per second, or {@link Float#NaN} if the point has none
+     * @param pointName    the name of the point
+     * @param pointComment the comment of the point
+     */
+    void add(final double pointLat, final double pointLon, final long pointTime, final float pointSpeed,
+             @Nullable final String pointName, @Nullable final String pointComment) {
+        if (size == time.length) {
+            grow(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        lat[size] = pointLat;
+        lon[size] = pointLon;
+        time[size] = pointTime;
+        if (!Float.isNaN(pointSpeed)) {
+            speedColumn()[size] = pointSpeed;
+        } else if (speed != null) {
+            speed[size] = Float.NaN;
+        }
+        if (pointName != null) {
+            name = stringColumn(name);
+            name[size] = getStringIndex(pointName);
+        } else if (name != null) {
+            name[size] = NO_STRING;
+        }
+        if (pointComment != null) {
+            comment = stringColumn(comment);
+            comment[size] = getStringIndex(pointComment);
+        } else if (comment != null) {
+            comment[size] = NO_STRING;
+        }
+        size++;
+    }
+
+    @Override
+    public void addPoint(final double pointLat, final double pointLon, final long pointTime, final float pointSpeed,
+                         @Nullable final String pointComment) {
+        add(pointLat, pointLon, pointTime, pointSpeed, null, pointComment);
+    }
+
+    @Override
+    public void endSegment() {
+        if (segmentCount == segmentEnds.length) {
+            segmentEnds = Arrays.copyOf(segmentEnds, segmentCount * 2);
+        }
+        segmentEnds[segmentCount++] = size;
+    }
+
+    /**
+     * Releases the capacity reserved for more points.
+     */
+    void trimToSize() {
+        if (size < time.length) {
+            grow(size);
+        }
+        segmentEnds = Arrays.copyOf(segmentEnds, segmentCount);
+        stringIndexes = null;
+    }
+
+    private float[] speedColumn() {
+        if (speed == null) {
+            speed = new float[time.length];
+            Arrays.fill(speed, 0, size, Float.NaN);
+        }
+        return speed;
+    }
+
+    private int[] stringColumn(@Nullable final int[] column) {
+        if (column == null) {
+            final var newColumn = new int[time.length];
+            Arrays.fill(newColumn, 0, size, NO_STRING);
+            return newColumn;
+        }
+        return column;
+    }
+
+    private int getStringIndex(@NonNull final String string) {
+        if (stringIndexes == null) {
+            stringIndexes = new HashMap<>();
+            for (var i = 0; i < strings.size(); i++) {
+                stringIndexes.put(strings.get(i), i);
+            }
+        }
+        return stringIndexes.computeIfAbsent(string, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    private void grow(final int capacity) {
+        lat = Arrays.copyOf(lat, capacity);
+        lon = Arrays.copyOf(lon, capacity);
+        time = Arrays.copyOf(time, capacity);
+        if (speed != null) {
+            speed = Arrays.copyOf(speed, capacity);
+        }
+        if (name != null) {
+            name = Arrays.copyOf(name, capacity);
+        }
+        if (comment != null) {
+            comment = Arrays.copyOf(comment, capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @param segment the index of the segment
+     * @return the index of the first point of the segment
+     */
+    public int getSegmentStart(final int segment) {
+        return segment == 0 ? 0 : segmentEnds[segment - 1];
+    }
+
+    /**
+     * @param segment the index of the segment
+     * @return the index after the last point of the segment
+     */
+    public int getSegmentEnd(final int segment) {
+        return segmentEnds[segment];
+    }
+
+    public double getLat(final int index) {
+        return lat[index];
+    }
+
+    public double getLon(final int index) {
+        return lon[index];
+    }
+
+    /**
+     * @param index the index of the point
+     * @return the time in milliseconds, or {@link Long#MIN_VALUE} if the point has none
+     */
+    public long getTime(final int index) {
+        return time[index];
+    }
+
+    /**
+     * @param index the index of the point
+     * @return the speed in meters per second, or {@link Float#NaN} if the point has none
+     */
+    public float getSpeed(final int index) {
+        return speed == null ? Float.NaN : speed[index];
+    }
+
+    @Nullable
+    public String getName(final int index) {
+        return getString(getNameIndex(index));
+    }
+
+    @Nullable
+    public String getComment(final int index) {
+        return getString(getCommentIndex(index));
+    }
+
+    @Nullable
+    private String getString(final int stringIndex) {
+        return stringIndex == NO_STRING ? null : strings.get(stringIndex);
+    }
+
+    boolean hasSpeeds() {
+        return speed != null;
+    }
+
+    boolean hasNames() {
+        return name != null;
+    }
+
+    boolean hasComments() {
+        return comment != null;
+    }
+
+    int getNameIndex(final int index) {
+        return name == null ? NO_STRING : name[index];
+    }
+
+    int getCommentIndex(final int index) {
+        return comment == null ? NO_STRING : comment[index];
+    }
+
+    @NonNull
+    List<String> getStrings() {
+        return Collections.unmodifiableList(strings);
+    }
+
+}
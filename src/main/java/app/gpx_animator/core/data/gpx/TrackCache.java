@@ -0,0 +1,374 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Stores the parsed content of a GPX file, so rendering the same tracks
+ * again doesn't parse the XML once more. The file name is a hash of the
+ * path of the GPX file, the entry is used as long as the size and the
+ * modification time of the GPX file are unchanged. If only the
+ * modification time changed, the content hash decides. Timestamps
+ * without an offset are parsed in the default time zone, so the entry is
+ * only used in the time zone it was parsed in. The columns are
+ * read by a memory mapping, the least recently used files are deleted
+ * when the cache grows too big.
+ *
+ * <pre>
+ * header:  int magic, int version, long size, long modified, byte[32] content hash,
+ *          int length and UTF-8 bytes of the time zone ID
+ * buffers: the track points, then the waypoints
+ * buffer:  int points, int segments, int columns (1 speed, 2 name, 4 comment), int strings,
+ *          int[segments] segment ends, double[points] lat, double[points] lon, long[points] time,
+ *          float[points] speed, int[points] name index, int[points] comment index (if the columns exist),
+ *          int length and UTF-8 bytes of every string
+ * </pre>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TrackCache {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackCache.class);
+
+    private static final String FILE_EXTENSION = ".gpxtrack"; //NON-NLS
+    private static final String HASH_ALGORITHM = "SHA-256"; //NON-NLS
+
+    private static final int MAGIC = 0x47415452; // "GATR"
+    private static final int VERSION = 3;
+    private static final int HASH_SIZE = 32;
+    private static final int MODIFIED_OFFSET = 16;
+    private static final int HEADER_SIZE = 56;
+    private static final int SPEED_COLUMN = 1;
+    private static final int NAME_COLUMN = 2;
+    private static final int COMMENT_COLUMN = 4;
+
+    private static final long MAX_CACHE_BYTES = 512L * 1024 * 1024;
+
+    private final Path file;
+    private final Path inputGpx;
+    private final long size;
+    private final long modified;
+    private final byte[] zone;
+
+    private TrackCache(@NonNull final Path file, @NonNull final Path inputGpx, final long size, final long modified) {
+        this.file = file;
+        this.inputGpx = inputGpx;
+        this.size = size;
+        this.modified = modified;
+        this.zone = ZoneId.systemDefault().getId().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the cache entry for a GPX file in its current state, which
+     * has to be read before the file is parsed.
+     *
+     * @param directory the directory of the track cache
+     * @param inputGpx  the GPX file
+     * @return the cache entry
+     */
+    @NonNull
+    static TrackCache of(@NonNull final Path directory, @NonNull final File inputGpx) {
+        final var path = inputGpx.toPath().toAbsolutePath().normalize();
+        final var hash = createDigest().digest(path.toString().getBytes(StandardCharsets.UTF_8));
+        final var file = directory.resolve(HexFormat.of().formatHex(hash).concat(FILE_EXTENSION));
+        try {
+            final var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new TrackCache(file, path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (final IOException e) {
+            // parsing the file will report the error
+            return new TrackCache(file, path, -1, -1);
+        }
+    }
+
+    @NonNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the stored content of the GPX file. The cache is only read, the
+     * stored modification time and the time of the last use are updated
+     * afterwards if possible, so a read-only cache can be used as well.
+     *
+     * @return the content of the GPX file, or null if it has to be parsed
+     */
+    @Nullable
+    GpxContentHandler load() {
+        if (size < 0) {
+            return null;
+        }
+        final GpxContentHandler gch;
+        final boolean touched;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != size) {
+                return null;
+            }
+            final var storedModified = buffer.getLong();
+            final var contentHash = new byte[HASH_SIZE];
+            buffer.get(contentHash);
+            if (!Arrays.equals(readBytes(buffer), zone)) {
+                return null;
+            }
+            // the file was touched or copied, it is still the same if the content is
+            touched = storedModified != modified;
+            if (touched && !Arrays.equals(contentHash, hash(inputGpx))) {
+                return null;
+            }
+            gch = read(buffer);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.warn("Can't read the cached track {}", file, e);
+            return null;
+        }
+
+        if (touched) {
+            updateModified();
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException e) {
+            LOGGER.debug("Can't mark the cached track {} as used", file, e);
+        }
+        LOGGER.debug("Using the cached track {} of {}", file, inputGpx);
+        return gch;
+    }
+
+    //
+    // Store the new modification time of the GPX file, so its content isn't
+    // hashed again next time. The cache may be read-only, then the hash is
+    // compared every time.
+    //
+    private void updateModified() {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, modified), MODIFIED_OFFSET);
+        } catch (final IOException e) {
+            LOGGER.debug("Can't update the cached track {}", file, e);
+        }
+    }
+
+    @NonNull
+    private static GpxContentHandler read(@NonNull final ByteBuffer buffer) {
+        final var trackPoints = readTrackBuffer(buffer);
+        final var waypoints = readTrackBuffer(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException("unexpected data at the end of the cached track");
+        }
+        return new GpxContentHandler(trackPoints, waypoints);
+    }
+
+    @NonNull
+    private static TrackBuffer readTrackBuffer(@NonNull final ByteBuffer buffer) {
+        final var pointCount = buffer.getInt();
+        final var segmentCount = buffer.getInt();
+        final var columns = buffer.getInt();
+        final var stringCount = buffer.getInt();
+
+        final var segmentEnds = readInts(buffer, segmentCount);
+        final var lats = readDoubles(buffer, pointCount);
+        final var lons = readDoubles(buffer, pointCount);
+        final var times = readLongs(buffer, pointCount);
+        final var speeds = (columns & SPEED_COLUMN) != 0 ? readFloats(buffer, pointCount) : null;
+        final var names = (columns & NAME_COLUMN) != 0 ? readInts(buffer, pointCount) : null;
+        final var comments = (columns & COMMENT_COLUMN) != 0 ? readInts(buffer, pointCount) : null;
+        final var strings = new ArrayList<String>(stringCount);
+        for (var i = 0; i < stringCount; i++) {
+            strings.add(new String(readBytes(buffer), StandardCharsets.UTF_8));
+        }
+        return new TrackBuffer(lats, lons, times, speeds, names, comments, strings, segmentEnds);
+    }
+
+    private static byte[] readBytes(@NonNull final ByteBuffer buffer) {
+        final var bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int[] readInts(@NonNull final ByteBuffer buffer, final int count) {
+        final var values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static float[] readFloats(@NonNull final ByteBuffer buffer, final int count) {
+        final var values = new float[count];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + count * Float.BYTES);
+        return values;
+    }
+
+    private static long[] readLongs(@NonNull final ByteBuffer buffer, final int count) {
+        final var values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(@NonNull final ByteBuffer buffer, final int count) {
+        final var values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Stores the parsed content of the GPX file, unless the file changed
+     * while it was parsed.
+     *
+     * @param gch the parsed content of the GPX file
+     */
+    void save(@NonNull final GpxContentHandler gch) {
+        try {
+            if (size < 0) {
+                return;
+            }
+            // the XML parser closes the file at the end of the document, so the content is hashed on its own
+            final var contentHash = hash(inputGpx);
+            final var attributes = Files.readAttributes(inputGpx, BasicFileAttributes.class);
+            if (attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified) {
+                return;
+            }
+
+            final var directory = file.getParent();
+            Files.createDirectories(directory);
+            final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); //NON-NLS
+            try {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    write(out, contentHash, gch);
+                }
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            Utils.deleteLeastRecentlyUsed(directory, FILE_EXTENSION, MAX_CACHE_BYTES);
+        } catch (final IOException e) {
+            LOGGER.warn("Can't store the track in the cache {}", file, e);
+        }
+    }
+
+    private void write(@NonNull final DataOutputStream out, @NonNull final byte[] contentHash,
+                       @NonNull final GpxContentHandler gch) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(size);
+        out.writeLong(modified);
+        out.write(contentHash);
+        out.writeInt(zone.length);
+        out.write(zone);
+        writeTrackBuffer(out, gch.getTrackPoints());
+        writeTrackBuffer(out, gch.getWaypoints());
+    }
+
+    private static void writeTrackBuffer(@NonNull final DataOutputStream out, @NonNull final TrackBuffer points) throws IOException {
+        final var pointCount = points.size();
+        final var strings = points.getStrings();
+        out.writeInt(pointCount);
+        out.writeInt(points.getSegmentCount());
+        out.writeInt((points.hasSpeeds() ? SPEED_COLUMN : 0) | (points.hasNames() ? NAME_COLUMN : 0)
+                | (points.hasComments() ? COMMENT_COLUMN : 0));
+        out.writeInt(strings.size());
+
+        for (var segment = 0; segment < points.getSegmentCount(); segment++) {
+            out.writeInt(points.getSegmentEnd(segment));
+        }
+        for (var i = 0; i < pointCount; i++) {
+            out.writeDouble(points.getLat(i));
+        }
+        for (var i = 0; i < pointCount; i++) {
+            out.writeDouble(points.getLon(i));
+        }
+        for (var i = 0; i < pointCount; i++) {
+            out.writeLong(points.getTime(i));
+        }
+        if (points.hasSpeeds()) {
+            for (var i = 0; i < pointCount; i++) {
+                out.writeFloat(points.getSpeed(i));
+            }
+        }
+        if (points.hasNames()) {
+            for (var i = 0; i < pointCount; i++) {
+                out.writeInt(points.getNameIndex(i));
+            }
+        }
+        if (points.hasComments()) {
+            for (var i = 0; i < pointCount; i++) {
+                out.writeInt(points.getCommentIndex(i));
+            }
+        }
+        for (final var string : strings) {
+            final var bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @NonNull
+    private static byte[] hash(@NonNull final Path path) throws IOException {
+        final var digest = createDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+}
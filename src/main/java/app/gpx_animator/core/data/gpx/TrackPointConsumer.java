@@ -0,0 +1,47 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Receives the track points of a GPX file while it is parsed, in the order
+ * of the file, so big files can be processed without keeping all points in
+ * memory.
+ */
+public interface TrackPointConsumer {
+
+    /**
+     * Adds a point to the current segment.
+     *
+     * @param lat     the latitude
+     * @param lon     the longitude
+     * @param time    the time in milliseconds, or {@link Long#MIN_VALUE} if the point has none
+     * @param speed   the speed in meters per second, or {@link Float#NaN} if the point has none
+     * @param comment the comment of the point
+     * @throws UserException error to be shown to the user
+     */
+    void addPoint(double lat, double lon, long time, float speed, @Nullable String comment) throws UserException;
+
+    /**
+     * Ends the current segment, the following points are added to a new one.
+     *
+     * @throws UserException error to be shown to the user
+     */
+    void endSegment() throws UserException;
+
+}
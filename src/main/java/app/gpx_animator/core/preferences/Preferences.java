@@ -40,6 +40,7 @@ public final class Preferences {
     private static final String RECENT_FILES = "recent_files"; //NON-NLS
     private static final String TILE_CACHE_DIR = "tile_cache_dir"; //NON-NLS
     private static final String TILE_CACHE_TIME_LIMIT = "tile_cache_time_limit"; //NON-NLS
+    private static final String TILE_CACHE_SIZE_LIMIT = "tile_cache_size_limit"; //NON-NLS
     private static final String TRACK_COLOR_RANDOM = "track_color_random"; //NON-NLS
     private static final String TRACK_COLOR_DEFAULT = "track_color_default"; //NON-NLS
 
@@ -110,6 +111,18 @@ public final class Preferences {
         PREFS.put(TILE_CACHE_DIR, tileCacheDir);
     }
 
+    public static String getBackgroundCacheDir() {
+        return getConfigurationDir()
+                .concat(FILE_SEPARATOR).concat("caches") //NON-NLS
+                .concat(FILE_SEPARATOR).concat("backgrounds"); //NON-NLS
+    }
+
+    public static String getTrackCacheDir() {
+        return getConfigurationDir()
+                .concat(FILE_SEPARATOR).concat("caches") //NON-NLS
+                .concat(FILE_SEPARATOR).concat("tracks"); //NON-NLS
+    }
+
     public static long getTileCacheTimeLimit() {
         return PREFS.getLong(TILE_CACHE_TIME_LIMIT,
                 (long) 24 * 60 * 60 * 1_000); // 24 hours
@@ -119,6 +132,15 @@ public final class Preferences {
         PREFS.putLong(TILE_CACHE_TIME_LIMIT, tileCacheTimeLimit);
     }
 
+    public static long getTileCacheSizeLimit() {
+        return PREFS.getLong(TILE_CACHE_SIZE_LIMIT,
+                (long) 1_024 * 1_024 * 1_024); // 1 GB
+    }
+
+    public static void setTileCacheSizeLimit(final long tileCacheSizeLimit) {
+        PREFS.putLong(TILE_CACHE_SIZE_LIMIT, tileCacheSizeLimit);
+    }
+
     public static boolean getTrackColorRandom() {
         return PREFS.getBoolean(TRACK_COLOR_RANDOM, true);
     }
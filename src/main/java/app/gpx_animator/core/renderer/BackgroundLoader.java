@@ -0,0 +1,190 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.BackgroundCache;
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.plugins.RendererPlugin;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Renders the background of the map. Without a lookahead, the whole
+ * background is rendered before the first frame, or taken from the
+ * background cache if it was rendered before. With a lookahead, the
+ * canvas is split into cells and only the cells shown by any frame are
+ * rendered, just before a frame shows them or the track is drawn on them.
+ * So a moving map only loads the background along the path of the viewport.
+ * The plugins are told about the cells the viewport reaches within the
+ * lookahead, so they can load them in advance.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class BackgroundLoader {
+
+    static final int CELL_SIZE = 256;
+
+    private final List<RendererPlugin> plugins;
+    private final Canvas canvas;
+    private final FramePlan plan;
+    private final int lookaheadFrames;
+    private final int columns;
+    private final int rows;
+    private final BitSet visible;
+    private final BitSet prefetched;
+    private final BitSet rendered;
+
+    /**
+     * Creates a background loader.
+     *
+     * @param lookaheadFrames the number of frames to prefetch the background in advance,
+     *                        negative to render the whole background at once
+     */
+    BackgroundLoader(@NonNull final List<RendererPlugin> plugins, @NonNull final Canvas canvas,
+                     @NonNull final FramePlan plan, final int lookaheadFrames) {
+        this.plugins = plugins;
+        this.canvas = canvas;
+        this.plan = plan;
+        this.lookaheadFrames = lookaheadFrames;
+        this.columns = (canvas.getWidth() + CELL_SIZE - 1) / CELL_SIZE;
+        this.rows = (canvas.getHeight() + CELL_SIZE - 1) / CELL_SIZE;
+        this.visible = new BitSet();
+        this.prefetched = new BitSet();
+        this.rendered = new BitSet();
+    }
+
+    boolean isLazy() {
+        return lookaheadFrames >= 0;
+    }
+
+    /**
+     * Renders the whole background or, if it is loaded lazily, prefetches
+     * the background of the first frames.
+     *
+     * @throws UserException error to be shown to the user
+     */
+    void start() throws UserException {
+        if (!isLazy()) {
+            final var cache = BackgroundCache.of(Path.of(Preferences.getBackgroundCacheDir()),
+                    Preferences.getTileCacheTimeLimit(), canvas, plugins);
+            if (cache == null || !cache.load(canvas)) {
+                final var startTime = System.currentTimeMillis();
+                for (final var plugin : plugins) {
+                    plugin.renderBackground(canvas);
+                }
+                if (cache != null) {
+                    cache.save(canvas, System.currentTimeMillis() - startTime);
+                }
+            }
+            return;
+        }
+
+        // nothing drawn outside of the viewports is ever shown, so the background is only needed there
+        for (var frame = 1; frame <= plan.getLastFrame(); frame++) {
+            if (!plan.isIdle(frame)) {
+                forEachCell(plan.getViewport(frame), (index, cell) -> visible.set(index));
+            }
+        }
+        for (var frame = 1; frame <= Math.min(lookaheadFrames, plan.getLastFrame()); frame++) {
+            prefetch(plan.getViewport(frame));
+        }
+    }
+
+    /**
+     * Makes sure the background of the viewport of a frame is rendered and
+     * prefetches the background of the frame at the end of the lookahead.
+     *
+     * @param frame the frame which is rendered next
+     * @throws UserException error to be shown to the user
+     */
+    void prepareFrame(final int frame) throws UserException {
+        if (!isLazy()) {
+            return;
+        }
+        if (frame + lookaheadFrames <= plan.getLastFrame()) {
+            prefetch(plan.getViewport(frame + lookaheadFrames));
+        }
+        load(plan.getViewport(frame));
+    }
+
+    /**
+     * Draws on the canvas after rendering the background below the drawing.
+     *
+     * @param painter the drawing code
+     * @return the bounds returned by the painter
+     * @throws UserException error to be shown to the user
+     */
+    Rectangle2D draw(@NonNull final Canvas.Painter painter) throws UserException {
+        if (isLazy()) {
+            load(Canvas.measure(painter));
+        }
+        return canvas.draw(painter);
+    }
+
+    private void prefetch(@NonNull final Rectangle area) throws UserException {
+        forEachCell(area, (index, cell) -> {
+            if (visible.get(index) && !prefetched.get(index)) {
+                prefetched.set(index);
+                for (final var plugin : plugins) {
+                    plugin.prefetchBackground(canvas, cell);
+                }
+            }
+        });
+    }
+
+    private void load(@Nullable final Rectangle2D area) throws UserException {
+        if (area == null || area.isEmpty()) {
+            return;
+        }
+        prefetch(area.getBounds());
+        forEachCell(area.getBounds(), (index, cell) -> {
+            if (visible.get(index) && !rendered.get(index)) {
+                rendered.set(index);
+                for (final var plugin : plugins) {
+                    plugin.renderBackground(canvas, cell);
+                }
+            }
+        });
+    }
+
+    private void forEachCell(@NonNull final Rectangle area, @NonNull final CellConsumer consumer) throws UserException {
+        final var firstColumn = Math.max(0, Math.floorDiv(area.x, CELL_SIZE));
+        final var lastColumn = Math.min(columns - 1, Math.floorDiv(area.x + area.width - 1, CELL_SIZE));
+        final var firstRow = Math.max(0, Math.floorDiv(area.y, CELL_SIZE));
+        final var lastRow = Math.min(rows - 1, Math.floorDiv(area.y + area.height - 1, CELL_SIZE));
+        for (var row = firstRow; row <= lastRow; row++) {
+            for (var column = firstColumn; column <= lastColumn; column++) {
+                final var x = column * CELL_SIZE;
+                final var y = row * CELL_SIZE;
+                consumer.accept(row * columns + column, new Rectangle(x, y,
+                        Math.min(CELL_SIZE, canvas.getWidth() - x), Math.min(CELL_SIZE, canvas.getHeight() - y)));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CellConsumer {
+        void accept(int index, @NonNull Rectangle cell) throws UserException;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of frame sized images shared by the renderer, the plugins and the
+ * frame writers, so the images don't have to be allocated for every frame.
+ * Images are pooled by their width, height and type. An acquired image
+ * contains undefined content and should be released when it is not used
+ * anymore. The pool is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class FrameBufferPool {
+
+    private static final int MAX_IDLE_BUFFERS = 16;
+
+    private final Map<Key, Deque<BufferedImage>> idleBuffers = new HashMap<>();
+
+    /**
+     * Gets an image with the specified size and type from the pool or creates
+     * a new one, if there is none available.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param type the type of the image, see {@link BufferedImage#getType()}
+     * @return an image with undefined content
+     */
+    public BufferedImage acquire(final int width, final int height, final int type) {
+        final BufferedImage buffer;
+        synchronized (idleBuffers) {
+            final var buffers = idleBuffers.get(new Key(width, height, type));
+            buffer = buffers == null ? null : buffers.pollFirst();
+        }
+        return buffer != null ? buffer : new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Gets an image from the pool containing a copy of the source image.
+     *
+     * @param source the image to copy
+     * @return a copy of the source image
+     */
+    public BufferedImage acquireCopy(@NonNull final BufferedImage source) {
+        final var buffer = acquire(source.getWidth(), source.getHeight(), source.getType());
+        Utils.copy(source, buffer);
+        return buffer;
+    }
+
+    /**
+     * Returns an image to the pool. The image must not be used anymore by the
+     * caller after releasing it.
+     *
+     * @param buffer the image which is not used anymore
+     */
+    public void release(@NonNull final BufferedImage buffer) {
+        final var key = new Key(buffer.getWidth(), buffer.getHeight(), buffer.getType());
+        synchronized (idleBuffers) {
+            final var buffers = idleBuffers.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (buffers.size() < MAX_IDLE_BUFFERS) {
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+
+    private record Key(int width, int height, int type) { }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A frame buffer which contains an area of the committed track layer of a
+ * certain revision and a transient overlay (tail, waypoints, marker, plugins)
+ * on top of it. The areas touched by the overlay are remembered as dirty
+ * rectangles, so the buffer can be restored from the {@link TrackLayer} for
+ * the next frame without copying the whole image. For a moving map, the
+ * buffer only has the size of the viewport and the area follows the marker.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class FrameLayer {
+
+    private final BufferedImage image;
+    private final List<Rectangle> dirty = new ArrayList<>();
+
+    private Rectangle area;
+    private int revision;
+
+    FrameLayer(@NonNull final BufferedImage image, @NonNull final Rectangle area, final int revision) {
+        this.image = image;
+        this.area = area;
+        this.revision = revision;
+    }
+
+    BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * The area of the track layer shown by this buffer.
+     *
+     * @return the area in the coordinates of the track layer
+     */
+    Rectangle getArea() {
+        return area;
+    }
+
+    /**
+     * Creates a graphics context to draw on the buffer in the coordinates of
+     * the track layer. Everything outside of the area is clipped.
+     *
+     * @return a new graphics context
+     */
+    Graphics2D createGraphics() {
+        final var g2 = getGraphics(image);
+        g2.translate(-area.x, -area.y);
+        g2.clipRect(area.x, area.y, area.width, area.height);
+        return g2;
+    }
+
+    int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Remembers an area which was drawn on top of the committed track layer.
+     *
+     * @param changed the area in the coordinates of the track layer, may be <code>null</code> if nothing was drawn
+     */
+    void markDirty(@Nullable final Rectangle2D changed) {
+        if (changed != null && !changed.isEmpty()) {
+            final var clipped = changed.getBounds().intersection(area);
+            if (!clipped.isEmpty()) {
+                dirty.add(clipped);
+            }
+        }
+    }
+
+    /**
+     * Remembers an area of the image which was drawn on top of the committed
+     * track layer.
+     *
+     * @param changed the area in the coordinates of the image, may be <code>null</code> if nothing was drawn
+     */
+    void markImageDirty(@Nullable final Rectangle changed) {
+        if (changed != null) {
+            markDirty(new Rectangle(changed.x + area.x, changed.y + area.y, changed.width, changed.height));
+        }
+    }
+
+    List<Rectangle> getDirty() {
+        return Collections.unmodifiableList(dirty);
+    }
+
+    void restored(@NonNull final Rectangle newArea, final int newRevision) {
+        dirty.clear();
+        area = newArea;
+        revision = newRevision;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders frames on a pool of worker threads and hands them over to a
+ * consumer in the order they were submitted. The number of frames in flight
+ * is limited by a window, so the memory needed for the frame buffers stays
+ * capped. With only one thread the frames are rendered and consumed directly
+ * on the calling thread.
+ *
+ * @param <T> the type of the rendered frames
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class FramePipeline<T> implements AutoCloseable {
+
+    private final FrameConsumer<T> consumer;
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<Future<T>> inFlight = new ArrayDeque<>();
+
+    FramePipeline(final int threads, @NonNull final FrameConsumer<T> consumer) {
+        this.consumer = consumer;
+        if (threads > 1) {
+            final var threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                final var thread = new Thread(runnable, "frame-renderer-%d".formatted(threadNumber.incrementAndGet())); //NON-NLS
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.window = threads * 2;
+        } else {
+            this.executor = null;
+            this.window = 0;
+        }
+    }
+
+    /**
+     * The maximum number of frames which are rendered but not yet consumed.
+     *
+     * @return the size of the in-flight window
+     */
+    int getWindow() {
+        return window;
+    }
+
+    void submit(@NonNull final FrameTask<T> task) throws UserException {
+        if (executor == null) {
+            consumer.accept(task.render());
+            return;
+        }
+
+        inFlight.addLast(executor.submit(task::render));
+        while (inFlight.size() > window) {
+            consumeNext();
+        }
+    }
+
+    void finish() throws UserException {
+        while (!inFlight.isEmpty()) {
+            consumeNext();
+        }
+    }
+
+    private void consumeNext() throws UserException {
+        final var future = inFlight.removeFirst();
+        final T frame;
+        try {
+            frame = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a rendered frame", e); // NOPMD -- internal error
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException("internal error when rendering a frame", cause); // NOPMD -- internal error
+        }
+        consumer.accept(frame);
+    }
+
+    /**
+     * Cancels the frames in flight and stops the worker threads. Waits for
+     * frames which are being rendered, they may still use the canvas.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            // no queued frame is started once the executor is shut down
+            executor.shutdownNow();
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+            var interrupted = false;
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface FrameTask<T> {
+        T render() throws UserException;
+    }
+
+    @FunctionalInterface
+    interface FrameConsumer<T> {
+        void accept(T frame) throws UserException;
+    }
+
+}
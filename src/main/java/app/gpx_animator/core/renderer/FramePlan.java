@@ -0,0 +1,118 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import java.awt.Rectangle;
+
+/**
+ * Holds the state of every frame which depends on the frames rendered before
+ * (skipped idle frames, the fading flashback effect and the smoothed position
+ * of the moving map). It is calculated once in frame order before rendering,
+ * so the frames itself can be rendered independently of each other.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class FramePlan {
+
+    private final int lastFrame;
+    private final int viewportWidth;
+    private final int viewportHeight;
+    private final boolean movingMap;
+
+    private final boolean[] idle;
+    private final float[] flashback;
+    private final int[] viewportX;
+    private final int[] viewportY;
+
+    FramePlan(final int lastFrame, final int viewportWidth, final int viewportHeight, final boolean movingMap) {
+        this.lastFrame = lastFrame;
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+        this.movingMap = movingMap;
+        this.idle = new boolean[lastFrame + 1];
+        this.flashback = new float[lastFrame + 1];
+        this.viewportX = new int[lastFrame + 1];
+        this.viewportY = new int[lastFrame + 1];
+    }
+
+    /**
+     * The last frame which will be rendered. This is smaller than the number
+     * of frames of the animation when rendering a preview.
+     *
+     * @return the number of the last frame
+     */
+    int getLastFrame() {
+        return lastFrame;
+    }
+
+    int getViewportWidth() {
+        return viewportWidth;
+    }
+
+    int getViewportHeight() {
+        return viewportHeight;
+    }
+
+    /**
+     * Returns <code>true</code> if the viewport is smaller than the map, so
+     * only a part of the map is visible and follows the marker.
+     *
+     * @return <code>true</code> for a moving map
+     */
+    boolean isMovingMap() {
+        return movingMap;
+    }
+
+    boolean isIdle(final int frame) {
+        return idle[frame];
+    }
+
+    void setIdle(final int frame) {
+        idle[frame] = true;
+    }
+
+    float getFlashback(final int frame) {
+        return flashback[frame];
+    }
+
+    void setFlashback(final int frame, final float value) {
+        flashback[frame] = value;
+    }
+
+    int getViewportX(final int frame) {
+        return viewportX[frame];
+    }
+
+    int getViewportY(final int frame) {
+        return viewportY[frame];
+    }
+
+    /**
+     * The visible part of the map. Without a moving map, this is the whole
+     * map.
+     *
+     * @param frame the number of the frame
+     * @return the viewport in map coordinates
+     */
+    Rectangle getViewport(final int frame) {
+        return new Rectangle(viewportX[frame], viewportY[frame], viewportWidth, viewportHeight);
+    }
+
+    void setViewport(final int frame, final int x, final int y) {
+        viewportX[frame] = x;
+        viewportY[frame] = y;
+    }
+
+}
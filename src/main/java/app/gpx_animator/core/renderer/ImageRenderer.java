@@ -17,7 +17,9 @@ package app.gpx_animator.core.renderer;
 
 import app.gpx_animator.core.data.Position;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
@@ -31,11 +33,13 @@ public abstract class ImageRenderer {
      * @param position    the position of the text on the video frame
      * @param margin      the margin from the text to the border of the video frame
      * @param targetImage the target image representing the video frame
+     * @return the area of the video frame drawn on, <code>null</code> if the image is hidden
      */
-    public void renderImage(@NonNull final BufferedImage image, @NonNull final Position position, final int margin,
+    @Nullable
+    public Rectangle renderImage(@NonNull final BufferedImage image, @NonNull final Position position, final int margin,
                             @NonNull final BufferedImage targetImage) {
         if (Position.HIDDEN.equals(position)) {
-            return;
+            return null;
         }
 
         final var imageWidth = image.getWidth();
@@ -74,6 +78,7 @@ public abstract class ImageRenderer {
             default -> throw new IllegalStateException("Unexpected position: " + position);
         }
         graphics.drawImage(image, xPosition, yPosition, imageWidth, imageHeight, null);
+        return new Rectangle(xPosition, yPosition, imageWidth, imageHeight);
     }
 
 }
@@ -18,13 +18,18 @@ package app.gpx_animator.core.renderer;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.configuration.TrackConfiguration;
-import app.gpx_animator.core.data.LatLon;
 import app.gpx_animator.core.data.TrackIcon;
-import app.gpx_animator.core.data.Waypoint;
+import app.gpx_animator.core.data.TrackSpill;
+import app.gpx_animator.core.data.TrackStore;
 import app.gpx_animator.core.data.gpx.GpxContentHandler;
 import app.gpx_animator.core.data.gpx.GpxParser;
-import app.gpx_animator.core.data.gpx.GpxPoint;
+import app.gpx_animator.core.data.gpx.TrackBuffer;
+import app.gpx_animator.core.data.gpx.TrackPointConsumer;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import app.gpx_animator.core.renderer.canvas.TiledCanvas;
+import app.gpx_animator.core.renderer.framewriter.AsyncFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FileFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.renderer.framewriter.NullFrameWriter;
@@ -32,7 +37,6 @@ import app.gpx_animator.core.renderer.framewriter.VideoFrameWriter;
 import app.gpx_animator.core.renderer.plugins.RendererPlugin;
 import app.gpx_animator.core.util.PluginUtil;
 import app.gpx_animator.core.util.RenderUtil;
-import app.gpx_animator.core.util.Utils;
 import app.gpx_animator.core.util.LinearInterpolation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
@@ -48,28 +52,36 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
-import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+import static app.gpx_animator.core.util.RenderUtil.setRenderingHints;
 import static app.gpx_animator.core.util.Utils.isEqual;
 import static java.util.Objects.requireNonNull;
 
@@ -81,11 +93,19 @@ public final class Renderer {
 
     private static final double MS = 1000d;
 
+    // additional pixels around drawn shapes covering antialiasing, when tracking dirty areas
+    private static final double DIRTY_MARGIN = 2d;
+
+    private static final Consumer<Rectangle2D> NO_DIRTY_TRACKING = area -> { };
+
+    // the maximum distance in pixels of a point to the drawn line of a track, too small to be seen
+    private static final double DRAWING_TOLERANCE = 0.1;
+
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final Configuration cfg;
 
-    private final List<List<TreeMap<Long, Point2D>>> timePointMapListList = new ArrayList<>();
+    private final List<List<TrackStore>> trackStoreListList = new ArrayList<>();
 
     private long minTime = Long.MAX_VALUE;
     private long maxTime = Long.MIN_VALUE;
@@ -94,18 +114,19 @@ public final class Renderer {
     private double minY = Double.POSITIVE_INFINITY;
     private double maxY = Double.NEGATIVE_INFINITY;
 
-    // to implement moving map smoothing
-    private final LinkedList<Point2D> recentMarkers;
-    private double recentMarkersXSum = 0.0;
-    private double recentMarkersYSum = 0.0;
-
     private double speedup;
 
     private ArrayList<LinearInterpolation> interpolators = new ArrayList<LinearInterpolation>();
 
+    private final List<SimplifiedTrack> simplifiedTracks = new ArrayList<>();
+
+    private List<TailRenderer> tailRenderers = List.of();
+
+    // the render threads move forward in time, so every thread follows the tracks with its own cursors
+    private final ThreadLocal<TrackCursors> trackCursors = ThreadLocal.withInitial(() -> new TrackCursors(interpolators));
+
     public Renderer(final Configuration cfg) throws UserException {
         this.cfg = cfg.validate();
-        this.recentMarkers = new LinkedList<>();
     }
 
     private static double lonToX(final Double lon) {
@@ -116,22 +137,14 @@ public final class Renderer {
         return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
     }
 
-    private static Color blendTailColor(final Color tailColor, final Color trackColor, final float ratio) {
-        var r = ((double) (1 - ratio)) * tailColor.getRed() + (double) ratio * trackColor.getRed();
-        var g = ((double) (1 - ratio)) * tailColor.getGreen() + (double) ratio * trackColor.getGreen();
-        var b = ((double) (1 - ratio)) * tailColor.getBlue() + (double) ratio * trackColor.getBlue();
-        double a = Math.max(tailColor.getAlpha(), trackColor.getAlpha());
-
-        return new Color((int) r, (int) g, (int) b, (int) a);
-    }
-
     @SuppressWarnings({ "checkstyle:InnerAssignment" }) // Checkstyle 8.37 can't handle the enhanced switch properly
     public void render(final RenderingContext rc) throws UserException {
         final var renderStartTime = LocalDateTime.now();
 
         final List<Long[]> spanList = new ArrayList<>();
         final var wpMap = new TreeMap<Long, Point2D>();
-        parseGPX(spanList, wpMap);
+        final var trackSpill = createTrackSpill();
+        parseGPX(spanList, wpMap, trackSpill);
 
         final var userSpecifiedWidth = cfg.getWidth() != null;
         final var width = userSpecifiedWidth ? cfg.getWidth() : 800;
@@ -140,11 +153,14 @@ public final class Renderer {
 
         calculateMinMaxValues(userSpecifiedWidth, width, scale);
 
-        timePointMapListList.forEach(timePointMapList -> timePointMapList
-                            .forEach(timePointMap -> {
-          translateCoordinatesToZeroZero(scale, timePointMap);
-          interpolators.add(new LinearInterpolation(timePointMap));
+        trackStoreListList.forEach(trackStoreList -> trackStoreList
+                            .forEach(trackStore -> {
+          translateCoordinatesToZeroZero(scale, trackStore);
+          interpolators.add(new LinearInterpolation(trackStore));
+          simplifiedTracks.add(new SimplifiedTrack(trackStore, DRAWING_TOLERANCE));
         }));
+        LOGGER.info("Drawing {} of {} track points", simplifiedTracks.stream().mapToLong(SimplifiedTrack::size).sum(),
+                trackStoreListList.stream().flatMap(List::stream).mapToLong(TrackStore::size).sum());
         translateCoordinatesToZeroZero(scale, wpMap);
 
         final var frameFilePattern = cfg.getOutput().toString();
@@ -167,25 +183,44 @@ public final class Renderer {
 
         LOGGER.info("{} x {}; {} x {}; {}", realWidth, realHeight, viewportWidth, viewportHeight, scale);
 
-        final var frameWriter = cfg.isPreview() ? new NullFrameWriter() : toImages
+        final var frameBufferPool = new FrameBufferPool();
+        final var frameWriter = cfg.isPreview() ? new NullFrameWriter() : createAsyncFrameWriter(toImages
                 ? new FileFrameWriter(frameFilePattern, ext, cfg.getFps())
-                : new VideoFrameWriter(cfg.getOutput(), cfg.getVideoCodec(), cfg.getFps(), viewportWidth, viewportHeight);
+                : new VideoFrameWriter(cfg.getOutput(), cfg.getVideoCodec(), cfg.getFps(), viewportWidth, viewportHeight), frameBufferPool);
 
-        final var bi = createBufferedImage(realWidth, realHeight, zoom);
+        List<RendererPlugin> plugins = List.of();
+        try {
+            final var canvas = createCanvas(realWidth, realHeight, viewportWidth < realWidth || viewportHeight < realHeight, zoom);
 
-        final var plugins = PluginUtil.getAvailablePlugins(cfg, frameWriter, rc);
-        final var frames = calculateSpeedupAndReturnFrames(plugins);
-        final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup, frames);
+            plugins = PluginUtil.getAvailablePlugins(cfg, frameWriter, frameBufferPool, rc);
+            final var frames = calculateSpeedupAndReturnFrames(plugins);
+            final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup, frames);
 
-        for (final var plugin : plugins) {
-            plugin.setMetadata(metadata);
-        }
+            for (final var plugin : plugins) {
+                plugin.setMetadata(metadata);
+            }
+
+            tailRenderers = cfg.getTrackConfigurationList().stream()
+                    .map(trackConfiguration -> new TailRenderer(trackConfiguration, cfg.getTailColor()))
+                    .toList();
 
-        drawBackground(plugins, bi);
-        preDrawTracks(bi, frames);
-        renderFrames(plugins, bi, realWidth, realHeight, viewportWidth, viewportHeight, frameWriter, frames, spanList, wpMap, rc, renderStartTime);
+            final var plan = createFramePlan((int) Math.min(frames, getStopAfterFrame()), spanList,
+                    realWidth, realHeight, viewportWidth, viewportHeight);
+
+            try (canvas; trackSpill) {
+                final var background = new BackgroundLoader(plugins, canvas, plan, getLookaheadFrames(plan));
+                background.start();
+                preDrawTracks(background, frames);
+                renderFrames(plugins, canvas, background, plan, frameWriter, frameBufferPool, frames, wpMap, rc, renderStartTime);
+            }
+        } catch (final UserException | RuntimeException | Error e) {
+            abort(frameWriter, e);
+            cancel(plugins, e);
+            throw e;
+        }
 
         frameWriter.close();
+        trackCursors.remove();
 
         final var renderFinishTime = LocalDateTime.now();
         final var runtimeSeconds = ChronoUnit.SECONDS.between(renderStartTime, renderFinishTime);
@@ -210,6 +245,37 @@ public final class Renderer {
         }
     }
 
+    /**
+     * Stops the frame writer after the rendering failed, without hiding the
+     * error of the rendering.
+     */
+    private static void abort(@NonNull final FrameWriter frameWriter, @NonNull final Throwable cause) {
+        try {
+            frameWriter.abort();
+        } catch (final RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Tells the plugins that the rendering failed, so they release their
+     * resources, without hiding the error of the rendering.
+     */
+    private static void cancel(@NonNull final List<RendererPlugin> plugins, @NonNull final Throwable cause) {
+        for (final var plugin : plugins) {
+            try {
+                plugin.renderingCanceled();
+            } catch (final UserException | RuntimeException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private FrameWriter createAsyncFrameWriter(@NonNull final FrameWriter frameWriter, @NonNull final FrameBufferPool frameBufferPool) {
+        final var encoderQueueSize = cfg.getEncoderQueueSize();
+        return encoderQueueSize > 0 ? new AsyncFrameWriter(frameWriter, frameBufferPool, encoderQueueSize) : frameWriter;
+    }
+
     private void calculateMinMaxValues(final boolean userSpecifiedWidth, final int width, final double scale) {
         minX -= cfg.getMargin() / scale;
         maxX += cfg.getMargin() / scale;
@@ -229,70 +295,152 @@ public final class Renderer {
         }
     }
 
-    @SuppressWarnings({ "ParameterNumber", "java:S107", "java:S3776" }) // TODO refactoring in progress
-    private void renderFrames(@NonNull final List<RendererPlugin> plugins, @NonNull final BufferedImage bi,
-                              final int realWidth, final int realHeight, final int viewportWidth, final int viewportHeight,
-                              @NonNull final FrameWriter frameWriter, final int frames,
-                              @NonNull final List<Long[]> spanList, @NonNull final TreeMap<Long, Point2D> wpMap,
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // TODO refactoring in progress
+    private void renderFrames(@NonNull final List<RendererPlugin> plugins, @NonNull final Canvas canvas,
+                              @NonNull final BackgroundLoader background, @NonNull final FramePlan plan,
+                              @NonNull final FrameWriter frameWriter, @NonNull final FrameBufferPool frameBufferPool, final int frames,
+                              @NonNull final TreeMap<Long, Point2D> wpMap,
                               @NonNull final RenderingContext rc, @NonNull final LocalDateTime renderStartTime) throws UserException {
         final var remainingTimeCalculator = new RemainingTimeCalculator(renderStartTime, frames);
-        final var stopAfterFrame = cfg.getPreviewLength() == null
-                ? cfg.isPreview() ? 1 : Long.MAX_VALUE
-                : cfg.getPreviewLength() * cfg.getFps() / 1_000;
-        BufferedImage lastRenderedFrame = null;
-        var skip = -1f;
-        for (var frame = 1; frame <= frames; frame++) {
-            if (rc.isCancelled1()) {
-                return;
-            }
+        final var trackLayer = new TrackLayer(canvas, frameBufferPool);
+        final var handOff = new FrameHandOff(plugins, rc, frameWriter, wpMap, trackLayer);
 
-            if (frame > stopAfterFrame) {
-                return;
-            }
+        try (var pipeline = new FramePipeline<>(getRenderThreads(), handOff)) {
+            for (var frame = 1; frame <= plan.getLastFrame(); frame++) {
+                if (rc.isCancelled1()) {
+                    return;
+                }
 
-            final Long time = getTime(frame);
-            skip:
-            if (cfg.isSkipIdle()) {
-                for (final var span : spanList) {
-                    if (span[0] <= time && span[1] >= time) {
-                        break skip;
-                    }
+                if (plan.isIdle(frame)) {
+                    rc.setProgress1((int) (100.0 * frame / frames),
+                            String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
+                    continue;
                 }
-                rc.setProgress1((int) (100.0 * frame / frames),
-                        String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
-                skip = 1f;
-                continue;
+
+                final var pct = (int) (100.0 * frame / frames);
+                rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"),
+                        frame, frames, remainingTimeCalculator.getSecondsLeft(frame)));
+
+                // the committed track is drawn in frame order, everything on top of it is rendered in parallel
+                background.prepareFrame(frame);
+                final var commitFrame = frame;
+                trackLayer.commit(background.draw(g2 -> paint(setRenderingHints(g2), commitFrame, 0, false)));
+                final var frameLayer = handOff.acquireFrameLayer(plan.getViewport(frame));
+                final var renderFrame = frame;
+                pipeline.submit(() -> renderFrame(frameLayer, renderFrame, plan, wpMap));
             }
+            pipeline.finish();
+        }
 
-            final var pct = (int) (100.0 * frame / frames);
-            rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"),
-                    frame, frames, remainingTimeCalculator.getSecondsLeft(frame)));
+        if (rc.isCancelled1() || frames > getStopAfterFrame()) {
+            return;
+        }
 
-            paint(bi, frame, 0, null, false);
-            final var bi2 = Utils.deepCopy(bi);
-            paint(bi2, frame, cfg.getTailDuration(), cfg.getTailColor(), false);
-            drawWaypoints(bi2, frame, wpMap);
+        keepFrame(plugins, rc, frameWriter, handOff.getLastRenderedFrameLayer(), frames, wpMap, cfg.getKeepLastFrame());
+        handOff.releaseFrameLayers();
+    }
 
-            final var marker = drawMarker(bi2, frame);
+    private RenderedFrame renderFrame(@NonNull final FrameLayer frameLayer, final int frame, @NonNull final FramePlan plan,
+                                      @NonNull final TreeMap<Long, Point2D> wpMap) throws UserException {
+        // the frame buffer only covers the viewport, everything is drawn in map coordinates
+        frameLayer.markDirty(paint(frameLayer.createGraphics(), frame, cfg.getTailDuration(), false));
+        drawWaypoints(frameLayer.createGraphics(), frame, wpMap, frameLayer::markDirty);
 
-            skip = renderFlashback(skip, bi2);
+        final var marker = drawMarker(frameLayer.createGraphics(), frame, frameLayer::markDirty);
 
-            // apply viewport over bi2 (which could be the full viewport)
-            final var viewportImage = applyViewport(bi2, marker, realWidth, realHeight, viewportWidth, viewportHeight);
+        if (renderFlashback(plan.getFlashback(frame), frameLayer.getImage())) {
+            frameLayer.markDirty(frameLayer.getArea());
+        }
 
-            for (final var plugin : plugins) {
-                plugin.renderFrame(frame, marker, viewportImage);
+        return new RenderedFrame(frame, marker, frameLayer);
+    }
+
+    private double getStopAfterFrame() {
+        return cfg.getPreviewLength() == null
+                ? cfg.isPreview() ? 1 : Long.MAX_VALUE
+                : cfg.getPreviewLength() * cfg.getFps() / 1_000;
+    }
+
+    /**
+     * The background of a moving map can be loaded lazily along the path of
+     * the viewport, prefetching the frames within the lookahead.
+     *
+     * @return the number of frames to prefetch, negative to load the whole background at once
+     */
+    private int getLookaheadFrames(@NonNull final FramePlan plan) {
+        final var lookahead = cfg.getBackgroundMapLookahead();
+        if (lookahead == null || !plan.isMovingMap()) {
+            return -1;
+        }
+        return (int) Math.ceil(lookahead * cfg.getFps() / 1_000);
+    }
+
+    private int getRenderThreads() {
+        final var renderThreads = cfg.getRenderThreads();
+        return renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    private boolean isIdle(final int frame, @NonNull final List<Long[]> spanList) {
+        if (!cfg.isSkipIdle()) {
+            return false;
+        }
+        final var time = getTime(frame);
+        for (final var span : spanList) {
+            if (span[0] <= time && span[1] >= time) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            frameWriter.addFrame(viewportImage);
+    private FramePlan createFramePlan(final int lastFrame, @NonNull final List<Long[]> spanList,
+                                      final int realWidth, final int realHeight,
+                                      final int viewportWidth, final int viewportHeight) {
+        final var movingMap = viewportHeight != realHeight || viewportWidth != realWidth;
+        final var plan = new FramePlan(Math.max(lastFrame, 0), viewportWidth, viewportHeight, movingMap);
 
-            if (frame == 1) { // NOPMD - AvoidLiteralsInIfCondition - this number never changes
-                keepFrame(plugins, rc, frameWriter, viewportImage, frame, wpMap, cfg.getKeepFirstFrame());
+        final var flashbackColor = cfg.getFlashbackColor();
+        final var flashback = flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0;
+
+        // to implement moving map smoothing
+        final var recentMarkers = new MarkerAverage(cfg.getViewportInertia());
+        var x = 0.0;
+        var y = 0.0;
+
+        var skip = -1f;
+        for (var frame = 1; frame <= lastFrame; frame++) {
+            if (isIdle(frame, spanList)) {
+                plan.setIdle(frame);
+                skip = 1f;
+                continue;
+            }
+
+            if (flashback && skip > 0f) {
+                plan.setFlashback(frame, skip);
+                skip -= 1000f / cfg.getFlashbackDuration() / cfg.getFps();
             }
 
-            lastRenderedFrame = viewportImage;
+            final var marker = movingMap ? getMarkerPosition(frame) : null;
+            if (marker != null) {
+                final var average = recentMarkers.add(marker);
+
+                // top-left (x,y) coords of viewport with boundaries protected
+                x = clampViewport(average.getX() - viewportWidth / 2.0, viewportWidth, realWidth);
+                y = clampViewport(average.getY() - viewportHeight / 2.0, viewportHeight, realHeight);
+            }
+            plan.setViewport(frame, (int) x, (int) y);
+        }
+
+        return plan;
+    }
+
+    private static double clampViewport(final double position, final int viewportSize, final int realSize) {
+        if (position < 0) {
+            return 0;
+        } else if ((position + viewportSize) > realSize) {
+            return (double) realSize - viewportSize;
         }
-        keepFrame(plugins, rc, frameWriter, lastRenderedFrame, frames, wpMap, cfg.getKeepLastFrame());
+        return position;
     }
 
     private int calculateSpeedupAndReturnFrames(@NonNull final List<RendererPlugin> plugins) throws UserException {
@@ -320,111 +468,120 @@ public final class Renderer {
         }
     }
 
-    private void preDrawTracks(@NonNull final BufferedImage bi, final int frames) {
+    private void preDrawTracks(@NonNull final BackgroundLoader background, final int frames) throws UserException {
         if (cfg.isPreDrawTrack()) {
-            paint(bi, frames, getTime(frames) - getTime(0), null, true);
+            background.draw(g2 -> paint(setRenderingHints(g2), frames, getTime(frames) - getTime(0), true));
         }
     }
 
-    private BufferedImage createBufferedImage(final int width, final int height, @Nullable final Integer zoom) throws UserException {
+    /**
+     * Creates the canvas for the map. A moving map too big for a quarter of
+     * the heap is split into tiles, which are spilled to a temporary file.
+     */
+    private Canvas createCanvas(final int width, final int height, final boolean movingMap, @Nullable final Integer zoom) throws UserException {
+        final var canvasBudget = Runtime.getRuntime().maxMemory() / 4;
+        if (movingMap && 3L * width * height > canvasBudget) {
+            final var tileBytes = 3L * TiledCanvas.TILE_SIZE * TiledCanvas.TILE_SIZE;
+            LOGGER.info("Using a tiled canvas for the map of {} x {} pixels", width, height);
+            try {
+                return new TiledCanvas(width, height, (int) (canvasBudget / tileBytes),
+                        Files.createTempFile("gpx-animator-canvas-", ".tmp")); //NON-NLS
+            } catch (final IOException e) {
+                throw new UserException(e.getMessage(), e);
+            }
+        }
         try {
-            return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            return new ImageCanvas(new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR));
         } catch (final IllegalArgumentException | NegativeArraySizeException e) {
             // these exceptions only occour when the dimension for the BufferedImage are too height
             throw new UserException(resourceBundle.getString("renderer.error.mapsize").formatted(width, height, zoom));
         }
     }
 
-    private BufferedImage applyViewport(final BufferedImage bi, final Point2D marker,
-                                        final int realWidth, final int realHeight,
-                                        final int viewportWidth, final int viewportHeight) {
-        if (viewportHeight == realHeight && viewportWidth == realWidth) {
-            return bi;
-        }
-
-        // Add most recent markers to a queue (while updating a running average
-        // of x and y coordinates). Note that this loop almost always adds just
-        // 1 element to the end of the queue, except on the first invocation, in
-        // which case it fills up the entire queue with just the first marker.
-        // This prevents jitter in the beginning of the movie
-        while (this.recentMarkers.size() < (cfg.getViewportInertia() + 1)) {
-            this.recentMarkers.add(marker);
-            recentMarkersXSum += marker.getX();
-            recentMarkersYSum += marker.getY();
-        }
-
-        while (this.recentMarkers.size() > cfg.getViewportInertia()) {
-            final var m = this.recentMarkers.removeFirst();
-            recentMarkersXSum -= m.getX();
-            recentMarkersYSum -= m.getY();
-        }
-        final var xAvg = recentMarkersXSum / this.recentMarkers.size();
-        final var yAvg = recentMarkersYSum / this.recentMarkers.size();
-
-        // top-left (x,y) coords of viewport with boundaries protected
-        var x = xAvg - viewportWidth / 2.0;
-        var y = yAvg - viewportHeight / 2.0;
-        if (x < 0) {
-            x = 0;
-        } else if ((x + viewportWidth) > realWidth) {
-            x = (double) realWidth - viewportWidth;
-        }
-
-        if (y < 0) {
-            y = 0;
-        } else if ((y + viewportHeight) > realHeight) {
-            y = (double) realHeight - viewportHeight;
-        }
-        return bi.getSubimage((int) x, (int) y, viewportWidth, viewportHeight);
-    }
-
-    private float renderFlashback(final float skip, final BufferedImage bi2) {
-        final var flashbackColor = cfg.getFlashbackColor();
-        if (skip > 0f && flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0) {
+    private boolean renderFlashback(final float flashback, final BufferedImage bi2) {
+        if (flashback > 0f) {
+            final var flashbackColor = cfg.getFlashbackColor();
             final var g2 = (Graphics2D) bi2.getGraphics();
             g2.setColor(new Color(flashbackColor.getRed(), flashbackColor.getGreen(), flashbackColor.getBlue(),
-                    (int) (flashbackColor.getAlpha() * skip)));
+                    (int) (flashbackColor.getAlpha() * flashback)));
             g2.fillRect(0, 0, bi2.getWidth(), bi2.getHeight());
-            return (float) (skip - (1000f / cfg.getFlashbackDuration() / cfg.getFps()));
+            return true;
         }
-        return skip;
+        return false;
     }
 
-    private void drawBackground(@NonNull final List<RendererPlugin> plugins, @NonNull final BufferedImage bi)
-            throws UserException {
-        for (final var plugin : plugins) {
-            plugin.renderBackground(bi);
+    /**
+     * Creates the spill for the track points, if the GPX files are too big
+     * to keep their points on the heap: the XML content of all files is
+     * bigger than half of the heap.
+     *
+     * @return the spill, or <code>null</code> to keep the track points on the heap
+     */
+    @Nullable
+    private TrackSpill createTrackSpill() throws UserException {
+        var contentSize = 0L;
+        for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
+            contentSize += GpxParser.getContentSize(trackConfiguration.getInputGpx());
+        }
+        if (contentSize <= Runtime.getRuntime().maxMemory() / 2) {
+            return null;
+        }
+        LOGGER.info("Streaming {} MB of GPX content into a temporary file", contentSize / (1024 * 1024));
+        try {
+            return new TrackSpill(Files.createTempFile("gpx-animator-tracks-", ".tmp")); //NON-NLS
+        } catch (final IOException e) {
+            throw new UserException(e.getMessage(), e);
         }
     }
 
-    private void parseGPX(final List<Long[]> spanList, final TreeMap<Long, Point2D> wpMap) throws UserException {
-        var trackIndex = -1;
-        for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
-            trackIndex++;
-
-            final var inputGpxFile = trackConfiguration.getInputGpx();
-            final var gch = new GpxContentHandler();
-            GpxParser.parseGpx(inputGpxFile, gch);
-
-            final List<TreeMap<Long, Point2D>> timePointMapList = new ArrayList<>();
-
-            final var pointLists = gch.getPointLists();
-            if (pointLists.isEmpty() || pointLists.stream().mapToInt(List::size).sum() == 0) {
-                throw new UserException(resourceBundle.getString("renderer.error.notrack").formatted(inputGpxFile));
+    private void parseGPX(final List<Long[]> spanList, final TreeMap<Long, Point2D> wpMap, @Nullable final TrackSpill trackSpill)
+            throws UserException {
+        final var trackConfigurationList = cfg.getTrackConfigurationList();
+        final var inputGpxFiles = trackConfigurationList.stream().map(TrackConfiguration::getInputGpx).toList();
+
+        if (trackSpill != null) {
+            // the files are parsed one by one, the track points are streamed into the spill without keeping them on the heap,
+            // a first pass counts the points of the segments, so the columns in the spill are allocated with their final size
+            for (var trackIndex = 0; trackIndex < inputGpxFiles.size(); trackIndex++) {
+                final var segmentCounter = new SegmentCounter();
+                GpxParser.parseGpx(inputGpxFiles.get(trackIndex), new GpxContentHandler(segmentCounter));
+                final var segmentBuilder = new SegmentBuilder(trackIndex, trackSpill, segmentCounter.getSegmentSizes());
+                final var gch = new GpxContentHandler(segmentBuilder);
+                GpxParser.parseGpx(inputGpxFiles.get(trackIndex), gch);
+                addTrack(trackIndex, segmentBuilder.getSegments(), gch.getWaypoints(), spanList, wpMap);
             }
-            for (final var latLonList : pointLists) {
-                final var timePointMap = new TreeMap<Long, Point2D>();
-                toTimePointMap(timePointMap, trackIndex, latLonList, Long.MIN_VALUE);
-                trimGpxData(timePointMap, trackConfiguration);
-                timePointMapList.add(timePointMap);
-                var oldestTimeAsDefaultForWaypoints = timePointMap.keySet().stream().min(Long::compareTo).orElse(Long.MIN_VALUE);
-                toTimePointMap(wpMap, trackIndex, gch.getWaypointList(), oldestTimeAsDefaultForWaypoints);
-                mergeConnectedSpans(spanList, timePointMap);
+            return;
+        }
+
+        // the files are parsed in parallel, but added in the order of the tracks, like parsing them one by one
+        GpxParser.parseGpx(inputGpxFiles, getRenderThreads(), Path.of(Preferences.getTrackCacheDir()), (trackIndex, gch) -> {
+            final var trackPoints = gch.getTrackPoints();
+            final List<TrackStore> segments = new ArrayList<>();
+            for (var segment = 0; segment < trackPoints.getSegmentCount(); segment++) {
+                segments.add(toTrackStore(trackIndex, trackPoints, trackPoints.getSegmentStart(segment), trackPoints.getSegmentEnd(segment)));
             }
+            addTrack(trackIndex, segments, gch.getWaypoints(), spanList, wpMap);
+        });
+    }
+
+    private void addTrack(final int trackIndex, @NonNull final List<TrackStore> segments, @NonNull final TrackBuffer waypoints,
+                          final List<Long[]> spanList, final TreeMap<Long, Point2D> wpMap) throws UserException {
+        final var trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
+        if (segments.stream().allMatch(TrackStore::isEmpty)) {
+            throw new UserException(resourceBundle.getString("renderer.error.notrack").formatted(trackConfiguration.getInputGpx()));
+        }
 
-            Collections.reverse(timePointMapList); // reversing because of last known location drawing
-            timePointMapListList.add(timePointMapList);
+        final List<TrackStore> trackStoreList = new ArrayList<>();
+        for (final var segment : segments) {
+            final var trackStore = trimGpxData(segment, trackConfiguration);
+            trackStoreList.add(trackStore);
+            var oldestTimeAsDefaultForWaypoints = trackStore.isEmpty() ? Long.MIN_VALUE : trackStore.getFirstTime();
+            toTimePointMap(wpMap, trackIndex, waypoints, oldestTimeAsDefaultForWaypoints);
+            mergeConnectedSpans(spanList, trackStore);
         }
+
+        Collections.reverse(trackStoreList); // reversing because of last known location drawing
+        trackStoreListList.add(trackStoreList);
     }
 
     private int calculateRealHeight(final double scale, final boolean toImages) {
@@ -454,13 +611,24 @@ public final class Renderer {
         }
     }
 
-    private void mergeConnectedSpans(final List<Long[]> spanList, final TreeMap<Long, Point2D> timePointMap) {
-        if (timePointMap.isEmpty()) {
+    private void translateCoordinatesToZeroZero(final double scale, final TrackStore trackStore) {
+        if (!trackStore.isEmpty()) {
+            maxTime = Math.max(maxTime, trackStore.getLastTime());
+            minTime = Math.min(minTime, trackStore.getFirstTime());
+
+            for (var i = 0; i < trackStore.size(); i++) {
+                trackStore.setLocation(i, (trackStore.getX(i) - minX) * scale, (maxY - trackStore.getY(i)) * scale);
+            }
+        }
+    }
+
+    private void mergeConnectedSpans(final List<Long[]> spanList, final TrackStore trackStore) {
+        if (trackStore.isEmpty()) {
             return;
         }
 
-        long t0 = timePointMap.firstKey();
-        var t1 = timePointMap.lastKey() + (cfg.isTailColorFadeout() ? cfg.getTailDuration() : 0);
+        long t0 = trackStore.getFirstTime();
+        var t1 = trackStore.getLastTime() + (cfg.isTailColorFadeout() ? cfg.getTailDuration() : 0);
 
         for (final var iter = spanList.iterator(); iter.hasNext();) {
             final var span = iter.next();
@@ -511,30 +679,33 @@ public final class Renderer {
                 : (128.0 * (1 << zoom)) / Math.PI;
     }
 
-    private void trimGpxData(final TreeMap<Long, Point2D> timePointMap, final TrackConfiguration trackConfiguration) {
+    private TrackStore trimGpxData(final TrackStore trackStore, final TrackConfiguration trackConfiguration) {
+        var trimmedStore = trackStore;
 
         final var trimGpxStart = trackConfiguration.getTrimGpxStart();
-        if (trimGpxStart != null && trimGpxStart > 0 && timePointMap.size() > 0) {
-            final Long skipToTime = timePointMap.firstKey() + trimGpxStart;
-            timePointMap.entrySet().removeIf(e -> e.getKey() < skipToTime);
+        if (trimGpxStart != null && trimGpxStart > 0 && !trimmedStore.isEmpty()) {
+            final var skipToTime = trimmedStore.getFirstTime() + trimGpxStart;
+            trimmedStore = trimmedStore.range(skipToTime, Long.MAX_VALUE);
         }
 
         final var trimGpxEnd = trackConfiguration.getTrimGpxEnd();
-        if (trimGpxEnd != null && trimGpxEnd > 0 && timePointMap.size() > 0) {
-            final Long skipAfterTime = timePointMap.lastKey() - trimGpxEnd;
-            timePointMap.entrySet().removeIf(e -> e.getKey() > skipAfterTime);
+        if (trimGpxEnd != null && trimGpxEnd > 0 && !trimmedStore.isEmpty()) {
+            final var skipAfterTime = trimmedStore.getLastTime() - trimGpxEnd;
+            trimmedStore = trimmedStore.range(Long.MIN_VALUE, skipAfterTime);
         }
+        return trimmedStore;
     }
 
     private void keepFrame(@NonNull final List<RendererPlugin> plugins, @NonNull final RenderingContext rc,
-                               @NonNull final FrameWriter frameWriter, @Nullable final BufferedImage bi, final int frames,
+                               @NonNull final FrameWriter frameWriter, @Nullable final FrameLayer frameLayer, final int frames,
                                @NonNull final TreeMap<Long, Point2D> wpMap, @Nullable final Long keepFrame) throws UserException {
-        if (bi != null && keepFrame != null && keepFrame > 0) {
-            drawWaypoints(bi, frames, wpMap);
-            final var marker = drawMarker(bi, frames);
+        if (frameLayer != null && keepFrame != null && keepFrame > 0) {
+            final var bi = frameLayer.getImage();
+            drawWaypoints(frameLayer.createGraphics(), frames, wpMap, NO_DIRTY_TRACKING);
+            final var marker = drawMarker(frameLayer.createGraphics(), frames, NO_DIRTY_TRACKING);
 
             for (final var plugin : plugins) {
-                plugin.renderFrame(frames, marker, bi);
+                frameLayer.markImageDirty(plugin.renderFrameRegion(frames, marker, bi));
             }
 
             final var fps = Math.round(cfg.getFps());
@@ -550,14 +721,13 @@ public final class Renderer {
         }
     }
 
-    private void drawWaypoints(final BufferedImage bi, final int frame, final TreeMap<Long, Point2D> wpMap) {
+    private void drawWaypoints(final Graphics2D g2, final int frame, final TreeMap<Long, Point2D> wpMap,
+                               final Consumer<Rectangle2D> dirty) {
         final var waypointSize = cfg.getWaypointSize();
         if (waypointSize == null || waypointSize == 0.0 || wpMap.isEmpty()) {
             return;
         }
 
-        final var g2 = getGraphics(bi);
-
         final var t2 = getTime(frame);
 
 
@@ -569,8 +739,9 @@ public final class Renderer {
                 g2.fill(marker);
                 g2.setColor(Color.black);
                 g2.draw(marker);
+                dirty.accept(grow(marker.getBounds2D(), DIRTY_MARGIN));
 
-                printText(g2, ((NamedPoint) p).getName(), (float) p.getX() + 8f, (float) p.getY() + 4f, cfg.getWaypointFont());
+                printText(g2, ((NamedPoint) p).getName(), (float) p.getX() + 8f, (float) p.getY() + 4f, cfg.getWaypointFont(), dirty);
             }
         }
     }
@@ -579,74 +750,21 @@ public final class Renderer {
         return new Ellipse2D.Double(point.getX() - size / 2.0, point.getY() - size / 2.0, size, size);
     }
 
-    private void toTimePointMap(@NonNull final TreeMap<Long, Point2D> timePointMap, final int trackIndex, @NonNull final List<LatLon> latLonList,
-                                final long defaultTimeIfMissing) throws UserException {
-        long forcedTime = 0;
-
-        final var trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
-
-        final var minLon = cfg.getMinLon();
-        final var maxLon = cfg.getMaxLon();
-        final var minLat = cfg.getMinLat();
-        final var maxLat = cfg.getMaxLat();
-
-        if (minLon != null) {
-            minX = lonToX(minLon);
-        }
-        if (maxLon != null) {
-            maxX = lonToX(maxLon);
-        }
-        if (minLat != null) {
-            minY = latToY(minLat);
-        }
-        if (maxLat != null) {
-            maxY = latToY(maxLat);
-        }
-
-        for (final var latLon : latLonList) {
-            final var x = lonToX(latLon.getLon());
-            final var y = latToY(latLon.getLat());
-
-            if (minLon == null) {
-                minX = Math.min(x, minX);
-            }
-            if (maxLat == null) {
-                minY = Math.min(y, minY);
-            }
-            if (maxLon == null) {
-                maxX = Math.max(x, maxX);
-            }
-            if (minLat == null) {
-                maxY = Math.max(y, maxY);
-            }
-
-            long time;
-            final var forcedPointInterval = trackConfiguration.getForcedPointInterval();
-            if (forcedPointInterval != null) {
-                forcedTime += forcedPointInterval;
-                time = forcedTime;
-            } else {
-                time = latLon.getTime() == Long.MIN_VALUE ? defaultTimeIfMissing : latLon.getTime();
-                if (time == Long.MIN_VALUE) {
-                    final var filename = trackConfiguration.getInputGpx().getName();
-                    throw new UserException(
-                            String.format(resourceBundle.getString("error.missingtime"), filename));
-                }
-            }
-
-            if (trackConfiguration.getTimeOffset() != null) {
-                time += trackConfiguration.getTimeOffset();
-            }
+    private TrackStore toTrackStore(final int trackIndex, @NonNull final TrackBuffer trackPoints, final int from, final int to)
+            throws UserException {
+        final var builder = TrackStore.createBuilder(to - from);
+        forEachPoint(trackIndex, trackPoints, from, to, Long.MIN_VALUE, (index, x, y, time) ->
+                builder.add(time, x, y, trackPoints.getLat(index), trackPoints.getLon(index),
+                        trackPoints.getSpeed(index), trackPoints.getComment(index)));
+        return builder.build();
+    }
 
-            final Point2D point;
-            if (latLon instanceof Waypoint waypoint) {
-                final var namedPoint = new NamedPoint();
-                namedPoint.setLocation(x, y);
-                namedPoint.setName(waypoint.getName());
-                point = namedPoint;
-            } else {
-                point = new GpxPoint(x, y, latLon, time, latLon.getSpeed());
-            }
+    private void toTimePointMap(@NonNull final TreeMap<Long, Point2D> timePointMap, final int trackIndex, @NonNull final TrackBuffer waypoints,
+                                final long defaultTimeIfMissing) throws UserException {
+        forEachPoint(trackIndex, waypoints, 0, waypoints.size(), defaultTimeIfMissing, (index, x, y, time) -> {
+            final var point = new NamedPoint();
+            point.setLocation(x, y);
+            point.setName(waypoints.getName(index));
 
             // hack to prevent overwriting existing (way)point with same time
             var freeTime = time;
@@ -654,70 +772,106 @@ public final class Renderer {
                 freeTime++;
             }
             timePointMap.put(freeTime, point);
+        });
+    }
+
+    private void forEachPoint(final int trackIndex, @NonNull final TrackBuffer points, final int from, final int to,
+                              final long defaultTimeIfMissing, @NonNull final PointConsumer consumer) throws UserException {
+        final var projection = new PointProjection(trackIndex, defaultTimeIfMissing);
+        for (var index = from; index < to; index++) {
+            final var time = projection.project(points.getLat(index), points.getLon(index), points.getTime(index));
+            consumer.accept(index, projection.x, projection.y, time);
         }
     }
 
-    private Point2D drawMarker(final BufferedImage bi, final int frame) throws UserException {
+    private Point2D drawMarker(final Graphics2D g2, final int frame, final Consumer<Rectangle2D> dirty) throws UserException {
         if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
             return null;
         }
 
         Point2D point = null;
 
-        final var g2 = getGraphics(bi);
         final var t2 = getTime(frame);
         final var trackConfigurationList = cfg.getTrackConfigurationList();
 
         var i = 0;
-        var trackIdx = 0;
-        outer:
-        for (final var timePointMapList : timePointMapListList) {
+        var firstInterpolator = 0;
+        for (final var trackStoreList : trackStoreListList) {
             final var trackConfiguration = trackConfigurationList.get(i++);
-            for (final var timePointMap : timePointMapList) {
-                final var interpolator = interpolators.get(trackIdx++);
-                final var ceilingEntry = timePointMap.ceilingEntry(t2);
-                point = interpolator.getPointAtTime(t2);
-                if (point == null) {
-                    final var floorEntry = timePointMap.floorEntry(t2);
-                    if (floorEntry == null) {
-                        continue;
-                    } else {
-                        point = floorEntry.getValue();
-                    }
-                }
+            final var position = getTrackPosition(trackStoreList, firstInterpolator, t2);
+            firstInterpolator += trackStoreList.size();
+            if (position == null) {
+                point = null;
+                continue;
+            }
+            point = position.point();
 
-                g2.setColor(ceilingEntry == null ? Color.white : trackConfiguration.getColor());
+            g2.setColor(position.finished() ? Color.white : trackConfiguration.getColor());
 
-                final var trackIcon = trackConfiguration.getTrackIcon();
-                final var trackIconFile = trackConfiguration.getInputIcon();
-                if (trackIconFile != null && trackIconFile.exists() && trackIconFile.canRead()) {
-                    try {
-                        drawIconFileOnGraphics2D(point, g2, trackIconFile, trackConfiguration.isTrackIconMirrored());
-                    } catch (final IOException e) {
-                        throw new UserException(resourceBundle.getString("renderer.error.iconfile").formatted(trackIconFile), e);
-                    }
-                } else if (trackIcon != null && !trackIcon.getKey().isEmpty()) {
-                    try {
-                        drawIconOnGraphics2D(point, g2, trackIcon, trackConfiguration.isTrackIconMirrored());
-                    } catch (final IOException e) {
-                        throw new UserException(resourceBundle.getString("renderer.error.icon"), e);
-                    }
-                } else {
-                    drawSimpleCircleOnGraphics2D(point, g2);
+            final var trackIcon = trackConfiguration.getTrackIcon();
+            final var trackIconFile = trackConfiguration.getInputIcon();
+            if (trackIconFile != null && trackIconFile.exists() && trackIconFile.canRead()) {
+                try {
+                    drawIconFileOnGraphics2D(point, g2, trackIconFile, trackConfiguration.isTrackIconMirrored(), dirty);
+                } catch (final IOException e) {
+                    throw new UserException(resourceBundle.getString("renderer.error.iconfile").formatted(trackIconFile), e);
                 }
-
-                final var label = trackConfiguration.getLabel();
-                if (!label.isEmpty()) {
-                    printText(g2, label, (float) point.getX() + 8f, (float) point.getY() + 4f, cfg.getFont());
+            } else if (trackIcon != null && !trackIcon.getKey().isEmpty()) {
+                try {
+                    drawIconOnGraphics2D(point, g2, trackIcon, trackConfiguration.isTrackIconMirrored(), dirty);
+                } catch (final IOException e) {
+                    throw new UserException(resourceBundle.getString("renderer.error.icon"), e);
                 }
+            } else {
+                drawSimpleCircleOnGraphics2D(point, g2, dirty);
+            }
 
-                continue outer; // NOPMD -- Continue the outer loop, not the inner one
+            final var label = trackConfiguration.getLabel();
+            if (!label.isEmpty()) {
+                printText(g2, label, (float) point.getX() + 8f, (float) point.getY() + 4f, cfg.getFont(), dirty);
             }
         }
         return point;
     }
 
-    private void drawSimpleCircleOnGraphics2D(final Point2D point, final Graphics2D g2) {
+    /**
+     * Calculates the position of the marker of the last track without drawing
+     * anything, so the moving map can be planned before rendering the frames.
+     */
+    private Point2D getMarkerPosition(final int frame) {
+        final var time = getTime(frame);
+
+        Point2D point = null;
+        var firstInterpolator = 0;
+        for (final var trackStoreList : trackStoreListList) {
+            final var position = getTrackPosition(trackStoreList, firstInterpolator, time);
+            firstInterpolator += trackStoreList.size();
+            point = position == null ? null : position.point();
+        }
+        return point;
+    }
+
+    private TrackPosition getTrackPosition(@NonNull final List<TrackStore> trackStoreList,
+                                           final int firstInterpolator, final long time) {
+        final var cursors = trackCursors.get();
+        var trackIdx = firstInterpolator;
+        for (final var trackStore : trackStoreList) {
+            final var cursor = cursors.getEndCursor(trackIdx++);
+            final var floorIndex = cursor.floorIndex(time);
+            if (floorIndex < 0) {
+                continue;
+            }
+            var point = cursor.getPointAtTime(time);
+            if (point == null) {
+                point = trackStore.getPoint(floorIndex);
+            }
+            final var finished = floorIndex == trackStore.size() - 1 && trackStore.getTime(floorIndex) < time;
+            return new TrackPosition(point, finished);
+        }
+        return null;
+    }
+
+    private void drawSimpleCircleOnGraphics2D(final Point2D point, final Graphics2D g2, final Consumer<Rectangle2D> dirty) {
 
         final double markerSize = cfg.getMarkerSize();
 
@@ -726,22 +880,23 @@ public final class Renderer {
         g2.fill(marker);
         g2.setColor(Color.black);
         g2.draw(marker);
+        dirty.accept(grow(marker.getBounds2D(), DIRTY_MARGIN));
     }
 
-    private void drawIconOnGraphics2D(final Point2D point, final Graphics2D g2, final TrackIcon trackIcon, final boolean mirrorTrackIcon)
-            throws IOException {
+    private void drawIconOnGraphics2D(final Point2D point, final Graphics2D g2, final TrackIcon trackIcon, final boolean mirrorTrackIcon,
+                                      final Consumer<Rectangle2D> dirty) throws IOException {
         final var trackIconImage = ImageIO.read(requireNonNull(getClass().getResource(trackIcon.getFilename())));
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
+        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon, dirty);
     }
 
-    private void drawIconFileOnGraphics2D(final Point2D point, final Graphics2D g2, final File trackIconFile, final boolean mirrorTrackIcon)
-            throws IOException {
+    private void drawIconFileOnGraphics2D(final Point2D point, final Graphics2D g2, final File trackIconFile, final boolean mirrorTrackIcon,
+                                          final Consumer<Rectangle2D> dirty) throws IOException {
         final var trackIconImage = ImageIO.read(trackIconFile);
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
+        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon, dirty);
     }
 
-    private void drawImageOnGraphics2D(final Point2D point, final Graphics2D g2, final BufferedImage trackIconImage, final boolean mirrorTrackIcon)
-            throws IOException {
+    private void drawImageOnGraphics2D(final Point2D point, final Graphics2D g2, final BufferedImage trackIconImage, final boolean mirrorTrackIcon,
+                                       final Consumer<Rectangle2D> dirty) throws IOException {
         var image = trackIconImage;
         final var at = new AffineTransform();
         at.translate((int) point.getX() + 8f, (int) point.getY() + 4f);
@@ -757,10 +912,14 @@ public final class Renderer {
             throw new IOException(e.getMessage());
         }
         g2.drawImage(image, at, null);
+        dirty.accept(grow(at.createTransformedShape(new Rectangle(0, 0, image.getWidth(), image.getHeight())).getBounds2D(), DIRTY_MARGIN));
     }
 
-    private void paint(final BufferedImage bi, final int frame, final long backTime, final Color overrideColor, final boolean isPreDrawTrack) {
-        final var g2 = getGraphics(bi);
+    /**
+     * Paints the tracks and returns the area which was painted.
+     */
+    private Rectangle2D paint(final Graphics2D g2, final int frame, final long backTime, final boolean isPreDrawTrack) {
+        Rectangle2D dirty = null;
 
         final var time = getTime(frame);
 
@@ -768,87 +927,106 @@ public final class Renderer {
 
         var i = 0;
         var trackIdx = 0;
-        for (final var timePointMapList : timePointMapListList) {
-            final var trackConfiguration = trackConfigurationList.get(i++);
-
-            for (final var timePointMap : timePointMapList) {
-                var interpolator = interpolators.get(trackIdx++);
+        final var cursors = trackCursors.get();
+        final var line = new Line2D.Double();
+        for (final var trackStoreList : trackStoreListList) {
+            final var trackConfiguration = trackConfigurationList.get(i);
+            final var tailRenderer = tailRenderers.get(i);
+            i++;
+
+            for (final var trackStore : trackStoreList) {
+                final var startCursor = cursors.getStartCursor(trackIdx);
+                final var endCursor = cursors.getEndCursor(trackIdx);
+                final var simplifiedTrack = simplifiedTracks.get(trackIdx);
+                trackIdx++;
                 final var lineWidth = isPreDrawTrack ? trackConfiguration.getPreDrawLineWidth() : trackConfiguration.getLineWidth();
-                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2.setStroke(tailRenderer.getStroke(isPreDrawTrack));
 
-                final var toTime = timePointMap.floorKey(time);
+                final var toIndex = endCursor.floorIndex(time);
 
-                if (toTime == null) {
+                if (toIndex < 0) {
                     continue;
                 }
 
-                Point2D prevPoint = null;
-
                 if (backTime == 0) {
                     final var prevTime = getTime(frame - 1);
 
-                    var intervalMap = extractInterval(timePointMap, prevTime, time, interpolator);
-                    if (intervalMap.isEmpty()) {
+                    final var interval = extractInterval(cursors, trackStore, simplifiedTrack, prevTime, time, startCursor, endCursor);
+                    if (interval.isEmpty()) {
                         continue;
                     }
 
                     g2.setPaint(trackConfiguration.getColor());
-                    for (final var entry : intervalMap.entrySet()) {
-                        if (prevPoint != null) {
-                            g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
-                        }
-                        prevPoint = entry.getValue();
+                    for (var j = 1; j < interval.size(); j++) {
+                        line.setLine(interval.getX(j - 1), interval.getY(j - 1), interval.getX(j), interval.getY(j));
+                        g2.draw(line);
+                        dirty = union(dirty, grow(line.getBounds2D(), lineWidth / 2d + DIRTY_MARGIN));
                     }
                 } else {
-                    if (!cfg.isTailColorFadeout() && toTime == maxTime) {
+                    if (!cfg.isTailColorFadeout() && trackStore.getTime(toIndex) == maxTime) {
                         continue;
                     }
-                    var intervalMap = extractInterval(timePointMap, time - backTime, time, interpolator);
-                    for (final var entry : intervalMap.entrySet()) {
-                        if (prevPoint != null) {
-                            var drawSegment = false;
-                            if (isPreDrawTrack) {
-                                g2.setColor(trackConfiguration.getPreDrawTrackColor());
-                                drawSegment = true;
-                            } else {
-                                final var ratio = (backTime - time + entry.getKey()) * 1f / backTime;
-                                if (ratio > 0) {
-                                    g2.setPaint(blendTailColor(trackConfiguration.getColor(), overrideColor, ratio));
-                                    drawSegment = true;
-                                }
-                            }
-
-                            if (drawSegment) {
-                                g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
-                            }
-                        }
-                        prevPoint = entry.getValue();
+                    final var bounds = tailRenderer.draw(g2, trackStore, simplifiedTrack, startCursor, endCursor, time - backTime, time,
+                            isPreDrawTrack, cursors.getPath(), cursors.getLocation());
+                    if (bounds != null) {
+                        dirty = union(dirty, grow(bounds, lineWidth / 2d + DIRTY_MARGIN));
                     }
                 }
             }
         }
+        return dirty;
+    }
+
+    private static Rectangle2D grow(@NonNull final Rectangle2D bounds, final double margin) {
+        return new Rectangle2D.Double(bounds.getX() - margin, bounds.getY() - margin,
+                bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin);
+    }
+
+    private static Rectangle2D union(@Nullable final Rectangle2D area, @NonNull final Rectangle2D bounds) {
+        if (area == null) {
+            return bounds;
+        }
+        area.add(bounds);
+        return area;
     }
 
-    private TreeMap<Long, Point2D> extractInterval(
-        final TreeMap<Long, Point2D> map, final long startTime, final long endTime, final LinearInterpolation interpolator
+    /**
+     * Collects the points of the simplified track between the start and the
+     * end time (both inclusive), starting and ending with interpolated points
+     * if there are no points at exactly these times.
+     */
+    private Interval extractInterval(
+        final TrackCursors cursors, final TrackStore trackStore, final SimplifiedTrack simplifiedTrack, final long startTime, final long endTime,
+        final LinearInterpolation.Cursor startCursor, final LinearInterpolation.Cursor endCursor
     ) {
-        var intervalMap = new TreeMap<Long, Point2D>(map.subMap(startTime, true, endTime, true));
-        var firstPoint = interpolator.getPointAtTime(startTime);
-        if (firstPoint != null) {
-            intervalMap.put(startTime, firstPoint);
+        final var interval = cursors.getInterval();
+        final var location = cursors.getLocation();
+
+        final var startIndex = startCursor.floorIndex(startTime);
+        final var startIsPoint = startIndex >= 0 && trackStore.getTime(startIndex) == startTime;
+        final var endIndex = endCursor.floorIndex(endTime);
+        final var endIsPoint = endIndex >= 0 && trackStore.getTime(endIndex) == endTime;
+        final var firstIndex = startIsPoint ? startIndex : startIndex + 1;
+
+        interval.clear(Math.max(0, endIndex - firstIndex + 1) + 2);
+        if (!startIsPoint && startCursor.getLocationAtTime(startTime, location)) {
+            interval.add(location.getX(), location.getY());
+        }
+        for (var i = firstIndex; i <= endIndex; i = simplifiedTrack.nextIndex(i, endIndex)) {
+            interval.add(trackStore.getX(i), trackStore.getY(i));
         }
-        var lastPoint = interpolator.getPointAtTime(endTime);
-        if (lastPoint != null) {
-            intervalMap.put(endTime, lastPoint);
+        if (!endIsPoint && endTime != startTime && endCursor.getLocationAtTime(endTime, location)) {
+            interval.add(location.getX(), location.getY());
         }
-        return intervalMap;
+        return interval;
     }
 
     private long getTime(final int frame) {
         return RenderUtil.getTime(frame, minTime, cfg.getFps(), speedup);
     }
 
-    private void printText(@NonNull final Graphics2D g2, @Nullable final String text, final float x, final float y, @NonNull final Font font) {
+    private void printText(@NonNull final Graphics2D g2, @Nullable final String text, final float x, final float y, @NonNull final Font font,
+                           @NonNull final Consumer<Rectangle2D> dirty) {
         final var frc = g2.getFontRenderContext();
         g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
         final var height = g2.getFontMetrics(font).getHeight();
@@ -862,6 +1040,7 @@ public final class Renderer {
                 g2.setColor(Color.white);
                 g2.fill(sha);
                 g2.draw(sha);
+                dirty.accept(grow(sha.getBounds2D(), 3f / 2 + DIRTY_MARGIN));
 
                 g2.setFont(font);
                 g2.setColor(Color.black);
@@ -871,6 +1050,361 @@ public final class Renderer {
         }
     }
 
+    private record TrackPosition(@NonNull Point2D point, boolean finished) { }
+
+    @FunctionalInterface
+    private interface PointConsumer {
+        void accept(int index, double x, double y, long time) throws UserException;
+    }
+
+    /**
+     * Projects the points of a track onto the map, extends the bounds of the
+     * map and calculates the times of the points. A forced point interval
+     * starts again with every projection.
+     */
+    private final class PointProjection {
+        private final TrackConfiguration trackConfiguration;
+        private final long defaultTimeIfMissing;
+        private final boolean minLonSpecified;
+        private final boolean maxLonSpecified;
+        private final boolean minLatSpecified;
+        private final boolean maxLatSpecified;
+        private long forcedTime;
+        private double x;
+        private double y;
+
+        private PointProjection(final int trackIndex, final long defaultTimeIfMissing) {
+            this.trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
+            this.defaultTimeIfMissing = defaultTimeIfMissing;
+
+            final var minLon = cfg.getMinLon();
+            final var maxLon = cfg.getMaxLon();
+            final var minLat = cfg.getMinLat();
+            final var maxLat = cfg.getMaxLat();
+            minLonSpecified = minLon != null;
+            maxLonSpecified = maxLon != null;
+            minLatSpecified = minLat != null;
+            maxLatSpecified = maxLat != null;
+
+            if (minLonSpecified) {
+                minX = lonToX(minLon);
+            }
+            if (maxLonSpecified) {
+                maxX = lonToX(maxLon);
+            }
+            if (minLatSpecified) {
+                minY = latToY(minLat);
+            }
+            if (maxLatSpecified) {
+                maxY = latToY(maxLat);
+            }
+        }
+
+        /**
+         * Projects a point, its location is stored in {@link #x} and {@link #y}.
+         *
+         * @return the time of the point
+         */
+        private long project(final double lat, final double lon, final long pointTime) throws UserException {
+            x = lonToX(lon);
+            y = latToY(lat);
+
+            if (!minLonSpecified) {
+                minX = Math.min(x, minX);
+            }
+            if (!maxLatSpecified) {
+                minY = Math.min(y, minY);
+            }
+            if (!maxLonSpecified) {
+                maxX = Math.max(x, maxX);
+            }
+            if (!minLatSpecified) {
+                maxY = Math.max(y, maxY);
+            }
+
+            long time;
+            final var forcedPointInterval = trackConfiguration.getForcedPointInterval();
+            if (forcedPointInterval != null) {
+                forcedTime += forcedPointInterval;
+                time = forcedTime;
+            } else {
+                time = pointTime == Long.MIN_VALUE ? defaultTimeIfMissing : pointTime;
+                if (time == Long.MIN_VALUE) {
+                    final var filename = trackConfiguration.getInputGpx().getName();
+                    throw new UserException(
+                            String.format(resourceBundle.getString("error.missingtime"), filename));
+                }
+            }
+
+            if (trackConfiguration.getTimeOffset() != null) {
+                time += trackConfiguration.getTimeOffset();
+            }
+            return time;
+        }
+    }
+
+    /**
+     * Counts the track points of the segments streamed by the GPX parser.
+     */
+    private static final class SegmentCounter implements TrackPointConsumer {
+        private int[] segmentSizes = new int[1];
+        private int segmentCount;
+        private int size;
+
+        @Override
+        public void addPoint(final double lat, final double lon, final long time, final float speed, @Nullable final String comment) {
+            size++;
+        }
+
+        @Override
+        public void endSegment() {
+            if (segmentCount == segmentSizes.length) {
+                segmentSizes = Arrays.copyOf(segmentSizes, segmentCount * 2);
+            }
+            segmentSizes[segmentCount++] = size;
+            size = 0;
+        }
+
+        @NonNull
+        private int[] getSegmentSizes() {
+            return Arrays.copyOf(segmentSizes, segmentCount);
+        }
+    }
+
+    /**
+     * Builds the segments of a track from the track points streamed by the
+     * GPX parser, storing their columns in a spill.
+     */
+    private final class SegmentBuilder implements TrackPointConsumer {
+        private final int trackIndex;
+        private final TrackSpill trackSpill;
+        private final int[] segmentSizes;
+        private final List<TrackStore> segments = new ArrayList<>();
+        private TrackStore.Builder builder;
+        private PointProjection projection;
+
+        private SegmentBuilder(final int trackIndex, @NonNull final TrackSpill trackSpill, @NonNull final int[] segmentSizes) {
+            this.trackIndex = trackIndex;
+            this.trackSpill = trackSpill;
+            this.segmentSizes = segmentSizes;
+            startSegment();
+        }
+
+        private void startSegment() {
+            final var segment = segments.size();
+            builder = TrackStore.createBuilder(segment < segmentSizes.length ? segmentSizes[segment] : 0, trackSpill);
+            projection = new PointProjection(trackIndex, Long.MIN_VALUE);
+        }
+
+        @Override
+        public void addPoint(final double lat, final double lon, final long time, final float speed,
+                             @Nullable final String comment) throws UserException {
+            final var pointTime = projection.project(lat, lon, time);
+            builder.add(pointTime, projection.x, projection.y, lat, lon, speed, comment);
+        }
+
+        @Override
+        public void endSegment() {
+            segments.add(builder.build());
+            startSegment();
+        }
+
+        @NonNull
+        private List<TrackStore> getSegments() {
+            return segments;
+        }
+    }
+
+    /**
+     * The cursors and buffers of a render thread. The start cursors follow
+     * the start of the tail or the previous frame, the end cursors follow the
+     * time of the current frame.
+     */
+    private static final class TrackCursors {
+        private final LinearInterpolation.Cursor[] startCursors;
+        private final LinearInterpolation.Cursor[] endCursors;
+        private final Point2D.Double location = new Point2D.Double();
+        private final Path2D.Double path = new Path2D.Double();
+        private final Interval interval = new Interval();
+
+        TrackCursors(@NonNull final List<LinearInterpolation> interpolators) {
+            startCursors = interpolators.stream().map(LinearInterpolation::createCursor).toArray(LinearInterpolation.Cursor[]::new);
+            endCursors = interpolators.stream().map(LinearInterpolation::createCursor).toArray(LinearInterpolation.Cursor[]::new);
+        }
+
+        LinearInterpolation.Cursor getStartCursor(final int trackIdx) {
+            return startCursors[trackIdx];
+        }
+
+        LinearInterpolation.Cursor getEndCursor(final int trackIdx) {
+            return endCursors[trackIdx];
+        }
+
+        Point2D.Double getLocation() {
+            return location;
+        }
+
+        Path2D.Double getPath() {
+            return path;
+        }
+
+        Interval getInterval() {
+            return interval;
+        }
+    }
+
+    /**
+     * The points of a part of a track, ready to be drawn. The buffers are
+     * reused for the next part.
+     */
+    private static final class Interval {
+        private double[] x = new double[0];
+        private double[] y = new double[0];
+        private int size;
+
+        void clear(final int capacity) {
+            if (x.length < capacity) {
+                x = new double[capacity];
+                y = new double[capacity];
+            }
+            size = 0;
+        }
+
+        void add(final double pointX, final double pointY) {
+            x[size] = pointX;
+            y[size] = pointY;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double getX(final int index) {
+            return x[index];
+        }
+
+        double getY(final int index) {
+            return y[index];
+        }
+    }
+
+    private record RenderedFrame(int frame, @Nullable Point2D marker, @NonNull FrameLayer frameLayer) { }
+
+    /**
+     * The running average of the recent marker positions, which the moving
+     * map follows to smooth the movement of the viewport.
+     */
+    private static final class MarkerAverage {
+
+        private final Deque<Point2D> recentMarkers = new ArrayDeque<>();
+        private final Integer inertia;
+        private double xSum;
+        private double ySum;
+
+        MarkerAverage(final Integer inertia) {
+            this.inertia = inertia;
+        }
+
+        Point2D add(@NonNull final Point2D marker) {
+            // Add most recent markers to a queue (while updating a running average
+            // of x and y coordinates). Note that this loop almost always adds just
+            // 1 element to the end of the queue, except on the first invocation, in
+            // which case it fills up the entire queue with just the first marker.
+            // This prevents jitter in the beginning of the movie
+            while (recentMarkers.size() < (inertia + 1)) {
+                recentMarkers.add(marker);
+                xSum += marker.getX();
+                ySum += marker.getY();
+            }
+
+            while (recentMarkers.size() > inertia) {
+                final var m = recentMarkers.removeFirst();
+                xSum -= m.getX();
+                ySum -= m.getY();
+            }
+            return new Point2D.Double(xSum / recentMarkers.size(), ySum / recentMarkers.size());
+        }
+
+    }
+
+    /**
+     * Hands the rendered frames over to the plugins and the frame writer in
+     * frame order. Plugins may keep state between frames or write frames on
+     * their own, so they are called here and not on the rendering threads.
+     * All methods are called by the thread feeding the pipeline.
+     */
+    private final class FrameHandOff implements FramePipeline.FrameConsumer<RenderedFrame> {
+
+        private final List<RendererPlugin> plugins;
+        private final RenderingContext rc;
+        private final FrameWriter frameWriter;
+        private final TreeMap<Long, Point2D> wpMap;
+        private final TrackLayer trackLayer;
+        private final Deque<FrameLayer> freeFrameLayers = new ArrayDeque<>();
+
+        private RenderedFrame lastRenderedFrame;
+
+        FrameHandOff(@NonNull final List<RendererPlugin> plugins, @NonNull final RenderingContext rc,
+                     @NonNull final FrameWriter frameWriter, @NonNull final TreeMap<Long, Point2D> wpMap,
+                     @NonNull final TrackLayer trackLayer) {
+            this.plugins = plugins;
+            this.rc = rc;
+            this.frameWriter = frameWriter;
+            this.wpMap = wpMap;
+            this.trackLayer = trackLayer;
+        }
+
+        FrameLayer acquireFrameLayer(@NonNull final Rectangle viewport) {
+            final var frameLayer = freeFrameLayers.pollFirst();
+            if (frameLayer == null) {
+                return trackLayer.createFrameLayer(viewport);
+            }
+            trackLayer.restore(frameLayer, viewport);
+            return frameLayer;
+        }
+
+        void releaseFrameLayers() {
+            freeFrameLayers.forEach(trackLayer::release);
+            freeFrameLayers.clear();
+            if (lastRenderedFrame != null) {
+                trackLayer.release(lastRenderedFrame.frameLayer());
+                lastRenderedFrame = null;
+            }
+        }
+
+        FrameLayer getLastRenderedFrameLayer() {
+            return lastRenderedFrame == null ? null : lastRenderedFrame.frameLayer();
+        }
+
+        @Override
+        public void accept(@NonNull final RenderedFrame renderedFrame) throws UserException {
+            final var frame = renderedFrame.frame();
+            final var viewportImage = renderedFrame.frameLayer().getImage();
+
+            // the plugins report where they have drawn, so the frame buffer can be restored for a later frame
+            for (final var plugin : plugins) {
+                renderedFrame.frameLayer().markImageDirty(plugin.renderFrameRegion(frame, renderedFrame.marker(), viewportImage));
+            }
+
+            frameWriter.addFrame(viewportImage);
+
+            if (frame == 1) { // NOPMD - AvoidLiteralsInIfCondition - this number never changes
+                keepFrame(plugins, rc, frameWriter, renderedFrame.frameLayer(), frame, wpMap, cfg.getKeepFirstFrame());
+            }
+
+            // the last frame is kept for the last frame effect, the one before can be reused
+            if (lastRenderedFrame != null) {
+                freeFrameLayers.addLast(lastRenderedFrame.frameLayer());
+            }
+            lastRenderedFrame = renderedFrame;
+        }
+    }
+
     private static class NamedPoint extends Point2D.Double {
         @Serial
         private static final long serialVersionUID = 4011941819652468006L;
@@ -0,0 +1,127 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.TrackStore;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The level of detail of a track for drawing its lines. Dense tracks have
+ * many points within a single pixel, so only the points needed to keep the
+ * drawn line within a tolerance of the track are drawn, selected once with
+ * the Douglas-Peucker algorithm on the projected locations. All points stay
+ * in the track store for the timing, the interpolation and the plugins.
+ * The simplification is immutable and shared by all render threads.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class SimplifiedTrack {
+
+    private final BitSet drawn;
+
+    /**
+     * Simplifies the track.
+     *
+     * @param trackStore the track with the locations in pixels
+     * @param tolerance  the maximum distance in pixels of a skipped point to the drawn line
+     */
+    SimplifiedTrack(@NonNull final TrackStore trackStore, final double tolerance) {
+        final var size = trackStore.size();
+        drawn = new BitSet(size);
+        if (size == 0) {
+            return;
+        }
+        drawn.set(0);
+        drawn.set(size - 1);
+
+        // the ranges still to simplify, as pairs of the first and the last index
+        var ranges = new int[64];
+        var rangeCount = 0;
+        ranges[rangeCount++] = 0;
+        ranges[rangeCount++] = size - 1;
+        final var toleranceSquared = tolerance * tolerance;
+        while (rangeCount > 0) {
+            final var last = ranges[--rangeCount];
+            final var first = ranges[--rangeCount];
+
+            var farthestIndex = -1;
+            var farthestDistance = toleranceSquared;
+            for (var index = first + 1; index < last; index++) {
+                final var distance = distanceSquared(trackStore, index, first, last);
+                if (distance > farthestDistance) {
+                    farthestIndex = index;
+                    farthestDistance = distance;
+                }
+            }
+
+            if (farthestIndex >= 0) {
+                drawn.set(farthestIndex);
+                if (rangeCount + 4 > ranges.length) {
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                }
+                ranges[rangeCount++] = first;
+                ranges[rangeCount++] = farthestIndex;
+                ranges[rangeCount++] = farthestIndex;
+                ranges[rangeCount++] = last;
+            }
+        }
+    }
+
+    /**
+     * The squared distance of a point to the line between two other points.
+     */
+    private static double distanceSquared(@NonNull final TrackStore trackStore, final int index, final int first, final int last) {
+        final var x = trackStore.getX(index);
+        final var y = trackStore.getY(index);
+        final var x1 = trackStore.getX(first);
+        final var y1 = trackStore.getY(first);
+        final var dx = trackStore.getX(last) - x1;
+        final var dy = trackStore.getY(last) - y1;
+        final var lengthSquared = dx * dx + dy * dy;
+        final var ratio = lengthSquared > 0 ? Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared)) : 0;
+        final var distanceX = x - (x1 + ratio * dx);
+        final var distanceY = y - (y1 + ratio * dy);
+        return distanceX * distanceX + distanceY * distanceY;
+    }
+
+    /**
+     * The number of points drawn.
+     *
+     * @return the number of points of the simplified track
+     */
+    int size() {
+        return drawn.cardinality();
+    }
+
+    /**
+     * Searches the next point to draw. The last point of a part of the track
+     * is always drawn, so the drawn line ends at the right location.
+     *
+     * @param index    the index of the current point
+     * @param endIndex the index of the last point of the part being drawn
+     * @return the index of the next point to draw, <code>index + 1</code> after the last point
+     */
+    int nextIndex(final int index, final int endIndex) {
+        if (index >= endIndex) {
+            return index + 1;
+        }
+        final var next = drawn.nextSetBit(index + 1);
+        return next < 0 ? endIndex : Math.min(next, endIndex);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.data.TrackStore;
+import app.gpx_animator.core.util.LinearInterpolation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Draws the tail of a track, fading from the tail color to the track color.
+ * The fade is quantized into a color ramp, which is calculated once per
+ * track, so consecutive segments mostly share the same color and are drawn
+ * together as one path. The renderer is immutable and shared by all render
+ * threads, the path and the point buffers are provided by the caller.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TailRenderer {
+
+    static final int RAMP_STEPS = 256;
+
+    private final Color preDrawTrackColor;
+    private final BasicStroke stroke;
+    private final BasicStroke preDrawStroke;
+    private final Color[] ramp;
+
+    TailRenderer(@NonNull final TrackConfiguration trackConfiguration, @Nullable final Color tailColor) {
+        preDrawTrackColor = trackConfiguration.getPreDrawTrackColor();
+        stroke = new BasicStroke(trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        preDrawStroke = new BasicStroke(trackConfiguration.getPreDrawLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+        ramp = new Color[RAMP_STEPS + 1];
+        if (tailColor != null) {
+            for (var step = 1; step <= RAMP_STEPS; step++) {
+                ramp[step] = blendTailColor(trackConfiguration.getColor(), tailColor, (float) step / RAMP_STEPS);
+            }
+        }
+    }
+
+    private static Color blendTailColor(final Color tailColor, final Color trackColor, final float ratio) {
+        var r = ((double) (1 - ratio)) * tailColor.getRed() + (double) ratio * trackColor.getRed();
+        var g = ((double) (1 - ratio)) * tailColor.getGreen() + (double) ratio * trackColor.getGreen();
+        var b = ((double) (1 - ratio)) * tailColor.getBlue() + (double) ratio * trackColor.getBlue();
+        double a = Math.max(tailColor.getAlpha(), trackColor.getAlpha());
+
+        return new Color((int) r, (int) g, (int) b, (int) a);
+    }
+
+    /**
+     * The stroke for the lines of the track, the same instance is returned
+     * for every call.
+     *
+     * @param isPreDrawTrack <code>true</code> for the stroke of the pre-drawn track
+     * @return the stroke to draw the track with
+     */
+    BasicStroke getStroke(final boolean isPreDrawTrack) {
+        return isPreDrawTrack ? preDrawStroke : stroke;
+    }
+
+    /**
+     * Draws the part of the simplified track between the start and the end
+     * time. The segments at the start of the tail get the track color, the
+     * segments at the end next to the marker get the tail color. When
+     * drawing the pre-drawn track, all segments get the pre-draw color.
+     *
+     * @return the bounds of the drawn segments without the line width, <code>null</code> if nothing was drawn
+     */
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // the buffers are owned by the render thread
+    Rectangle2D draw(@NonNull final Graphics2D g2, @NonNull final TrackStore trackStore, @NonNull final SimplifiedTrack simplifiedTrack,
+                     @NonNull final LinearInterpolation.Cursor startCursor, @NonNull final LinearInterpolation.Cursor endCursor,
+                     final long startTime, final long endTime, final boolean isPreDrawTrack,
+                     @NonNull final Path2D.Double path, @NonNull final Point2D.Double location) {
+        final var startIndex = startCursor.floorIndex(startTime);
+        final var startIsPoint = startIndex >= 0 && trackStore.getTime(startIndex) == startTime;
+        final var hasStart = !startIsPoint && startCursor.getLocationAtTime(startTime, location);
+        final var startX = location.getX();
+        final var startY = location.getY();
+
+        final var endIndex = endCursor.floorIndex(endTime);
+        final var endIsPoint = endIndex >= 0 && trackStore.getTime(endIndex) == endTime;
+        final var hasEnd = !endIsPoint && endTime != startTime && endCursor.getLocationAtTime(endTime, location);
+
+        final var firstIndex = startIsPoint ? startIndex : startIndex + 1;
+        final var lastIndex = hasEnd ? endIndex + 1 : endIndex;
+        final var backTime = endTime - startTime;
+
+        Rectangle2D bounds = null;
+        Color pathColor = null;
+        path.reset();
+
+        var prevX = startX;
+        var prevY = startY;
+        var hasPrev = hasStart;
+        for (var index = firstIndex; index <= lastIndex; index = simplifiedTrack.nextIndex(index, endIndex)) {
+            final var isEnd = hasEnd && index == lastIndex;
+            final var time = isEnd ? endTime : trackStore.getTime(index);
+            final var x = isEnd ? location.getX() : trackStore.getX(index);
+            final var y = isEnd ? location.getY() : trackStore.getY(index);
+
+            if (hasPrev) {
+                final var color = isPreDrawTrack ? preDrawTrackColor : getColor((time - startTime) * 1f / backTime);
+                if (color != pathColor) { // NOPMD -- the colors of the ramp are shared instances
+                    bounds = drawPath(g2, path, pathColor, bounds);
+                    pathColor = color;
+                    path.moveTo(prevX, prevY);
+                }
+                path.lineTo(x, y);
+            }
+
+            prevX = x;
+            prevY = y;
+            hasPrev = true;
+        }
+        return drawPath(g2, path, pathColor, bounds);
+    }
+
+    /**
+     * Quantizes the fade of the tail.
+     *
+     * @param ratio the position in the tail, from 0 at the start to 1 at the end
+     * @return the color of the ramp, <code>null</code> for segments which are not drawn
+     */
+    Color getColor(final float ratio) {
+        if (!(ratio > 0)) {
+            return null;
+        }
+        final var step = Math.max(1, Math.min(RAMP_STEPS, Math.round(ratio * RAMP_STEPS)));
+        return ramp[step];
+    }
+
+    private static Rectangle2D drawPath(@NonNull final Graphics2D g2, @NonNull final Path2D.Double path, @Nullable final Color color,
+                                        @Nullable final Rectangle2D bounds) {
+        if (color == null) {
+            path.reset();
+            return bounds;
+        }
+        g2.setPaint(color);
+        g2.draw(path);
+        final var pathBounds = path.getBounds2D();
+        path.reset();
+        if (bounds == null) {
+            return pathBounds;
+        }
+        bounds.add(pathBounds);
+        return bounds;
+    }
+
+}
@@ -17,12 +17,14 @@ package app.gpx_animator.core.renderer;
 
 import app.gpx_animator.core.data.Position;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
@@ -76,8 +78,11 @@ public abstract class TextRenderer extends ImageRenderer {
      * @param position    the position of the text on the video frame
      * @param margin      the margin from the text to the border of the video frame
      * @param targetImage the target image representing the video frame
+     * @return the area of the video frame drawn on, <code>null</code> if the text is hidden
      */
-    public void renderText(@NonNull final String text, @NonNull final Position position, final int margin, @NonNull final BufferedImage targetImage) {
+    @Nullable
+    public Rectangle renderText(@NonNull final String text, @NonNull final Position position, final int margin,
+                                @NonNull final BufferedImage targetImage) {
         final var trimmedText = text.trim();
         final var width = calculateTextWidth(trimmedText) + ANTI_ALIAS_COMPENSATION;
         final var height = calculateTextHeight(trimmedText);
@@ -112,7 +117,7 @@ public abstract class TextRenderer extends ImageRenderer {
             graphics.drawString(trimmedLine, xPosition, yPosition);
         }
 
-        renderImage(image, position, margin, targetImage);
+        return renderImage(image, position, margin, targetImage);
     }
 
     private int calculateHorizontalPosition(@NonNull final TextAlignment alignment, @NonNull final String line, final int width, final int lineNum) {
@@ -0,0 +1,116 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The persistent layer with the background and the already completed parts
+ * of the tracks. Every frame commits the newly completed segments as a new
+ * revision together with the area they cover, so frame buffers of older
+ * revisions can be brought up to date by copying only the changed areas.
+ * Frame buffers showing another area than before are copied completely.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TrackLayer {
+
+    private final Canvas canvas;
+    private final FrameBufferPool frameBufferPool;
+    private final List<Rectangle> increments = new ArrayList<>();
+
+    TrackLayer(@NonNull final Canvas canvas, @NonNull final FrameBufferPool frameBufferPool) {
+        this.canvas = canvas;
+        this.frameBufferPool = frameBufferPool;
+    }
+
+    Canvas getCanvas() {
+        return canvas;
+    }
+
+    int getRevision() {
+        return increments.size();
+    }
+
+    /**
+     * Finishes the current revision.
+     *
+     * @param area the area changed since the last revision, <code>null</code> if nothing changed
+     */
+    void commit(@Nullable final Rectangle2D area) {
+        increments.add(area == null || area.isEmpty() ? null : area.getBounds());
+    }
+
+    /**
+     * Creates a new frame buffer containing an area of the current revision.
+     *
+     * @param area the area to show, the frame buffer gets the size of the area
+     * @return a new frame layer
+     */
+    FrameLayer createFrameLayer(@NonNull final Rectangle area) {
+        final var buffer = frameBufferPool.acquire(area.width, area.height, canvas.getType());
+        canvas.copyTo(area, buffer, 0, 0);
+        return new FrameLayer(buffer, area, getRevision());
+    }
+
+    /**
+     * Returns the image of a frame buffer, which is not used anymore, to the
+     * pool.
+     *
+     * @param frameLayer the frame buffer to release
+     */
+    void release(@NonNull final FrameLayer frameLayer) {
+        frameBufferPool.release(frameLayer.getImage());
+    }
+
+    /**
+     * Removes the overlay of the frame buffer and adds the segments committed
+     * since the revision of the frame buffer.
+     *
+     * @param frameLayer the frame buffer to restore
+     * @param area the area to show, must have the same size as the frame buffer
+     */
+    void restore(@NonNull final FrameLayer frameLayer, @NonNull final Rectangle area) {
+        if (!area.equals(frameLayer.getArea())) {
+            canvas.copyTo(area, frameLayer.getImage(), 0, 0);
+            frameLayer.restored(area, getRevision());
+            return;
+        }
+
+        for (final var dirty : frameLayer.getDirty()) {
+            copy(dirty, frameLayer);
+        }
+        for (var revision = frameLayer.getRevision(); revision < increments.size(); revision++) {
+            final var increment = increments.get(revision);
+            if (increment != null) {
+                copy(increment, frameLayer);
+            }
+        }
+        frameLayer.restored(area, getRevision());
+    }
+
+    private void copy(@NonNull final Rectangle part, @NonNull final FrameLayer frameLayer) {
+        final var area = frameLayer.getArea();
+        canvas.copyTo(part, frameLayer.getImage(), part.x - area.x, part.y - area.y);
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.plugins.RendererPlugin;
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Stores the rendered background of a video, so rendering the same map
+ * again, e.g. with other track colors or overlays, doesn't compose the
+ * map tiles, the background image and the background color once more.
+ * The file name is a hash of the canvas size and the background
+ * descriptions of the plugins, the raster is stored raw and read by a
+ * memory mapping. Backgrounds rendered quickly or too big for the cache
+ * aren't stored, the least recently used files are deleted when the
+ * cache grows too big.
+ *
+ * <pre>
+ * header: int magic, int version, int width, int height, int type, long created, int padding
+ * raster: the rows of the canvas as 3 byte BGR pixels
+ * </pre>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class BackgroundCache {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundCache.class);
+
+    private static final String FILE_EXTENSION = ".gpxbg"; //NON-NLS
+
+    private static final int MAGIC = 0x47414247; // "GABG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int TYPE = BufferedImage.TYPE_3BYTE_BGR;
+    private static final int STRIP_HEIGHT = 256;
+
+    // rendering faster than this is about as fast as reading the stored background
+    private static final long MIN_RENDER_MILLIS = 250;
+    private static final long MAX_BACKGROUND_BYTES = 256L * 1024 * 1024;
+    private static final long MAX_CACHE_BYTES = 1024L * 1024 * 1024;
+
+    private final Path file;
+    private final long timeLimit;
+
+    private BackgroundCache(@NonNull final Path file, final long timeLimit) {
+        this.file = file;
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Creates the cache entry for the background of a canvas.
+     *
+     * @param directory the directory of the background cache
+     * @param timeLimit the time in milliseconds a stored background is used
+     * @param canvas    the canvas of the background
+     * @param plugins   the plugins rendering the background
+     * @return the cache entry, <code>null</code> if a plugin doesn't describe its background
+     */
+    @Nullable
+    public static BackgroundCache of(@NonNull final Path directory, final long timeLimit,
+                                     @NonNull final Canvas canvas, @NonNull final List<RendererPlugin> plugins) {
+        final var description = new StringBuilder();
+        description.append(canvas.getWidth()).append('x').append(canvas.getHeight()).append('\n');
+        for (final var plugin : plugins) {
+            final var backgroundDescription = plugin.getBackgroundDescription();
+            if (backgroundDescription == null) {
+                LOGGER.debug("The background is not stored, the plugin {} doesn't describe it", plugin.getClass().getName());
+                return null;
+            }
+            if (!backgroundDescription.isEmpty()) {
+                description.append(plugin.getClass().getName()).append(':').append(backgroundDescription).append('\n');
+            }
+        }
+        try {
+            final var hash = MessageDigest.getInstance("SHA-256").digest(description.toString().getBytes(StandardCharsets.UTF_8));
+            return new BackgroundCache(directory.resolve(HexFormat.of().formatHex(hash).concat(FILE_EXTENSION)), timeLimit);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Draws the stored background on the canvas.
+     *
+     * @param canvas the canvas to draw on
+     * @return true if the background was stored, false if it has to be rendered
+     */
+    public boolean load(@NonNull final Canvas canvas) {
+        final var width = canvas.getWidth();
+        final var height = canvas.getHeight();
+        final var rowBytes = (long) width * 3;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getInt() != width || header.getInt() != height || header.getInt() != TYPE
+                    || channel.size() != HEADER_SIZE + rowBytes * height) {
+                LOGGER.warn("Ignoring the invalid cached background {}", file);
+                return false;
+            }
+            if (System.currentTimeMillis() - header.getLong() > timeLimit) {
+                return false;
+            }
+
+            final var raster = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, rowBytes * height);
+            final var strip = new BufferedImage(width, Math.min(STRIP_HEIGHT, height), TYPE);
+            final var pixels = ((DataBufferByte) strip.getRaster().getDataBuffer()).getData();
+            for (var y = 0; y < height; y += STRIP_HEIGHT) {
+                final var top = y;
+                final var rows = Math.min(STRIP_HEIGHT, height - y);
+                raster.get(pixels, 0, (int) (rows * rowBytes));
+                final var image = rows == strip.getHeight() ? strip : strip.getSubimage(0, 0, width, rows);
+                canvas.draw(g2 -> {
+                    g2.drawImage(image, 0, top, null);
+                    return new Rectangle(0, top, width, rows);
+                });
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            LOGGER.info("Using the cached background {}", file);
+            return true;
+        } catch (final NoSuchFileException e) {
+            return false;
+        } catch (final IOException e) {
+            LOGGER.warn("Can't read the cached background {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the rendered background of the canvas, if rendering it took
+     * long enough to be worth storing.
+     *
+     * @param canvas       the canvas with the rendered background
+     * @param renderMillis the time rendering the background took
+     */
+    public void save(@NonNull final Canvas canvas, final long renderMillis) {
+        final var width = canvas.getWidth();
+        final var height = canvas.getHeight();
+        final var rowBytes = width * 3;
+        if (renderMillis < MIN_RENDER_MILLIS || (long) rowBytes * height > MAX_BACKGROUND_BYTES) {
+            return;
+        }
+
+        try {
+            final var directory = file.getParent();
+            Files.createDirectories(directory);
+            final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); //NON-NLS
+            try {
+                try (var channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    final var header = ByteBuffer.allocate(HEADER_SIZE)
+                            .putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(TYPE)
+                            .putLong(System.currentTimeMillis());
+                    header.clear();
+                    writeFully(channel, header);
+
+                    final var strip = new BufferedImage(width, Math.min(STRIP_HEIGHT, height), TYPE);
+                    final var pixels = ((DataBufferByte) strip.getRaster().getDataBuffer()).getData();
+                    for (var y = 0; y < height; y += STRIP_HEIGHT) {
+                        final var rows = Math.min(STRIP_HEIGHT, height - y);
+                        canvas.copyTo(new Rectangle(0, y, width, rows), strip, 0, 0);
+                        writeFully(channel, ByteBuffer.wrap(pixels, 0, rows * rowBytes));
+                    }
+                }
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            Utils.deleteLeastRecentlyUsed(directory, FILE_EXTENSION, MAX_CACHE_BYTES);
+        } catch (final IOException e) {
+            LOGGER.warn("Can't store the background in the cache {}", file, e);
+        }
+    }
+
+    private static void writeFully(@NonNull final FileChannel channel, @NonNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used map tiles decoded in memory, so repeated renderings of
+ * the same map don't read and decode the tiles from the disk cache again.
+ * The size of the cache is limited by the number of bytes of the decoded
+ * images, the least recently used tiles are removed first. One cache is
+ * shared by all renderings of the process. The cached images are shared
+ * too and must not be modified.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class MemoryTileCache {
+
+    // a quarter of the heap on small machines, but not more than needed for a few thousand tiles
+    private static final long MAX_DEFAULT_BYTES = 512L * 1_024 * 1_024;
+
+    private static final MemoryTileCache SHARED = new MemoryTileCache(Math.min(MAX_DEFAULT_BYTES, Runtime.getRuntime().maxMemory() / 4));
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    MemoryTileCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache shared by all renderings.
+     *
+     * @return the shared cache
+     */
+    public static MemoryTileCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cached tile.
+     *
+     * @param url the URL of the tile
+     * @param maxAge the maximum age of the tile in milliseconds
+     * @return the tile, <code>null</code> if it isn't cached or too old
+     */
+    @Nullable
+    public synchronized BufferedImage get(@NonNull final String url, final long maxAge) {
+        final var entry = entries.get(url);
+        if (entry != null && System.currentTimeMillis() - entry.loaded() <= maxAge) {
+            hits++;
+            return entry.image();
+        }
+        if (entry != null) {
+            remove(url);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Adds a tile to the cache and removes the least recently used tiles,
+     * if the cache is too big. Tiles bigger than the whole cache are not
+     * cached.
+     *
+     * @param url the URL of the tile
+     * @param image the decoded tile
+     */
+    public synchronized void put(@NonNull final String url, @NonNull final BufferedImage image) {
+        final var size = sizeOf(image);
+        if (size > maxBytes) {
+            return;
+        }
+        remove(url);
+        entries.put(url, new Entry(image, System.currentTimeMillis(), size));
+        bytes += size;
+
+        final var iterator = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= iterator.next().bytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all tiles from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void remove(@NonNull final String url) {
+        final var entry = entries.remove(url);
+        if (entry != null) {
+            bytes -= entry.bytes();
+        }
+    }
+
+    private static long sizeOf(@NonNull final BufferedImage image) {
+        final var dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    private record Entry(@NonNull BufferedImage image, long loaded, long bytes) { }
+
+}
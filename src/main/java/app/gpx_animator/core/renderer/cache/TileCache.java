@@ -15,11 +15,12 @@
  */
 package app.gpx_animator.core.renderer.cache;
 
-import app.gpx_animator.core.Constants;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.preferences.Preferences;
 
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
@@ -27,112 +28,303 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public final class TileCache {
 
     @NonNls
     private static final Logger LOGGER = LoggerFactory.getLogger(TileCache.class);
 
-    private static final String DELETE_ERROR = "Can't delete tile cache file: {}";
-
     private TileCache() throws InstantiationException {
         throw new InstantiationException("TileCache is a utility class which can't be instantiated!");
     }
 
-    private static final String CACHED_FILE_TYPE = "png"; //NON-NLS
-    private static final String CACHED_FILE_EXTENSION = ".gpxac.".concat(CACHED_FILE_TYPE); //NON-NLS
-    private static MessageDigest messageDigest = null;
+    private static final String CONTENT_TYPE = "content-type"; //NON-NLS
+    private static final String ETAG = "etag"; //NON-NLS
+    private static final String LAST_MODIFIED = "last-modified"; //NON-NLS
+    private static final String TEMPLATE = "template"; //NON-NLS
+    private static final String ZOOM = "zoom"; //NON-NLS
+    private static final String X = "x"; //NON-NLS
+    private static final String Y = "y"; //NON-NLS
+
+    // the tiles which are loaded right now, so other threads needing them wait instead of loading them too
+    private static final Map<String, CompletableFuture<BufferedImage>> LOADING = new ConcurrentHashMap<>();
+
+    // the index and the tile packs of the cache directory currently in use
+    private static TileCacheIndex index;
+    private static List<TilePack> tilePacks = List.of();
+    private static boolean shutdownHookAdded;
 
     //
     // Remove all old cached map tiles
     //
-    // It is possible that the user has pointed our cache to a directory
-    // that holds other files. We will make a sanity check on files before
-    // we delete them.
+    // Only the tiles known to the index of the cache are deleted, so no
+    // other files are deleted if the user has pointed our cache to a
+    // directory that holds other files.
     //
-    // The sanity checks are very basic:
-    //  1. Is the length of the name what we expect?
-    //  2. Is the file extension (string suffix) correct?
+    // Old tiles which the server can revalidate are kept, they are checked
+    // with a conditional request when they are used again. If the cache is
+    // bigger than allowed, the least recently used tiles are removed too.
     //
-    // If either check fails, log a warning rather than delete the file.
+    // Other processes may use the same cache, so the index is merged with
+    // theirs first. Tiles they have written or revalidated since we last
+    // saw them are not deleted.
     //
     public static void ageCache() {
-        ageCache(Preferences.getTileCacheTimeLimit());
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        if (cachingEnabled(tileCacheDir)) {
+            final var tileCacheIndex = getIndex(tileCacheDir);
+            syncIndex(tileCacheIndex);
+            deleteTiles(tileCacheIndex, tileCacheIndex.expire(Preferences.getTileCacheTimeLimit(), true));
+            deleteTiles(tileCacheIndex, tileCacheIndex.evict(Preferences.getTileCacheSizeLimit()));
+            saveIndex();
+        }
     }
 
-    private static void ageCache(final long tileCacheTimeLimit) {
+    public static void clear() {
+        MemoryTileCache.getShared().clear();
         final var tileCacheDir = Preferences.getTileCacheDir();
         if (cachingEnabled(tileCacheDir)) {
-            // Remove any cached tiles that are too old
-            final var cacheDir = new File(tileCacheDir);
-            final var files = cacheDir.listFiles();
-            if (files != null) {
-                for (var cacheEntry : files) {
-                    final var cacheFilename = cacheEntry.getName();
-                    if ((cacheFilename.length() == 74) && (cacheFilename.endsWith(CACHED_FILE_EXTENSION))) {
-                        ageCacheFile(cacheEntry, tileCacheTimeLimit);
-                    } else {
-                        LOGGER.error("Error: Unknown file in tile cache: {}", cacheFilename);
-                    }
+            final var tileCacheIndex = getIndex(tileCacheDir);
+            syncIndex(tileCacheIndex);
+            deleteTiles(tileCacheIndex, tileCacheIndex.expire(-1, false));
+            saveIndex();
+        }
+    }
+
+    public static long getSize() {
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        return cachingEnabled(tileCacheDir) ? getIndex(tileCacheDir).getSize() : 0;
+    }
+
+    /**
+     * Writes the index of the tile cache, so the next start doesn't need to
+     * rebuild it.
+     */
+    public static void saveIndex() {
+        final TileCacheIndex tileCacheIndex;
+        synchronized (TileCache.class) {
+            tileCacheIndex = index;
+        }
+        if (tileCacheIndex != null) {
+            try {
+                tileCacheIndex.save();
+            } catch (final IOException e) {
+                LOGGER.error("Error writing the tile cache index in {}", tileCacheIndex.getDirectory(), e);
+            }
+        }
+    }
+
+    private static void syncIndex(final TileCacheIndex tileCacheIndex) {
+        try {
+            tileCacheIndex.sync();
+        } catch (final IOException e) {
+            LOGGER.error("Error merging the tile cache index in {}", tileCacheIndex.getDirectory(), e);
+        }
+    }
+
+    private static synchronized TileCacheIndex getIndex(final String tileCacheDir) {
+        final var directory = Path.of(tileCacheDir).toAbsolutePath();
+        if (index == null || !index.getDirectory().equals(directory)) {
+            saveIndex();
+            if (index != null) {
+                index.close();
+            }
+            index = TileCacheIndex.open(directory);
+            tilePacks = openTilePacks(directory);
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(TileCache::saveIndex, "tile cache index")); //NON-NLS
+                shutdownHookAdded = true;
+            }
+        }
+        return index;
+    }
+
+    //
+    // Open the tile packs in the cache directory. The tiles of a tile pack
+    // never expire, they are used instead of the cached or downloaded tiles.
+    //
+    private static List<TilePack> openTilePacks(final Path directory) {
+        for (final var tilePack : tilePacks) {
+            try {
+                tilePack.close();
+            } catch (final IOException e) {
+                LOGGER.error("Error closing the tile pack {}", tilePack.getFile(), e);
+            }
+        }
+        final var files = directory.toFile().listFiles((dir, name) -> name.endsWith(TilePack.FILE_EXTENSION));
+        final var opened = new ArrayList<TilePack>();
+        if (files != null) {
+            for (final var file : files) {
+                try {
+                    opened.add(TilePack.open(file.toPath()));
+                    LOGGER.info("Using the tile pack {} with {} tiles", file, opened.get(opened.size() - 1).getTileCount());
+                } catch (final IOException e) {
+                    LOGGER.error("Error opening the tile pack {}", file, e);
                 }
             }
         }
+        return List.copyOf(opened);
     }
 
-    public static void clear() {
-        ageCache(-1);
+    private static synchronized List<TilePack> getTilePacks() {
+        return tilePacks;
     }
 
-    public static long getSize() {
+    /**
+     * Writes all cached tiles into a tile pack. Tiles cached by older
+     * versions don't know their URL template and position, they are
+     * skipped.
+     *
+     * @param packFile the tile pack file to write
+     * @return the number of packed tiles
+     * @throws UserException if the tile cache is disabled or the tile pack can't be written
+     */
+    public static int buildTilePack(final File packFile) throws UserException {
         final var tileCacheDir = Preferences.getTileCacheDir();
-        final var cacheDir = new File(tileCacheDir);
-        final var files = cacheDir.listFiles();
-        var size = 0L;
-        if (files != null) {
-            for (var cacheEntry : files) {
-                final var cacheFilename = cacheEntry.getName();
-                if ((cacheFilename.length() == 74) && (cacheFilename.endsWith(CACHED_FILE_EXTENSION))) {
-                    size += cacheEntry.length();
+        if (!cachingEnabled(tileCacheDir)) {
+            throw new UserException("the tile cache is disabled");
+        }
+        final var tileCacheIndex = getIndex(tileCacheDir);
+        final var tiles = new ArrayList<TilePack.PackedTile>();
+        for (final var hash : tileCacheIndex.getHashes()) {
+            try {
+                final var metadata = readMetadata(tileCacheIndex.getMetadataFile(hash).toFile());
+                final var template = metadata.getProperty(TEMPLATE);
+                if (template == null) {
+                    continue;
                 }
+                final var tileKey = new TileKey(Integer.parseInt(metadata.getProperty(ZOOM)),
+                        Integer.parseInt(metadata.getProperty(X)), Integer.parseInt(metadata.getProperty(Y)));
+                tiles.add(new TilePack.PackedTile(TilePack.getTemplateHash(template), tileKey, tileCacheIndex.getTileFile(hash)));
+            } catch (final IOException | NumberFormatException e) {
+                LOGGER.warn("Skipping the cached tile {}", hash, e);
             }
         }
-        return size;
+        try {
+            TilePack.write(packFile.toPath(), tiles);
+        } catch (final IOException e) {
+            throw new UserException(String.format("error writing the tile pack %s: %s", packFile, e.getMessage()), e);
+        }
+        return tiles.size();
     }
 
-    public static BufferedImage getTile(final String url, final String userAgent, final String tileCacheDir, final Long tileCacheTimeLimit)
-        throws UserException {
+    public static BufferedImage getTile(final TileKey tileKey, final TileFetcher tileFetcher, final String tileCacheDir,
+        final Long tileCacheTimeLimit) throws UserException {
 
-        BufferedImage image;
+        final var url = tileFetcher.getUrl(tileKey);
+        final var memoryTileCache = MemoryTileCache.getShared();
+        var image = memoryTileCache.get(url, tileCacheTimeLimit);
+        if (image != null) {
+            return image;
+        }
 
         if (cachingEnabled(tileCacheDir)) {
-            try {
-                image = cachedGetTile(url, userAgent, tileCacheDir, tileCacheTimeLimit);
-            } catch (final UserException e) {
-                image = unCachedGetTile(url, userAgent);
+            final var tileCacheIndex = getIndex(tileCacheDir);
+            image = packedGetTile(url, tileKey, tileFetcher);
+            if (image == null) {
+                try {
+                    image = cachedGetTile(url, tileKey, tileFetcher, tileCacheIndex, tileCacheTimeLimit);
+                } catch (final RuntimeException e) {
+                    // The cache failed, not the download: a failed download
+                    // has already been retried and is passed on as it is.
+                    LOGGER.error("Error using the tile cache for tile {}", url, e);
+                    image = unCachedGetTile(url, tileFetcher);
+                }
             }
         } else {
-            image = unCachedGetTile(url, userAgent);
+            image = unCachedGetTile(url, tileFetcher);
         }
+        memoryTileCache.put(url, image);
         return image;
     }
 
-    private static BufferedImage unCachedGetTile(final String url, final String userAgent) throws UserException {
-        BufferedImage mapTile;
+    /**
+     * Puts a tile into the tile cache, unless a tile pack contains it or it
+     * is already cached and not too old. The tile is not kept in memory.
+     *
+     * @param tileKey the tile to load
+     * @param tileFetcher the fetcher downloading the tile
+     * @param tileCacheDir the directory of the tile cache
+     * @param tileCacheTimeLimit the maximum age of the cached tiles in milliseconds
+     * @return <code>true</code> if the tile was downloaded or revalidated, <code>false</code> if it was already available
+     * @throws UserException if the tile cache is disabled or the tile can't be downloaded
+     */
+    public static boolean prefetchTile(final TileKey tileKey, final TileFetcher tileFetcher, final String tileCacheDir,
+        final Long tileCacheTimeLimit) throws UserException {
+        if (!cachingEnabled(tileCacheDir)) {
+            throw new UserException("the tile cache is disabled");
+        }
+        final var tileCacheIndex = getIndex(tileCacheDir);
+        for (final var tilePack : getTilePacks()) {
+            if (tilePack.getTile(tileFetcher.getTemplateHash(), tileKey) != null) {
+                return false;
+            }
+        }
 
-        if (!userAgent.isBlank()) {
-            System.setProperty("http.agent", userAgent);
-        } else {
-            System.setProperty("http.agent", Constants.USER_AGENT);
+        // the files are checked, another process may have deleted or loaded the tile
+        final var url = tileFetcher.getUrl(tileKey);
+        final var hash = hashName(url);
+        if (isFresh(tileCacheIndex.sync(hash), tileCacheTimeLimit)) {
+            return false;
         }
+        try (var ignored = tileCacheIndex.lockTile(hash)) {
+            if (isFresh(tileCacheIndex.sync(hash), tileCacheTimeLimit)) {
+                return false;
+            }
+            downloadTile(url, hash, tileKey, tileFetcher, tileCacheIndex);
+            return true;
+        }
+    }
+
+    private static boolean isFresh(final Long fetched, final Long tileCacheTimeLimit) {
+        return fetched != null && System.currentTimeMillis() - fetched <= tileCacheTimeLimit;
+    }
+
+    private static BufferedImage unCachedGetTile(final String url, final TileFetcher tileFetcher) throws UserException {
+        return decode(url, tileFetcher.download(url, null));
+    }
+
+    private static BufferedImage packedGetTile(final String url, final TileKey tileKey, final TileFetcher tileFetcher) {
+        for (final var tilePack : getTilePacks()) {
+            final var bytes = tilePack.getTile(tileFetcher.getTemplateHash(), tileKey);
+            if (bytes != null) {
+                try {
+                    return decode(url, new ByteBufferInputStream(bytes));
+                } catch (final UserException e) {
+                    LOGGER.error("Error: Failed to decode tile {} from the tile pack {}", url, tilePack.getFile(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static BufferedImage decode(final String url, final TileData tileData) throws UserException {
+        return decode(url, new ByteArrayInputStream(tileData.bytes()));
+    }
+
+    private static BufferedImage decode(final String url, final InputStream in) throws UserException {
+        BufferedImage mapTile;
+
         try {
-            mapTile = ImageIO.read(new URL(url));
+            mapTile = ImageIO.read(in);
         } catch (final IOException e) {
             throw new UserException(String.format("error getting tile %s: %s", url, e.getCause()), e);
         }
@@ -143,50 +335,209 @@ public final class TileCache {
         return mapTile;
     }
 
-    private static BufferedImage cachedGetTile(final String url, final String userAgent, final String tileCacheDir,
-        final Long tileCacheTimeLimit) throws UserException {
-        BufferedImage mapTile = null;
-        final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
-        final var path = tileCacheDir.concat(File.separator).concat(filename);
-        final var cacheFile = new File(path);
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // the tile, its source and the cache
+    private static BufferedImage cachedGetTile(final String url, final TileKey tileKey, final TileFetcher tileFetcher,
+        final TileCacheIndex tileCacheIndex, final Long tileCacheTimeLimit) throws UserException {
+        final var hash = hashName(url);
+        final var mapTile = readCachedTile(url, hash, tileCacheIndex, lookup(tileCacheIndex, hash), tileCacheTimeLimit);
+        if (mapTile != null) {
+            return mapTile;
+        }
 
-        // Age out old tile file in cache directory.
-        ageCacheFile(cacheFile, tileCacheTimeLimit);
+        //
+        // The tile is not cached or expired. Only one thread loads it, the
+        // others wait for it. The tile is locked against other processes
+        // too, if one of them has loaded it in the meantime, it is used.
+        //
+        final var loading = new CompletableFuture<BufferedImage>();
+        final var running = LOADING.putIfAbsent(hash, loading);
+        if (running != null) {
+            return waitFor(url, running);
+        }
+        try (var ignored = tileCacheIndex.lockTile(hash)) {
+            var loaded = readCachedTile(url, hash, tileCacheIndex, tileCacheIndex.sync(hash), tileCacheTimeLimit);
+            if (loaded == null) {
+                loaded = downloadTile(url, hash, tileKey, tileFetcher, tileCacheIndex);
+            }
+            loading.complete(loaded);
+            return loaded;
+        } catch (final UserException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            LOADING.remove(hash, loading);
+        }
+    }
 
-        // If map tile is in cache, then return it.
-        if (cacheFile.isFile()) {
-            try {
-                mapTile = ImageIO.read(cacheFile);
-            } catch (final IOException e) {
-                // Treat as non-fatal, we will notify the user then attempt to
-                // remove the file we could not read.
+    //
+    // Look up a tile in the index, or in the cache directory if another
+    // process may have downloaded it.
+    //
+    private static Long lookup(final TileCacheIndex tileCacheIndex, final String hash) {
+        final var fetched = tileCacheIndex.getFetched(hash);
+        return fetched != null ? fetched : tileCacheIndex.sync(hash);
+    }
 
-                LOGGER.error("Error: Failed to read cached tile {} ({})", url, path, e);
-                try {
-                    Files.deleteIfExists(cacheFile.toPath());
-                } catch (final IOException ex) {
-                    LOGGER.error(DELETE_ERROR, cacheFile, ex);
+    //
+    // Read and decode a cached tile, if it isn't too old. Tiles are only
+    // decoded when they are used, so a broken file is deleted and
+    // downloaded again.
+    //
+    private static BufferedImage readCachedTile(final String url, final String hash, final TileCacheIndex tileCacheIndex,
+        final Long fetched, final Long tileCacheTimeLimit) {
+        if (!isFresh(fetched, tileCacheTimeLimit)) {
+            return null;
+        }
+        final var cacheFile = tileCacheIndex.getTileFile(hash);
+        final var metadataFile = tileCacheIndex.getMetadataFile(hash);
+        final var cached = readCacheFile(url, cacheFile, metadataFile);
+        if (cached == null) {
+            tileCacheIndex.remove(hash);
+            return null;
+        }
+        try {
+            return decode(url, cached);
+        } catch (final UserException e) {
+            LOGGER.error("Error: Failed to decode cached tile {} ({})", url, cacheFile, e);
+            tileCacheIndex.remove(hash);
+            deleteCacheFile(cacheFile, metadataFile);
+            return null;
+        }
+    }
+
+    //
+    // Download a tile and write it into the cache. An expired tile is
+    // revalidated with a conditional request, if the server told us how;
+    // the server then only sends the tile again if it has changed.
+    //
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // the tile, its source and the cache
+    private static BufferedImage downloadTile(final String url, final String hash, final TileKey tileKey,
+        final TileFetcher tileFetcher, final TileCacheIndex tileCacheIndex) throws UserException {
+        final var cacheFile = tileCacheIndex.getTileFile(hash);
+        final var metadataFile = tileCacheIndex.getMetadataFile(hash);
+        final var cached = tileCacheIndex.getFetched(hash) == null ? null : readCacheFile(url, cacheFile, metadataFile);
+        final var revalidate = cached != null && cached.canRevalidate() ? cached : null;
+        final var tileData = tileFetcher.download(url, revalidate);
+        final var mapTile = decode(url, tileData);
+        try {
+            if (tileData == revalidate) { // NOPMD -- the same instance is returned if the tile has not changed
+                if (!cacheFile.toFile().setLastModified(System.currentTimeMillis())) {
+                    LOGGER.error("Error updating cached tile {} ({})", url, cacheFile);
                 }
+                tileCacheIndex.refresh(hash, System.currentTimeMillis());
+            } else {
+                final var size = writeCacheFile(tileData, tileFetcher.getUrlTemplate(), tileKey, cacheFile, metadataFile);
+                tileCacheIndex.put(hash, size, System.currentTimeMillis(), tileData.canRevalidate());
+                deleteTiles(tileCacheIndex, tileCacheIndex.evict(Preferences.getTileCacheSizeLimit()));
             }
+        } catch (final IOException e) {
+            // Treat as non-fatal. This should revert the behavior to the same
+            // as running without a cache.
+            LOGGER.error("Error writing cached tile {} ({})", url, cacheFile, e);
         }
 
-        //
-        // If we have been successful in reading our cached map tile then mapTile
-        // will be non-null. If it is null, then we need to download the image
-        // tile from the server and then write it into our cache.
-        //
-        if (mapTile == null) {          // Map tile doesn't exist or we could not read it
-            mapTile = unCachedGetTile(url, userAgent);
+        return mapTile;
+    }
+
+    private static BufferedImage waitFor(final String url, final CompletableFuture<BufferedImage> loading) throws UserException {
+        try {
+            return loading.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(String.format("interrupted while getting tile %s", url), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof UserException userException) {
+                throw userException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new UserException(String.format("error getting tile %s: %s", url, e.getCause()), e.getCause());
+        }
+    }
+
+    //
+    // Read a cached tile with its metadata, returns null if it can't be
+    // read. A tile without metadata can't be revalidated.
+    //
+    private static TileData readCacheFile(final String url, final Path cacheFile, final Path metadataFile) {
+        try {
+            final var bytes = Files.readAllBytes(cacheFile);
+            final var metadata = readMetadata(metadataFile.toFile());
+            return new TileData(bytes, metadata.getProperty(CONTENT_TYPE), metadata.getProperty(ETAG), metadata.getProperty(LAST_MODIFIED));
+        } catch (final NoSuchFileException e) {
+            // deleted by another process
+            return null;
+        } catch (final IOException e) {
+            // Treat as non-fatal, we will notify the user then attempt to
+            // remove the file we could not read.
+            LOGGER.error("Error: Failed to read cached tile {} ({})", url, cacheFile, e);
+            deleteCacheFile(cacheFile, metadataFile);
+            return null;
+        }
+    }
+
+    //
+    // Write the tile exactly as received from the server. Both files are
+    // written to a temporary file first and then renamed, so a tile is
+    // never read while it is written. The metadata is written last, so it
+    // never belongs to an older tile. The URL template and the position of
+    // the tile are stored too, so the tile can be put in a tile pack.
+    // Returns the size of both files.
+    //
+    private static long writeCacheFile(final TileData tileData, final String urlTemplate, final TileKey tileKey,
+        final Path cacheFile, final Path metadataFile) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Files.deleteIfExists(metadataFile);
+        writeAtomically(cacheFile, tileData.bytes());
+
+        final var metadata = new Properties();
+        if (tileData.contentType() != null) {
+            metadata.setProperty(CONTENT_TYPE, tileData.contentType());
+        }
+        if (tileData.etag() != null) {
+            metadata.setProperty(ETAG, tileData.etag());
+        }
+        if (tileData.lastModified() != null) {
+            metadata.setProperty(LAST_MODIFIED, tileData.lastModified());
+        }
+        metadata.setProperty(TEMPLATE, urlTemplate);
+        metadata.setProperty(ZOOM, Integer.toString(tileKey.zoom()));
+        metadata.setProperty(X, Integer.toString(tileKey.x()));
+        metadata.setProperty(Y, Integer.toString(tileKey.y()));
+        final var out = new ByteArrayOutputStream();
+        metadata.store(out, null);
+        writeAtomically(metadataFile, out.toByteArray());
+        return (long) tileData.bytes().length + out.size();
+    }
+
+    private static void writeAtomically(final Path path, final byte[] bytes) throws IOException {
+        final var tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp"); //NON-NLS
+        try {
+            Files.write(tempFile, bytes);
             try {
-                ImageIO.write(mapTile, CACHED_FILE_TYPE, cacheFile);
-            } catch (final IOException e) {
-                // Treat as non-fatal. This should revert the behavior to the same
-                // as running without a cache.
-                LOGGER.error("Error writing cached tile {} ({})", url, path, e);
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Properties readMetadata(final File metadataFile) throws IOException {
+        final var metadata = new Properties();
+        if (metadataFile.isFile()) {
+            try (var reader = Files.newBufferedReader(metadataFile.toPath(), StandardCharsets.UTF_8)) {
+                metadata.load(reader);
             }
         }
+        return metadata;
+    }
 
-        return mapTile;
+    static boolean canRevalidate(final File metadataFile) throws IOException {
+        final var metadata = readMetadata(metadataFile);
+        return metadata.containsKey(ETAG) || metadata.containsKey(LAST_MODIFIED);
     }
 
     //
@@ -207,7 +558,8 @@ public final class TileCache {
             if (cacheDir.exists()) {
                 result = cacheDir.isDirectory();
             } else {
-                if (!cacheDir.mkdirs()) {
+                // another thread may have created it in the meantime
+                if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
                     LOGGER.error("Can't create tile cache directory '{}'. Fallback to not caching the tiles!", cacheDir);
                     result = false;
                 }
@@ -217,25 +569,27 @@ public final class TileCache {
     }
 
     //
-    // Check age on a file and remove it if it is too old.
+    // Delete the files of tiles removed from the index. Files written or
+    // revalidated by another process in the meantime are kept, it is
+    // using them.
     //
-    private static void ageCacheFile(final File cacheFile, final Long tileCacheTimeLimit) {
-        final var fileDate = new Date(cacheFile.lastModified());
-        var msBetweenDates = new Date().getTime() - fileDate.getTime();
-        if ((msBetweenDates) > tileCacheTimeLimit) {
-            try {
-                Files.deleteIfExists(cacheFile.toPath());
-            } catch (final IOException e) {
-                LOGGER.error(DELETE_ERROR, cacheFile, e);
+    private static void deleteTiles(final TileCacheIndex tileCacheIndex, final List<String> hashes) {
+        for (final var hash : hashes) {
+            if (tileCacheIndex.canDelete(hash)) {
+                deleteCacheFile(tileCacheIndex.getTileFile(hash), tileCacheIndex.getMetadataFile(hash));
             }
         }
     }
 
+    private static void deleteCacheFile(final Path cacheFile, final Path metadataFile) {
+        TileCacheIndex.deleteFile(metadataFile);
+        TileCacheIndex.deleteFile(cacheFile);
+    }
+
     private static String hashName(final String url) throws UserException {
         try {
-            if (messageDigest == null) {
-                messageDigest = MessageDigest.getInstance("SHA-256");
-            }
+            // a message digest is not thread safe, the tiles are loaded in parallel
+            final var messageDigest = MessageDigest.getInstance("SHA-256");
             return bytesToHex(messageDigest.digest(url.getBytes(StandardCharsets.UTF_8)));
         } catch (final NoSuchAlgorithmException e) {
             throw new UserException("error creating hash name ".concat(url), e);
@@ -254,4 +608,36 @@ public final class TileCache {
         }
         return hexString.toString();
     }
+
+    //
+    // Read the tiles of a tile pack directly from the memory mapped file.
+    //
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,640 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * The layout and the index of the tile cache directory. The tiles are
+ * stored in 256 subdirectories named after the first two characters of the
+ * hash of their URL, so no directory gets too big. The index knows the size
+ * and the age of every cached tile, so looking up a tile, calculating the
+ * size of the cache and removing old tiles don't need to look at the files.
+ * It is kept in memory in least recently used order and saved in a compact
+ * binary file in the cache directory. If the index file is missing or
+ * broken, it is rebuilt from the cached files.
+ * <p>
+ * Several processes may use the same cache directory. Saving the index
+ * merges it with the index file under a file lock, so the changes of the
+ * other processes are neither lost nor overwritten. Tiles are downloaded
+ * while holding a tile lock, so a tile missing in several processes is
+ * only downloaded once.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TileCacheIndex {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileCacheIndex.class);
+
+    static final String TILE_FILE_EXTENSION = ".gpxac.tile"; //NON-NLS
+    static final String METADATA_FILE_EXTENSION = ".gpxac.meta"; //NON-NLS
+    static final String LEGACY_FILE_EXTENSION = ".gpxac.png"; //NON-NLS
+    static final String INDEX_FILE = "index.gpxac"; //NON-NLS
+    static final String LOCK_FILE = "index.gpxac.lock"; //NON-NLS
+
+    private static final int HASH_LENGTH = 64;
+    private static final int MAGIC = 0x47415449; // "GATI"
+    private static final int VERSION = 1;
+    private static final Pattern SHARD_PATTERN = Pattern.compile("[0-9a-f]{2}");
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    // the first byte of the lock file locks the index, the following bytes lock the tiles
+    private static final int INDEX_LOCK_POSITION = 0;
+    private static final int TILE_LOCK_STRIPES = 4_096;
+    private static final long MAX_LOCK_POLL_MILLIS = 50;
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(1_024, 0.75f, true);
+    private long size;
+    private boolean modified;
+
+    // the changes since the last merge with the index file, with the download time of the removed tiles
+    private final Set<String> added = new HashSet<>();
+    private final Map<String, Long> removed = new HashMap<>();
+    private long syncTime;
+
+    // file locks are held by the whole process, so the threads take turns first
+    private final ReentrantLock[] tileLocks = new ReentrantLock[TILE_LOCK_STRIPES];
+    private FileChannel lockChannel;
+
+    private TileCacheIndex(@NonNull final Path directory) {
+        this.directory = directory;
+        for (var stripe = 0; stripe < TILE_LOCK_STRIPES; stripe++) {
+            tileLocks[stripe] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Loads the index of a cache directory, or builds it if there is no
+     * valid index file.
+     *
+     * @param directory the cache directory
+     * @return the index
+     */
+    static TileCacheIndex open(@NonNull final Path directory) {
+        final var index = new TileCacheIndex(directory);
+        final var indexFile = directory.resolve(INDEX_FILE);
+        if (Files.isRegularFile(indexFile)) {
+            try {
+                load(indexFile, index.entries);
+                index.size = index.entries.values().stream().mapToLong(entry -> entry.size).sum();
+                index.syncTime = System.currentTimeMillis();
+                return index;
+            } catch (final IOException e) {
+                LOGGER.warn("Can't read the tile cache index {}, rebuilding it", indexFile, e);
+                index.entries.clear();
+            }
+        }
+        index.rebuild();
+        return index;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    Path getTileFile(@NonNull final String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash.concat(TILE_FILE_EXTENSION));
+    }
+
+    Path getMetadataFile(@NonNull final String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash.concat(METADATA_FILE_EXTENSION));
+    }
+
+    /**
+     * Looks up a tile and marks it as recently used.
+     *
+     * @param hash the hash of the URL of the tile
+     * @return the time the tile was downloaded or revalidated, <code>null</code> if it isn't cached
+     */
+    @Nullable
+    synchronized Long getFetched(@NonNull final String hash) {
+        final var entry = entries.get(hash);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        modified = true;
+        return entry.fetched;
+    }
+
+    /**
+     * Looks up a tile in the cache directory, because another process may
+     * have downloaded, revalidated or deleted it, and updates the index.
+     *
+     * @param hash the hash of the URL of the tile
+     * @return the time the tile was downloaded or revalidated, <code>null</code> if it isn't cached
+     */
+    @Nullable
+    synchronized Long sync(@NonNull final String hash) {
+        final var tileFile = getTileFile(hash).toFile();
+        final var lastModified = tileFile.lastModified();
+        if (lastModified == 0) { // the file doesn't exist
+            remove(hash);
+            return null;
+        }
+        final var entry = entries.get(hash);
+        if (entry == null || lastModified > entry.fetched) {
+            final var found = readFile(tileFile);
+            if (found == null) {
+                remove(hash);
+                return null;
+            }
+            put(hash, found.size, Math.max(lastModified, entry == null ? 0 : entry.fetched), found.revalidatable);
+        }
+        return getFetched(hash);
+    }
+
+    /**
+     * Adds a tile to the index or replaces it.
+     *
+     * @param hash the hash of the URL of the tile
+     * @param tileSize the size of the tile and its metadata in bytes
+     * @param fetched the time the tile was downloaded
+     * @param revalidatable <code>true</code> if the tile server can tell whether the tile has changed
+     */
+    synchronized void put(@NonNull final String hash, final long tileSize, final long fetched, final boolean revalidatable) {
+        final var entry = new Entry(tileSize, fetched, fetched, revalidatable);
+        final var previous = entries.put(hash, entry);
+        size += tileSize - (previous == null ? 0 : previous.size);
+        added.add(hash);
+        removed.remove(hash);
+        modified = true;
+    }
+
+    /**
+     * Marks a tile as revalidated, so it is valid for the whole time limit
+     * again.
+     *
+     * @param hash the hash of the URL of the tile
+     * @param fetched the time the tile was revalidated
+     */
+    synchronized void refresh(@NonNull final String hash, final long fetched) {
+        final var entry = entries.get(hash);
+        if (entry != null) {
+            entry.fetched = fetched;
+            added.add(hash);
+            modified = true;
+        }
+    }
+
+    synchronized void remove(@NonNull final String hash) {
+        final var entry = entries.remove(hash);
+        if (entry != null) {
+            size -= entry.size;
+            added.remove(hash);
+            removed.put(hash, entry.fetched);
+            modified = true;
+        }
+    }
+
+    /**
+     * Removes the least recently used tiles from the index, until the cache
+     * isn't bigger than the maximum size.
+     *
+     * @param maxSize the maximum size of the cache in bytes
+     * @return the hashes of the removed tiles, whose files must be deleted
+     */
+    synchronized List<String> evict(final long maxSize) {
+        final var evicted = new ArrayList<String>();
+        final var iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final var eldest = iterator.next();
+            size -= eldest.getValue().size;
+            evicted.add(eldest.getKey());
+            added.remove(eldest.getKey());
+            removed.put(eldest.getKey(), eldest.getValue().fetched);
+            iterator.remove();
+        }
+        modified |= !evicted.isEmpty();
+        return evicted;
+    }
+
+    /**
+     * Removes the tiles which are too old from the index.
+     *
+     * @param timeLimit the maximum age of the tiles in milliseconds
+     * @param keepRevalidatable <code>true</code> to keep the tiles the tile server can revalidate
+     * @return the hashes of the removed tiles, whose files must be deleted
+     */
+    synchronized List<String> expire(final long timeLimit, final boolean keepRevalidatable) {
+        final var now = System.currentTimeMillis();
+        final var expired = new ArrayList<String>();
+        final var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (now - entry.getValue().fetched > timeLimit && !(keepRevalidatable && entry.getValue().revalidatable)) {
+                size -= entry.getValue().size;
+                expired.add(entry.getKey());
+                added.remove(entry.getKey());
+                removed.put(entry.getKey(), entry.getValue().fetched);
+                iterator.remove();
+            }
+        }
+        modified |= !expired.isEmpty();
+        return expired;
+    }
+
+    synchronized List<String> getHashes() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether the files of a removed tile can be deleted. A file
+     * modified after this process downloaded or revalidated the tile has
+     * been written by another process, which uses it.
+     *
+     * @param hash the hash of the URL of the removed tile
+     * @return <code>true</code> if the files can be deleted
+     */
+    synchronized boolean canDelete(@NonNull final String hash) {
+        final var fetched = removed.get(hash);
+        return getTileFile(hash).toFile().lastModified() <= (fetched != null ? fetched : syncTime);
+    }
+
+    /**
+     * Writes the index file, if the index has changed since it was loaded
+     * or saved.
+     *
+     * @throws IOException if the index file can't be written
+     */
+    synchronized void save() throws IOException {
+        if (modified) {
+            sync();
+        }
+    }
+
+    /**
+     * Merges the index with the index file, which other processes may have
+     * changed, and writes the merged index. Tiles only known to the index
+     * file are added, tiles removed by this or another process are removed.
+     * The index file is locked, so the processes merge one after the other.
+     *
+     * @throws IOException if the index file can't be read or written
+     */
+    synchronized void sync() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final var fileLock = lock(INDEX_LOCK_POSITION);
+        try {
+            final var indexFile = directory.resolve(INDEX_FILE);
+            final var stored = new LinkedHashMap<String, Entry>();
+            if (Files.isRegularFile(indexFile)) {
+                try {
+                    load(indexFile, stored);
+                } catch (final IOException e) {
+                    LOGGER.warn("Can't read the tile cache index {}, replacing it", indexFile, e);
+                    stored.clear();
+                }
+            }
+            merge(stored);
+            write(indexFile);
+            added.clear();
+            removed.clear();
+            modified = false;
+            syncTime = System.currentTimeMillis();
+        } finally {
+            release(fileLock);
+        }
+    }
+
+    private void merge(@NonNull final Map<String, Entry> stored) {
+        final var merged = new ArrayList<Map.Entry<String, Entry>>();
+        for (final var storedEntry : stored.entrySet()) {
+            final var hash = storedEntry.getKey();
+            final var entry = entries.get(hash);
+            if (entry == null) {
+                // added by another process, unless we removed it
+                if (!removed.containsKey(hash)) {
+                    merged.add(storedEntry);
+                }
+            } else if (storedEntry.getValue().fetched > entry.fetched) {
+                // downloaded again by another process
+                final var newer = storedEntry.getValue();
+                merged.add(Map.entry(hash, new Entry(newer.size, newer.fetched, Math.max(newer.lastAccess, entry.lastAccess),
+                        newer.revalidatable)));
+            } else {
+                entry.lastAccess = Math.max(entry.lastAccess, storedEntry.getValue().lastAccess);
+                merged.add(Map.entry(hash, entry));
+            }
+        }
+        for (final var hash : added) {
+            // added or changed by us, and not known to the index file yet
+            final var entry = entries.get(hash);
+            if (entry != null && !stored.containsKey(hash)) {
+                merged.add(Map.entry(hash, entry));
+            }
+        }
+
+        merged.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        entries.clear();
+        size = 0;
+        for (final var entry : merged) {
+            entries.put(entry.getKey(), entry.getValue());
+            size += entry.getValue().size;
+        }
+    }
+
+    private void write(@NonNull final Path indexFile) throws IOException {
+        final var tempFile = Files.createTempFile(directory, INDEX_FILE, ".tmp"); //NON-NLS
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                // least recently used first, so loading restores the order
+                for (final var entry : entries.entrySet()) {
+                    out.write(HEX_FORMAT.parseHex(entry.getKey()));
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().fetched);
+                    out.writeLong(entry.getValue().lastAccess);
+                    out.writeBoolean(entry.getValue().revalidatable);
+                }
+            }
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Locks a tile against other threads and processes, while it is
+     * downloaded and written. Different tiles may share a lock.
+     *
+     * @param hash the hash of the URL of the tile
+     * @return the lock, which must be closed
+     */
+    TileLock lockTile(@NonNull final String hash) {
+        final var stripe = Integer.parseInt(hash.substring(0, 3), 16);
+        final var threadLock = tileLocks[stripe];
+        threadLock.lock();
+        return new TileLock(threadLock, lock(INDEX_LOCK_POSITION + 1 + stripe));
+    }
+
+    //
+    // Lock one byte of the lock file. Returns null if the lock file can't
+    // be used, then only the threads of this process are synchronized. An
+    // interrupted thread closes the channel, so it is opened again if
+    // needed.
+    //
+    // The operating system treats all threads of a process as one owner of
+    // its locks. Waiting for a lock could be mistaken for a deadlock when
+    // threads of two processes hold and wait for different tiles, so the
+    // lock is polled instead.
+    //
+    @Nullable
+    private FileLock lock(final long position) {
+        final FileChannel channel;
+        synchronized (tileLocks) {
+            if (lockChannel == null || !lockChannel.isOpen()) {
+                try {
+                    lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                } catch (final IOException e) {
+                    LOGGER.warn("Can't open the tile cache lock file in {}, other processes may use the cache at the same time",
+                            directory, e);
+                    return null;
+                }
+            }
+            channel = lockChannel;
+        }
+        try {
+            var delay = 1L;
+            for (var fileLock = channel.tryLock(position, 1, false); ; fileLock = channel.tryLock(position, 1, false)) {
+                if (fileLock != null) {
+                    return fileLock;
+                }
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, MAX_LOCK_POLL_MILLIS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null; // the thread is stopped, so its download fails anyway
+        } catch (final ClosedByInterruptException e) {
+            return null; // the thread is stopped, so its download fails anyway
+        } catch (final IOException e) {
+            LOGGER.warn("Can't lock the tile cache in {}", directory, e);
+            return null;
+        }
+    }
+
+    private static void release(@Nullable final FileLock fileLock) {
+        if (fileLock != null && fileLock.isValid()) {
+            try {
+                fileLock.release();
+            } catch (final IOException e) {
+                LOGGER.warn("Can't unlock the tile cache", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the lock file. Other processes can then lock the cache.
+     */
+    void close() {
+        synchronized (tileLocks) {
+            if (lockChannel != null) {
+                try {
+                    lockChannel.close();
+                } catch (final IOException e) {
+                    LOGGER.warn("Can't close the tile cache lock file in {}", directory, e);
+                }
+                lockChannel = null;
+            }
+        }
+    }
+
+    private static void load(@NonNull final Path indexFile, @NonNull final Map<String, Entry> loaded) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown tile cache index format"); //NON-NLS
+            }
+            final var count = in.readInt();
+            final var hash = new byte[HASH_LENGTH / 2];
+            for (var i = 0; i < count; i++) {
+                in.readFully(hash);
+                loaded.put(HEX_FORMAT.formatHex(hash), new Entry(in.readLong(), in.readLong(), in.readLong(), in.readBoolean()));
+            }
+        }
+    }
+
+    //
+    // Build the index from the cached files. Tiles found directly in the
+    // cache directory are moved to their subdirectory first, tiles in the
+    // old PNG format can't be used anymore and are deleted. Unknown files
+    // are left alone.
+    //
+    private void rebuild() {
+        final var files = directory.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final var file : files) {
+            final var name = file.getName();
+            if (isCacheFile(name, TILE_FILE_EXTENSION) || isCacheFile(name, METADATA_FILE_EXTENSION)) {
+                moveToShard(file);
+            } else if (isCacheFile(name, LEGACY_FILE_EXTENSION)) {
+                deleteFile(file.toPath());
+            } else if (!(file.isDirectory() && SHARD_PATTERN.matcher(name).matches()) && !name.startsWith(INDEX_FILE)
+                    && !name.endsWith(TilePack.FILE_EXTENSION)) {
+                LOGGER.error("Error: Unknown file in tile cache: {}", name);
+            }
+        }
+
+        final var found = new ArrayList<Map.Entry<String, Entry>>();
+        for (var shard = 0; shard < 256; shard++) {
+            final var shardFiles = directory.resolve(HEX_FORMAT.toHexDigits((byte) shard)).toFile().listFiles();
+            if (shardFiles != null) {
+                for (final var shardFile : shardFiles) {
+                    final var entry = readFile(shardFile);
+                    if (entry != null) {
+                        found.add(Map.entry(shardFile.getName().substring(0, HASH_LENGTH), entry));
+                    }
+                }
+            }
+        }
+
+        // the modification time is the best guess for the last access
+        found.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (final var entry : found) {
+            entries.put(entry.getKey(), entry.getValue());
+            added.add(entry.getKey());
+            size += entry.getValue().size;
+        }
+        modified = true;
+        syncTime = System.currentTimeMillis();
+        LOGGER.info("Rebuilt the tile cache index with {} tiles in {}", entries.size(), directory);
+    }
+
+    @Nullable
+    private Entry readFile(@NonNull final File tileFile) {
+        final var name = tileFile.getName();
+        if (!isCacheFile(name, TILE_FILE_EXTENSION) || !tileFile.isFile()) {
+            return null;
+        }
+        final var metadataFile = getMetadataFile(name.substring(0, HASH_LENGTH)).toFile();
+        var revalidatable = false;
+        try {
+            revalidatable = TileCache.canRevalidate(metadataFile);
+        } catch (final IOException e) {
+            LOGGER.warn("Can't read the metadata of the cached tile {}", tileFile, e);
+        }
+        final var lastModified = tileFile.lastModified();
+        return new Entry(tileFile.length() + metadataFile.length(), lastModified, lastModified, revalidatable);
+    }
+
+    private void moveToShard(@NonNull final File file) {
+        final var target = directory.resolve(file.getName().substring(0, 2)).resolve(file.getName());
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            LOGGER.error("Can't move tile cache file {} to {}", file, target, e);
+        }
+    }
+
+    static boolean isCacheFile(@NonNull final String filename, @NonNull final String extension) {
+        return filename.length() == HASH_LENGTH + extension.length() && filename.endsWith(extension);
+    }
+
+    static void deleteFile(@NonNull final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            LOGGER.error("Can't delete tile cache file: {}", file, e);
+        }
+    }
+
+    /**
+     * The lock of a tile, which is released when it is closed.
+     */
+    static final class TileLock implements AutoCloseable {
+        private final ReentrantLock threadLock;
+        private final FileLock fileLock;
+
+        private TileLock(@NonNull final ReentrantLock threadLock, @Nullable final FileLock fileLock) {
+            this.threadLock = threadLock;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() {
+            try {
+                release(fileLock);
+            } finally {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.DataClass") // a mutable entry of the index
+    private static final class Entry {
+        private final long size;
+        private final boolean revalidatable;
+        private long fetched;
+        private long lastAccess;
+
+        private Entry(final long size, final long fetched, final long lastAccess, final boolean revalidatable) {
+            this.size = size;
+            this.fetched = fetched;
+            this.lastAccess = lastAccess;
+            this.revalidatable = revalidatable;
+        }
+    }
+
+}
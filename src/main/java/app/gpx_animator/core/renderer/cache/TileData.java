@@ -0,0 +1,43 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * A tile as sent by the tile server, with the response headers needed to
+ * decode it and to ask the server later whether it has changed.
+ *
+ * @param bytes the content of the response, not modified by anyone
+ * @param contentType the media type of the tile, <code>null</code> if unknown
+ * @param etag the entity tag of the tile, <code>null</code> if the server didn't send one
+ * @param lastModified the modification date of the tile as sent by the server, <code>null</code> if unknown
+ */
+@SuppressFBWarnings(value = {"EI_EXPOSE_REP", "EI_EXPOSE_REP2"}, justification = "the bytes are never modified")
+record TileData(@NonNull byte[] bytes, @Nullable String contentType, @Nullable String etag, @Nullable String lastModified) {
+
+    /**
+     * Checks if the tile server can tell whether the tile has changed.
+     *
+     * @return <code>true</code> if a conditional request is possible
+     */
+    boolean canRevalidate() {
+        return etag != null || lastModified != null;
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.Constants;
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Loads the tiles of a tile map service in parallel. All fetchers share one
+ * HTTP client, which keeps the connections to the tile servers alive. The
+ * number of parallel downloads from each server is limited, the subdomains
+ * of a <code>{switch:a,b,c}</code> template count as separate servers.
+ * Failed downloads are retried with an increasing delay, if the error may be
+ * temporary.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TileFetcher implements AutoCloseable {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileFetcher.class);
+
+    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
+    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private final String urlTemplate;
+    private final String apiKey;
+    private final String userAgent;
+    private final String[] switchOptions;
+    private final long templateHash;
+    private final int connectionsPerHost;
+    private final String tileCacheDir;
+    private final Long tileCacheTimeLimit;
+    private final long initialBackoffMillis;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    /**
+     * Creates a fetcher for the tiles of a tile map service.
+     *
+     * @param urlTemplate the URL template with the placeholders <code>{zoom}</code>, <code>{x}</code>,
+     *                    <code>{y}</code>, <code>{apikey}</code> and optionally <code>{switch:a,b,c}</code>
+     * @param apiKey the API key for the tile map service
+     * @param userAgent the user agent sent to the tile server, blank for the default user agent
+     * @param connectionsPerHost the maximum number of parallel downloads from one server
+     * @param tileCacheDir the directory of the tile cache, blank to disable the cache
+     * @param tileCacheTimeLimit the maximum age of the cached tiles in milliseconds
+     */
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // all settings of the tile map service
+    public TileFetcher(@NonNull final String urlTemplate, @Nullable final String apiKey, @Nullable final String userAgent,
+                       final int connectionsPerHost, @Nullable final String tileCacheDir, @Nullable final Long tileCacheTimeLimit) {
+        this(urlTemplate, apiKey, userAgent, connectionsPerHost, tileCacheDir, tileCacheTimeLimit, INITIAL_BACKOFF_MILLIS);
+    }
+
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // all settings of the tile map service
+    TileFetcher(@NonNull final String urlTemplate, @Nullable final String apiKey, @Nullable final String userAgent,
+                final int connectionsPerHost, @Nullable final String tileCacheDir, @Nullable final Long tileCacheTimeLimit,
+                final long initialBackoffMillis) {
+        this.urlTemplate = urlTemplate;
+        this.apiKey = apiKey == null ? "" : apiKey;
+        this.userAgent = userAgent == null || userAgent.isBlank() ? Constants.USER_AGENT : userAgent;
+        this.connectionsPerHost = Math.max(1, connectionsPerHost);
+        this.tileCacheDir = tileCacheDir;
+        this.tileCacheTimeLimit = tileCacheTimeLimit == null ? Long.MAX_VALUE : tileCacheTimeLimit;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        final var matcher = SWITCH_PATTERN.matcher(urlTemplate);
+        switchOptions = matcher.find() ? matcher.group(1).split(",") : null; // note that only one switch in pattern is supported
+        templateHash = TilePack.getTemplateHash(urlTemplate);
+
+        // cached tiles are read in parallel too, so there is a thread for every possible download
+        final var threadNumber = new AtomicInteger();
+        final var threads = (switchOptions == null ? 1 : switchOptions.length) * this.connectionsPerHost;
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "tile fetcher " + threadNumber.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    String getUrlTemplate() {
+        return urlTemplate;
+    }
+
+    long getTemplateHash() {
+        return templateHash;
+    }
+
+    /**
+     * Returns the URL of a tile. The subdomain of a <code>{switch:a,b,c}</code>
+     * template is chosen by the position of the tile, so neighbouring tiles
+     * are loaded from different servers and the same tile always from the
+     * same server.
+     *
+     * @param tileKey the tile
+     * @return the URL of the tile
+     */
+    public String getUrl(@NonNull final TileKey tileKey) {
+        var url = urlTemplate
+                .replace("{zoom}", Integer.toString(tileKey.zoom())) //NON-NLS
+                .replace("{x}", Integer.toString(tileKey.x())) //NON-NLS
+                .replace("{y}", Integer.toString(tileKey.y())) //NON-NLS
+                .replace("{apikey}", apiKey); //NON-NLS
+
+        if (switchOptions != null) {
+            final var sb = new StringBuilder();
+            final var matcher = SWITCH_PATTERN.matcher(url);
+            if (matcher.find()) {
+                matcher.appendReplacement(sb, switchOptions[Math.floorMod(tileKey.x() + tileKey.y(), switchOptions.length)]);
+            }
+            matcher.appendTail(sb);
+            url = sb.toString();
+        }
+        return url;
+    }
+
+    /**
+     * Loads a tile from the tile cache or the tile server in the background.
+     *
+     * @param tileKey the tile to load
+     * @return the future tile, completed exceptionally with a {@link UserException} if it can't be loaded
+     */
+    public CompletableFuture<BufferedImage> fetch(@NonNull final TileKey tileKey) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TileCache.getTile(tileKey, this, tileCacheDir, tileCacheTimeLimit);
+            } catch (final UserException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Puts a tile into the tile cache in the background, if it isn't cached
+     * yet or too old.
+     *
+     * @param tileKey the tile to load
+     * @return the future result, <code>true</code> if the tile was downloaded, completed exceptionally with a
+     *         {@link UserException} if it can't be loaded
+     */
+    public CompletableFuture<Boolean> prefetch(@NonNull final TileKey tileKey) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TileCache.prefetchTile(tileKey, this, tileCacheDir, tileCacheTimeLimit);
+            } catch (final UserException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Downloads a tile from a tile server. Waits while the maximum number of
+     * downloads from the same server is running. If a cached tile is given,
+     * the server is asked whether it has changed and the tile is only
+     * downloaded again if it has.
+     *
+     * @param url the URL of the tile
+     * @param cached the cached tile to revalidate, <code>null</code> to always download the tile
+     * @return the downloaded tile, or the cached tile if it hasn't changed
+     * @throws UserException if the tile can't be downloaded
+     */
+    TileData download(@NonNull final String url, @Nullable final TileData cached) throws UserException {
+        final URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (final IllegalArgumentException e) {
+            throw new UserException(String.format("invalid tile URL %s", url), e);
+        }
+        final var requestBuilder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", userAgent) //NON-NLS
+                .GET();
+        if (cached != null && cached.etag() != null) {
+            requestBuilder.header("If-None-Match", cached.etag()); //NON-NLS
+        }
+        if (cached != null && cached.lastModified() != null) {
+            requestBuilder.header("If-Modified-Since", cached.lastModified()); //NON-NLS
+        }
+        final var request = requestBuilder.build();
+
+        final var permits = hostPermits.computeIfAbsent(String.valueOf(uri.getHost()), host -> new Semaphore(connectionsPerHost));
+        var backoff = initialBackoffMillis;
+        for (var attempt = 1; ; attempt++) {
+            String error;
+            try {
+                permits.acquire();
+                final HttpResponse<byte[]> response;
+                try {
+                    response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                } finally {
+                    permits.release();
+                }
+                final var status = response.statusCode();
+                if (status == 200) { // NOPMD -- HTTP OK
+                    final var headers = response.headers();
+                    return new TileData(response.body(), headers.firstValue("Content-Type").orElse(null), //NON-NLS
+                            headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null)); //NON-NLS
+                }
+                if (status == 304 && cached != null) { // NOPMD -- HTTP not modified
+                    return cached;
+                }
+                error = "HTTP status " + status; //NON-NLS
+                if (status != 429 && status < 500) { // NOPMD -- only too many requests and server errors may be temporary
+                    throw new UserException(String.format("error getting tile %s: %s", url, error));
+                }
+            } catch (final IOException e) {
+                error = e.toString();
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new UserException(String.format("error getting tile %s: %s", url, error), e);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException(String.format("interrupted while getting tile %s", url), e);
+            }
+
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new UserException(String.format("error getting tile %s: %s", url, error));
+            }
+            LOGGER.warn("Attempt {} to get tile {} failed ({}), retrying in {} ms", attempt, url, error, backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException(String.format("interrupted while getting tile %s", url), e);
+            }
+            backoff *= 2;
+        }
+    }
+
+    /**
+     * Stops all downloads which haven't started yet, saves the index of the
+     * tile cache and logs the statistics of the memory tile cache.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        TileCache.saveIndex();
+        final var memoryTileCache = MemoryTileCache.getShared();
+        LOGGER.info("Map tiles in memory: {} hits, {} misses, {} evictions since start, {} of {} KB used",
+                memoryTileCache.getHits(), memoryTileCache.getMisses(), memoryTileCache.getEvictions(),
+                memoryTileCache.getBytes() / 1_024, memoryTileCache.getMaxBytes() / 1_024);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read-only archive of map tiles in one file, to ship a pre-filled tile
+ * cache, e.g. to the computers of a render farm. The file contains the
+ * tiles as sent by the tile server, followed by an index sorted by the URL
+ * template, the zoom level and the position of the tiles. The file is
+ * memory mapped, a tile is found by a binary search in the index and read
+ * without copying it.
+ *
+ * <pre>
+ * header:  int magic, int version
+ * tiles:   the bytes of the tiles, no tile crosses a segment boundary
+ * index:   per tile: long template hash, int zoom, int x, int y, long offset, int length
+ * trailer: long index offset, int tile count, int magic
+ * </pre>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TilePack implements AutoCloseable {
+
+    public static final String FILE_EXTENSION = ".gpxpack"; //NON-NLS
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TilePack.class);
+
+    private static final int MAGIC = 0x47415450; // "GATP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+    // the tiles are mapped in segments, a single mapping can't be bigger than 2 GB
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer index;
+    private final int tileCount;
+    private final MappedByteBuffer[] segments;
+
+    private TilePack(@NonNull final Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final var size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Not a tile pack: " + file); //NON-NLS
+            }
+            final var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a tile pack of version %d: %s".formatted(VERSION, file)); //NON-NLS
+            }
+            final var trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+            final var indexOffset = trailer.getLong();
+            tileCount = trailer.getInt();
+            if (trailer.getInt() != MAGIC || tileCount < 0 || indexOffset < HEADER_SIZE
+                    || indexOffset + (long) tileCount * RECORD_SIZE != size - TRAILER_SIZE) {
+                throw new IOException("Not a tile pack: " + file); //NON-NLS
+            }
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) tileCount * RECORD_SIZE);
+            segments = new MappedByteBuffer[(int) ((indexOffset + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (var segment = 0; segment < segments.length; segment++) {
+                final var start = segment * SEGMENT_SIZE;
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, indexOffset - start));
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            channel.close();
+            throw new IOException("Invalid tile pack: " + file, e); //NON-NLS
+        }
+    }
+
+    /**
+     * Opens a tile pack.
+     *
+     * @param file the tile pack file
+     * @return the tile pack
+     * @throws IOException if the file can't be read or isn't a tile pack
+     */
+    public static TilePack open(@NonNull final Path file) throws IOException {
+        return new TilePack(file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Looks up a tile.
+     *
+     * @param templateHash the hash of the URL template, see {@link #getTemplateHash(String)}
+     * @param tileKey the tile
+     * @return a read-only view of the bytes of the tile in the pack, <code>null</code> if the pack doesn't contain the tile
+     */
+    @Nullable
+    public ByteBuffer getTile(final long templateHash, @NonNull final TileKey tileKey) {
+        var low = 0;
+        var high = tileCount - 1;
+        while (low <= high) {
+            final var middle = (low + high) >>> 1;
+            final var position = middle * RECORD_SIZE;
+            final var compared = compare(index.getLong(position), index.getInt(position + 8), index.getInt(position + 12),
+                    index.getInt(position + 16), templateHash, tileKey);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                final var offset = index.getLong(position + 20);
+                final var length = index.getInt(position + 28);
+                return segments[(int) (offset / SEGMENT_SIZE)].slice((int) (offset % SEGMENT_SIZE), length).asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Calculates the key of a URL template in a tile pack. Tiles loaded with
+     * the same template, including its placeholders, share the same key.
+     *
+     * @param urlTemplate the URL template of the tile map service
+     * @return the hash of the template
+     */
+    public static long getTemplateHash(@NonNull final String urlTemplate) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(urlTemplate.getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a tile pack.
+     *
+     * @param file the tile pack file to write, replaced if it exists
+     * @param tiles the tiles to pack
+     * @throws IOException if a tile can't be read or the tile pack can't be written
+     */
+    public static void write(@NonNull final Path file, @NonNull final List<PackedTile> tiles) throws IOException {
+        final var sorted = new ArrayList<>(tiles);
+        sorted.sort(Comparator.naturalOrder());
+
+        final var directory = file.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); //NON-NLS
+        try {
+            final var offsets = new long[sorted.size()];
+            final var lengths = new int[sorted.size()];
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                var offset = (long) HEADER_SIZE;
+                for (var i = 0; i < sorted.size(); i++) {
+                    final var bytes = Files.readAllBytes(sorted.get(i).file());
+                    if (offset / SEGMENT_SIZE != (offset + bytes.length - 1) / SEGMENT_SIZE) {
+                        final var padding = SEGMENT_SIZE - offset % SEGMENT_SIZE;
+                        out.write(new byte[(int) padding]);
+                        offset += padding;
+                    }
+                    out.write(bytes);
+                    offsets[i] = offset;
+                    lengths[i] = bytes.length;
+                    offset += bytes.length;
+                }
+                final var indexOffset = offset;
+                for (var i = 0; i < sorted.size(); i++) {
+                    final var tile = sorted.get(i);
+                    out.writeLong(tile.templateHash());
+                    out.writeInt(tile.tileKey().zoom());
+                    out.writeInt(tile.tileKey().x());
+                    out.writeInt(tile.tileKey().y());
+                    out.writeLong(offsets[i]);
+                    out.writeInt(lengths[i]);
+                }
+                out.writeLong(indexOffset);
+                out.writeInt(sorted.size());
+                out.writeInt(MAGIC);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        LOGGER.info("Wrote {} tiles to the tile pack {}", sorted.size(), file);
+    }
+
+    private static int compare(final long templateHash, final int zoom, final int x, final int y,
+                               final long otherTemplateHash, @NonNull final TileKey other) {
+        var compared = Long.compare(templateHash, otherTemplateHash);
+        if (compared == 0) {
+            compared = Integer.compare(zoom, other.zoom());
+        }
+        if (compared == 0) {
+            compared = Integer.compare(x, other.x());
+        }
+        if (compared == 0) {
+            compared = Integer.compare(y, other.y());
+        }
+        return compared;
+    }
+
+    /**
+     * A tile to write into a tile pack.
+     *
+     * @param templateHash the hash of the URL template of the tile
+     * @param tileKey the tile
+     * @param file the file with the bytes of the tile
+     */
+    public record PackedTile(long templateHash, @NonNull TileKey tileKey, @NonNull Path file) implements Comparable<PackedTile> {
+
+        @Override
+        public int compareTo(@NonNull final PackedTile other) {
+            return compare(templateHash, tileKey.zoom(), tileKey.x(), tileKey.y(), other.templateHash, other.tileKey);
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.data.gpx.GpxParser;
+import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.RenderingContext;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Downloads the map tiles of a configuration into the tile cache, so the
+ * video can be rendered without a connection to the tile server. For every
+ * zoom level, the tiles of the area the renderer would use at this zoom
+ * level are loaded: the tracks or the configured latitude and longitude,
+ * the margin and the configured width and height. Tiles which are already
+ * cached and not too old are skipped, so an interrupted run continues
+ * where it stopped.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TilePrefetcher {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TilePrefetcher.class);
+
+    // the number of tiles loaded at the same time, enough to keep all connections busy
+    private static final int FETCH_WINDOW = 64;
+
+    private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
+
+    private final Configuration cfg;
+    private final int minZoom;
+    private final int maxZoom;
+
+    private double minX = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a prefetcher for the map tiles of a configuration.
+     *
+     * @param cfg the configuration with the tracks and the tile map service
+     * @param minZoom the lowest zoom level to load
+     * @param maxZoom the highest zoom level to load
+     */
+    public TilePrefetcher(@NonNull final Configuration cfg, final int minZoom, final int maxZoom) {
+        this.cfg = cfg;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * Downloads all missing tiles into the tile cache. A tile which can't be
+     * downloaded doesn't stop the other downloads.
+     *
+     * @param rc the context for the progress and to cancel the downloads
+     * @return the number of downloaded tiles
+     * @throws UserException if the configuration has no map or bounds, or any tile couldn't be downloaded
+     */
+    public int prefetch(@NonNull final RenderingContext rc) throws UserException {
+        if (cfg.getTmsUrlTemplate() == null) {
+            throw new UserException("no TMS URL template for the background map");
+        }
+        if (minZoom < 0 || maxZoom < minZoom) {
+            throw new UserException(String.format("invalid zoom range %d-%d", minZoom, maxZoom));
+        }
+        calculateBounds();
+
+        final var areas = new ArrayList<TileArea>();
+        var total = 0L;
+        for (var zoom = minZoom; zoom <= maxZoom; zoom++) {
+            final var area = getTileArea(zoom);
+            areas.add(area);
+            total += area.getTileCount();
+        }
+        LOGGER.info("Prefetching {} map tiles of the zoom levels {} to {}", total, minZoom, maxZoom);
+
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+        try (var fetcher = new TileFetcher(cfg.getTmsUrlTemplate(), cfg.getTmsApiKey(), cfg.getTmsUserAgent(),
+                cfg.getTmsConnectionsPerHost(), tileCacheDir, tileCacheTimeLimit)) {
+            return fetchTiles(fetcher, areas, total, rc);
+        }
+    }
+
+    private int fetchTiles(@NonNull final TileFetcher fetcher, @NonNull final List<TileArea> areas, final long total,
+                           @NonNull final RenderingContext rc) throws UserException {
+        final var inFlight = new ArrayDeque<CompletableFuture<Boolean>>();
+        var done = 0L;
+        var downloaded = 0;
+        var failed = 0;
+        var lastPercent = -1;
+        for (final var area : areas) {
+            for (var x = area.minX(); x <= area.maxX(); x++) {
+                for (var y = area.minY(); y <= area.maxY(); y++) {
+                    if (inFlight.size() >= FETCH_WINDOW) {
+                        if (rc.isCancelled1()) {
+                            inFlight.forEach(future -> future.cancel(false));
+                            return downloaded;
+                        }
+                        final var result = waitFor(inFlight.removeFirst());
+                        downloaded += result == Boolean.TRUE ? 1 : 0;
+                        failed += result == null ? 1 : 0;
+                        lastPercent = reportProgress(rc, ++done, total, downloaded, failed, lastPercent);
+                    }
+                    inFlight.add(fetcher.prefetch(new TileKey(area.zoom(), x, y)));
+                }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            final var result = waitFor(inFlight.removeFirst());
+            downloaded += result == Boolean.TRUE ? 1 : 0;
+            failed += result == null ? 1 : 0;
+            lastPercent = reportProgress(rc, ++done, total, downloaded, failed, lastPercent);
+        }
+
+        if (failed > 0) {
+            throw new UserException(String.format(resourceBundle.getString("map.prefetch.failed"), failed, total));
+        }
+        return downloaded;
+    }
+
+    private int reportProgress(@NonNull final RenderingContext rc, final long done, final long total,
+                               final int downloaded, final int failed, final int lastPercent) {
+        final var percent = (int) (100 * done / total);
+        if (percent != lastPercent) {
+            rc.setProgress1(percent, String.format(resourceBundle.getString("map.prefetch.progress"), done, total, downloaded, failed));
+        }
+        return percent;
+    }
+
+    //
+    // Returns whether the tile was downloaded, or null if it failed. The
+    // error is logged, the other tiles are still loaded.
+    //
+    private static Boolean waitFor(@NonNull final CompletableFuture<Boolean> future) throws UserException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException("interrupted while prefetching the map tiles", e);
+        } catch (final ExecutionException e) {
+            LOGGER.error("Error prefetching a map tile: {}", e.getCause().getMessage());
+            return null; // NOPMD -- null marks a failed download
+        }
+    }
+
+    //
+    // The same bounds as the renderer uses, in the Mercator projection
+    // without the margin, which depends on the zoom level.
+    //
+    private void calculateBounds() throws UserException {
+        final var lonSpecified = cfg.getMinLon() != null && cfg.getMaxLon() != null;
+        final var latSpecified = cfg.getMinLat() != null && cfg.getMaxLat() != null;
+        if (!lonSpecified || !latSpecified) {
+            final var inputGpxFiles = cfg.getTrackConfigurationList().stream().map(TrackConfiguration::getInputGpx).toList();
+            final var renderThreads = cfg.getRenderThreads();
+            final var threads = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+            GpxParser.parseGpx(inputGpxFiles, threads, Path.of(Preferences.getTrackCacheDir()), (index, gch) -> {
+                final var trackPoints = gch.getTrackPoints();
+                for (var i = 0; i < trackPoints.size(); i++) {
+                    final var x = lonToX(trackPoints.getLon(i));
+                    final var y = latToY(trackPoints.getLat(i));
+                    minX = Math.min(x, minX);
+                    maxX = Math.max(x, maxX);
+                    minY = Math.min(y, minY);
+                    maxY = Math.max(y, maxY);
+                }
+            });
+        }
+        if (lonSpecified) {
+            minX = lonToX(cfg.getMinLon());
+            maxX = lonToX(cfg.getMaxLon());
+        }
+        if (latSpecified) {
+            minY = latToY(cfg.getMinLat());
+            maxY = latToY(cfg.getMaxLat());
+        }
+        if (minX > maxX || minY > maxY) {
+            throw new UserException("no track points and no latitude and longitude to prefetch the map tiles for");
+        }
+    }
+
+    private TileArea getTileArea(final int zoom) {
+        final var scale = (128.0 * (1 << zoom)) / Math.PI;
+        var left = minX - cfg.getMargin() / scale;
+        var right = maxX + cfg.getMargin() / scale;
+        var bottom = minY - cfg.getMargin() / scale;
+        var top = maxY + cfg.getMargin() / scale;
+
+        if (cfg.getWidth() != null) {
+            final var ww = cfg.getWidth() - (right - left) * scale;
+            left -= ww / scale / 2.0;
+            right += ww / scale / 2.0;
+        }
+        if (cfg.getHeight() != null) {
+            final var hh = cfg.getHeight() - (top - bottom) * scale;
+            bottom -= hh / scale / 2.0;
+            top += hh / scale / 2.0;
+        }
+
+        final var maxTile = (1 << zoom) - 1;
+        return new TileArea(zoom,
+                clamp((int) Math.floor(xToTileX(zoom, left)), maxTile), clamp((int) Math.floor(xToTileX(zoom, right)), maxTile),
+                clamp((int) Math.floor(yToTileY(zoom, top)), maxTile), clamp((int) Math.floor(yToTileY(zoom, bottom)), maxTile));
+    }
+
+    private static int clamp(final int tile, final int maxTile) {
+        return Math.max(0, Math.min(maxTile, tile));
+    }
+
+    private static double lonToX(final double lon) {
+        return Math.toRadians(lon);
+    }
+
+    private static double latToY(final double lat) {
+        return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
+    }
+
+    private static double xToTileX(final int zoom, final double x) {
+        return (Math.toDegrees(x) + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    private static double yToTileY(final int zoom, final double y) {
+        final var lat = Math.toRadians(Math.toDegrees(2.0 * (Math.atan(Math.exp(y)) - Math.PI / 4.0)));
+        return (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * (1 << zoom);
+    }
+
+    private record TileArea(int zoom, int minX, int maxX, int minY, int maxY) {
+
+        private long getTileCount() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.canvas;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * The map behind the video with the background and the already completed
+ * parts of the tracks. The map is either a single image or, if it is too big
+ * for one image, split into tiles. All drawing goes through a {@link Painter},
+ * so the same drawing code works for both. A canvas is not thread safe.
+ */
+public interface Canvas extends AutoCloseable {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * The type of the images returned by {@link #copyTo}, see
+     * {@link BufferedImage#getType()}.
+     *
+     * @return the image type
+     */
+    int getType();
+
+    /**
+     * Fills the whole canvas with a color.
+     *
+     * @param color the color to fill the canvas with
+     */
+    void fill(@NonNull Color color);
+
+    /**
+     * Draws on the canvas. The painter may be called more than once, with
+     * graphics contexts clipped to different parts of the canvas, and must
+     * draw the same for every call.
+     *
+     * @param painter the drawing code
+     * @return the bounds returned by the painter
+     */
+    Rectangle2D draw(@NonNull Painter painter);
+
+    /**
+     * Copies a rectangular area of the canvas into an image.
+     *
+     * @param area the area to copy, clipped to the bounds of the canvas
+     * @param target the image to copy into, must have the type of the canvas
+     * @param targetX the x coordinate of the copied area in the target image
+     * @param targetY the y coordinate of the copied area in the target image
+     */
+    void copyTo(@NonNull Rectangle area, @NonNull BufferedImage target, int targetX, int targetY);
+
+    /**
+     * Writes pixels directly into the images of the canvas, without a
+     * graphics context. The writer is called once for every part of the
+     * area stored in one image. The parts don't overlap.
+     *
+     * @param area the area to write, clipped to the bounds of the canvas
+     * @param writer the code writing the pixels
+     */
+    void write(@NonNull Rectangle area, @NonNull PixelWriter writer);
+
+    /**
+     * Frees the resources of the canvas.
+     */
+    @Override
+    void close();
+
+    /**
+     * Calls a painter on a graphics context which doesn't draw anything, to
+     * get the bounds of the drawing in advance.
+     *
+     * @param painter the drawing code
+     * @return the bounds returned by the painter
+     */
+    @Nullable
+    static Rectangle2D measure(@NonNull final Painter painter) {
+        final var g2 = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR).createGraphics();
+        g2.setClip(0, 0, 0, 0);
+        try {
+            return painter.paint(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    @FunctionalInterface
+    interface Painter {
+
+        /**
+         * Draws on the canvas.
+         *
+         * @param g2 a graphics context in the coordinates of the canvas without any rendering hints
+         * @return the bounds of everything drawn, <code>null</code> if nothing was drawn
+         */
+        @Nullable
+        Rectangle2D paint(@NonNull Graphics2D g2);
+    }
+
+    @FunctionalInterface
+    interface PixelWriter {
+
+        /**
+         * Writes the pixels of a part of the area.
+         *
+         * @param pixels the pixels of the image holding the part, 3 bytes per pixel in the order blue, green, red
+         * @param offset the index of the top left pixel of the part
+         * @param scanlineStride the distance of two rows in the pixel array
+         * @param part the part in the coordinates of the canvas
+         */
+        void write(@NonNull byte[] pixels, int offset, int scanlineStride, @NonNull Rectangle part);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.canvas;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static app.gpx_animator.core.util.RenderUtil.setRenderingHints;
+
+/**
+ * A view of a canvas which only draws inside a region. The view has the
+ * coordinates and the size of the whole canvas.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class ClippedCanvas implements Canvas {
+
+    private final Canvas canvas;
+    private final Rectangle region;
+
+    public ClippedCanvas(@NonNull final Canvas canvas, @NonNull final Rectangle region) {
+        this.canvas = canvas;
+        this.region = new Rectangle(region);
+    }
+
+    @Override
+    public int getWidth() {
+        return canvas.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return canvas.getHeight();
+    }
+
+    @Override
+    public int getType() {
+        return canvas.getType();
+    }
+
+    @Override
+    public void fill(@NonNull final Color color) {
+        draw(g2 -> {
+            setRenderingHints(g2).setColor(color);
+            g2.fill(region);
+            return region;
+        });
+    }
+
+    @Override
+    public Rectangle2D draw(@NonNull final Painter painter) {
+        return canvas.draw(g2 -> {
+            g2.clip(region);
+            final var bounds = painter.paint(g2);
+            return bounds == null ? null : bounds.createIntersection(region);
+        });
+    }
+
+    @Override
+    public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int targetX, final int targetY) {
+        canvas.copyTo(area, target, targetX, targetY);
+    }
+
+    @Override
+    public void write(@NonNull final Rectangle area, @NonNull final PixelWriter writer) {
+        canvas.write(area.intersection(region), writer);
+    }
+
+    @Override
+    public void close() {
+        // the view doesn't own the canvas
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A canvas backed by one image.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class ImageCanvas implements Canvas {
+
+    private final BufferedImage image;
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "the canvas draws on the image")
+    public ImageCanvas(@NonNull final BufferedImage image) {
+        this.image = image;
+    }
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "plugins draw directly on the image")
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    @Override
+    public int getType() {
+        return image.getType();
+    }
+
+    @Override
+    public void fill(@NonNull final Color color) {
+        final var graphics = getGraphics(image);
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+    }
+
+    @Override
+    public Rectangle2D draw(@NonNull final Painter painter) {
+        final var graphics = image.createGraphics();
+        try {
+            return painter.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    @Override
+    public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int targetX, final int targetY) {
+        Utils.copy(image, area, target, targetX, targetY);
+    }
+
+    @Override
+    public void write(@NonNull final Rectangle area, @NonNull final PixelWriter writer) {
+        final var clipped = area.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (!clipped.isEmpty()) {
+            write(image, clipped.x, clipped.y, clipped, writer);
+        }
+    }
+
+    /**
+     * Writes a part of a canvas stored in an image.
+     *
+     * @param image the image holding the part
+     * @param x the x coordinate of the part in the image
+     * @param y the y coordinate of the part in the image
+     * @param part the part in the coordinates of the canvas
+     * @param writer the code writing the pixels
+     */
+    static void write(@NonNull final BufferedImage image, final int x, final int y,
+                      @NonNull final Rectangle part, @NonNull final PixelWriter writer) {
+        final var raster = image.getRaster();
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel model
+                && raster.getDataBuffer() instanceof DataBufferByte buffer) {
+            final var offset = buffer.getOffset() + (y - raster.getSampleModelTranslateY()) * model.getScanlineStride()
+                    + (x - raster.getSampleModelTranslateX()) * model.getPixelStride();
+            writer.write(buffer.getData(), offset, model.getScanlineStride(), part);
+        } else {
+            // other image types are written through a copy
+            final var copy = new BufferedImage(part.width, part.height, BufferedImage.TYPE_3BYTE_BGR);
+            var g2 = copy.createGraphics();
+            g2.drawImage(image, -x, -y, null);
+            g2.dispose();
+            writer.write(((DataBufferByte) copy.getRaster().getDataBuffer()).getData(), 0, part.width * 3, part);
+            g2 = image.createGraphics();
+            g2.drawImage(copy, x, y, null);
+            g2.dispose();
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to free, the image is garbage collected
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A canvas split into tiles of a fixed size, so maps can be bigger than the
+ * maximum size of a single image. Tiles are only allocated when something is
+ * drawn on them. Parts of the canvas without a tile contain the fill color.
+ * If a spill file is used, only a limited number of tiles is kept in memory,
+ * the least recently used tiles are written to the file and read back when
+ * they are used again.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TiledCanvas implements Canvas {
+
+    public static final int TILE_SIZE = 1_024;
+
+    private static final int TYPE = BufferedImage.TYPE_3BYTE_BGR;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 3;
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int maxResidentTiles;
+    private final boolean[] spilled;
+    private final Map<Integer, BufferedImage> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Color> fills = new ArrayList<>();
+    private final FileChannel spillChannel;
+
+    /**
+     * Creates an empty canvas.
+     *
+     * @param width the width of the canvas
+     * @param height the height of the canvas
+     * @param maxResidentTiles the maximum number of tiles kept in memory, only used with a spill file
+     * @param spillFile the file to store the tiles not kept in memory, deleted when the canvas is closed,
+     *                  <code>null</code> to keep all tiles in memory
+     * @throws IOException if the spill file can't be opened
+     */
+    public TiledCanvas(final int width, final int height, final int maxResidentTiles, @Nullable final Path spillFile) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        final var rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.maxResidentTiles = Math.max(1, maxResidentTiles);
+        this.spilled = new boolean[columns * rows];
+        this.spillChannel = spillFile == null ? null : FileChannel.open(spillFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getType() {
+        return TYPE;
+    }
+
+    /**
+     * The number of tiles in memory.
+     *
+     * @return the number of resident tiles
+     */
+    public int getResidentTiles() {
+        return resident.size();
+    }
+
+    @Override
+    public void fill(@NonNull final Color color) {
+        if (color.getAlpha() == 255) {
+            // an opaque color replaces everything drawn before
+            resident.clear();
+            Arrays.fill(spilled, false);
+            fills.clear();
+        } else {
+            // a translucent color is blended into the existing tiles, new tiles get it when they are created
+            for (var index = 0; index < spilled.length; index++) {
+                if (spilled[index] || resident.containsKey(index)) {
+                    final var g2 = getGraphics(getTile(index, false));
+                    g2.setColor(color);
+                    g2.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+                    g2.dispose();
+                }
+            }
+        }
+        fills.add(color);
+    }
+
+    @Override
+    public Rectangle2D draw(@NonNull final Painter painter) {
+        final var bounds = Canvas.measure(painter);
+        if (bounds == null || bounds.isEmpty()) {
+            return bounds;
+        }
+
+        final var area = bounds.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) {
+            return bounds;
+        }
+        for (var row = area.y / TILE_SIZE; row <= (area.y + area.height - 1) / TILE_SIZE; row++) {
+            for (var column = area.x / TILE_SIZE; column <= (area.x + area.width - 1) / TILE_SIZE; column++) {
+                final var tile = getTile(row * columns + column, true);
+                final var g2 = tile.createGraphics();
+                g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                g2.clipRect(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                painter.paint(g2);
+                g2.dispose();
+            }
+        }
+        return bounds;
+    }
+
+    @Override
+    public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int targetX, final int targetY) {
+        final var clipped = area.intersection(new Rectangle(0, 0, width, height));
+        if (clipped.isEmpty()) {
+            return;
+        }
+        final var dx = targetX - area.x;
+        final var dy = targetY - area.y;
+        for (var row = clipped.y / TILE_SIZE; row <= (clipped.y + clipped.height - 1) / TILE_SIZE; row++) {
+            for (var column = clipped.x / TILE_SIZE; column <= (clipped.x + clipped.width - 1) / TILE_SIZE; column++) {
+                final var tileX = column * TILE_SIZE;
+                final var tileY = row * TILE_SIZE;
+                final var part = new Rectangle(tileX, tileY, TILE_SIZE, TILE_SIZE).intersection(clipped);
+                final var tile = getTile(row * columns + column, false);
+                if (tile != null) {
+                    Utils.copy(tile, new Rectangle(part.x - tileX, part.y - tileY, part.width, part.height),
+                            target, part.x + dx, part.y + dy);
+                } else {
+                    fillEmpty(target, new Rectangle(part.x + dx, part.y + dy, part.width, part.height));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(@NonNull final Rectangle area, @NonNull final PixelWriter writer) {
+        final var clipped = area.intersection(new Rectangle(0, 0, width, height));
+        if (clipped.isEmpty()) {
+            return;
+        }
+        for (var row = clipped.y / TILE_SIZE; row <= (clipped.y + clipped.height - 1) / TILE_SIZE; row++) {
+            for (var column = clipped.x / TILE_SIZE; column <= (clipped.x + clipped.width - 1) / TILE_SIZE; column++) {
+                final var tileX = column * TILE_SIZE;
+                final var tileY = row * TILE_SIZE;
+                final var part = new Rectangle(tileX, tileY, TILE_SIZE, TILE_SIZE).intersection(clipped);
+                ImageCanvas.write(getTile(row * columns + column, true), part.x - tileX, part.y - tileY, part, writer);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        resident.clear();
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void fillEmpty(@NonNull final BufferedImage image, @NonNull final Rectangle area) {
+        final var g2 = getGraphics(image);
+        g2.setColor(Color.BLACK);
+        g2.fill(area);
+        for (final var color : fills) {
+            g2.setColor(color);
+            g2.fill(area);
+        }
+        g2.dispose();
+    }
+
+    /**
+     * Returns the tile with the specified index, loads it from the spill file
+     * or creates a new one.
+     *
+     * @param create <code>true</code> to create the tile, if it doesn't exist yet
+     * @return the tile, <code>null</code> if it doesn't exist and should not be created
+     */
+    private BufferedImage getTile(final int index, final boolean create) {
+        var tile = resident.get(index);
+        if (tile != null || !create && !spilled[index]) {
+            return tile;
+        }
+
+        tile = evictTile();
+        if (spilled[index]) {
+            transfer(index, tile, false);
+        } else {
+            fillEmpty(tile, new Rectangle(0, 0, TILE_SIZE, TILE_SIZE));
+        }
+        resident.put(index, tile);
+        return tile;
+    }
+
+    /**
+     * Writes the least recently used tile to the spill file, if there are
+     * too many tiles in memory, so its image can be reused.
+     *
+     * @return an image for a new tile with undefined content
+     */
+    private BufferedImage evictTile() {
+        if (spillChannel == null || resident.size() < maxResidentTiles) {
+            return new BufferedImage(TILE_SIZE, TILE_SIZE, TYPE);
+        }
+        final var iterator = resident.entrySet().iterator();
+        final var eldest = iterator.next();
+        iterator.remove();
+        transfer(eldest.getKey(), eldest.getValue(), true);
+        spilled[eldest.getKey()] = true;
+        return eldest.getValue();
+    }
+
+    private void transfer(final int index, @NonNull final BufferedImage tile, final boolean write) {
+        final var buffer = ByteBuffer.wrap(((DataBufferByte) tile.getRaster().getDataBuffer()).getData());
+        final var position = (long) index * TILE_BYTES;
+        try {
+            while (buffer.hasRemaining()) {
+                final var transferred = write
+                        ? spillChannel.write(buffer, position + buffer.position())
+                        : spillChannel.read(buffer, position + buffer.position());
+                if (transferred < 0) {
+                    throw new IOException("Unexpected end of the canvas spill file"); //NON-NLS
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.FrameBufferPool;
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decorates a frame writer, so the frames are encoded on a dedicated encoder
+ * thread while the next frames are rendered. The frames are copied into a
+ * bounded ring of reusable buffers. When all buffers are waiting to be
+ * encoded, adding a frame blocks until the encoder has caught up. Errors of
+ * the encoder are thrown on the next call to {@link #addFrame(BufferedImage)}
+ * or {@link #close()}. When the rendering fails, {@link #abort()} drops the
+ * queued frames and stops the encoder thread.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class AsyncFrameWriter implements FrameWriter {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncFrameWriter.class);
+
+    private static final BufferedImage END_OF_FRAMES = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+
+    private final FrameWriter frameWriter;
+    private final FrameBufferPool frameBufferPool;
+    private final int capacity;
+    private final BlockingQueue<BufferedImage> freeBuffers;
+    private final BlockingQueue<BufferedImage> queuedFrames;
+    private final Thread encoder;
+
+    private int allocatedBuffers;
+    private boolean closed;
+    private volatile boolean aborted;
+    private volatile Throwable error;
+
+    public AsyncFrameWriter(@NonNull final FrameWriter frameWriter, @NonNull final FrameBufferPool frameBufferPool, final int capacity) {
+        this.frameWriter = frameWriter;
+        this.frameBufferPool = frameBufferPool;
+        this.capacity = capacity;
+        this.freeBuffers = new ArrayBlockingQueue<>(capacity);
+        this.queuedFrames = new ArrayBlockingQueue<>(capacity + 1);
+        this.encoder = new Thread(this::encodeFrames, "frame-encoder"); //NON-NLS
+        this.encoder.setDaemon(true);
+        this.encoder.start();
+    }
+
+    @Override
+    public void addFrame(@NonNull final BufferedImage bi) throws UserException {
+        throwError();
+
+        final var buffer = acquireBuffer(bi);
+        Utils.copy(bi, buffer);
+        try {
+            queuedFrames.put(buffer);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while queueing a frame", e); // NOPMD -- internal error
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                queuedFrames.put(END_OF_FRAMES);
+                encoder.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                encoder.interrupt();
+                throw new RuntimeException("interrupted while waiting for the encoder", e); // NOPMD -- internal error
+            }
+            frameWriter.close();
+
+            BufferedImage buffer;
+            while ((buffer = freeBuffers.poll()) != null) {
+                frameBufferPool.release(buffer);
+            }
+        }
+
+        try {
+            throwError();
+        } catch (final UserException e) {
+            throw new RuntimeException(e); // NOPMD -- same as the other frame writers
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        aborted = true;
+
+        // frames are only added by the rendering thread calling this method, so the queue has room for the end marker
+        final var droppedFrames = new ArrayList<BufferedImage>();
+        queuedFrames.drainTo(droppedFrames);
+        queuedFrames.add(END_OF_FRAMES);
+        try {
+            encoder.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encoder.interrupt();
+        }
+        frameWriter.abort();
+
+        droppedFrames.forEach(frameBufferPool::release);
+        BufferedImage buffer;
+        while ((buffer = freeBuffers.poll()) != null) {
+            frameBufferPool.release(buffer);
+        }
+    }
+
+    private BufferedImage acquireBuffer(@NonNull final BufferedImage bi) {
+        var buffer = freeBuffers.poll();
+        if (buffer == null && allocatedBuffers < capacity) {
+            allocatedBuffers++;
+            return frameBufferPool.acquire(bi.getWidth(), bi.getHeight(), bi.getType());
+        }
+
+        try {
+            if (buffer == null) {
+                buffer = freeBuffers.take();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a free frame buffer", e); // NOPMD -- internal error
+        }
+
+        if (buffer.getWidth() != bi.getWidth() || buffer.getHeight() != bi.getHeight() || buffer.getType() != bi.getType()) {
+            frameBufferPool.release(buffer);
+            return frameBufferPool.acquire(bi.getWidth(), bi.getHeight(), bi.getType());
+        }
+        return buffer;
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable") // every error has to be reported to the renderer
+    private void encodeFrames() {
+        try {
+            while (true) {
+                final var buffer = queuedFrames.take();
+                if (buffer == END_OF_FRAMES) { // NOPMD -- identity comparison with the marker is intended
+                    return;
+                }
+                if (error == null && !aborted) {
+                    try {
+                        frameWriter.addFrame(buffer);
+                    } catch (final Throwable t) {
+                        LOGGER.error("Error encoding frame", t);
+                        error = t;
+                    }
+                }
+                // buffers are returned even after an error, so the renderer never blocks forever
+                freeBuffers.offer(buffer);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void throwError() throws UserException {
+        final var t = error;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof UserException userException) {
+            throw userException;
+        } else if (t instanceof RuntimeException runtimeException) {
+            if (runtimeException.getCause() instanceof UserException userException) {
+                throw userException;
+            }
+            throw runtimeException;
+        } else if (t instanceof Error e) {
+            throw e;
+        }
+        throw new RuntimeException("error encoding frame", t); // NOPMD -- internal error
+    }
+}
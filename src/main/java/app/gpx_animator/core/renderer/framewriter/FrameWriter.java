@@ -25,4 +25,13 @@ public interface FrameWriter {
 
     void close();
 
+    /**
+     * Stops writing frames after the rendering failed. Frames which are not
+     * written yet are dropped, the resources are released. The default
+     * implementation closes the frame writer.
+     */
+    default void abort() {
+        close();
+    }
+
 }
@@ -23,6 +23,7 @@ import app.gpx_animator.core.util.MapUtil;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
@@ -53,13 +54,20 @@ public final class AttributionPlugin extends TextRenderer implements RendererPlu
     }
 
     @Override
-    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
         if (Position.HIDDEN.equals(position)) {
             // attribution should not be visible
-            return;
+            return null;
         }
 
-        renderText(attribution, position, margin, image);
+        return renderText(attribution, position, margin, image);
     }
 
 }
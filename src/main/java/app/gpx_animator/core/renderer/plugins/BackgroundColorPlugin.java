@@ -16,13 +16,15 @@
 package app.gpx_animator.core.renderer.plugins;
 
 import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.renderer.canvas.Canvas;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
-import static app.gpx_animator.core.util.RenderUtil.getGraphics;
-
 @SuppressWarnings("unused") // Plugins are loaded using reflection
 public final class BackgroundColorPlugin implements RendererPlugin {
 
@@ -38,10 +40,21 @@ public final class BackgroundColorPlugin implements RendererPlugin {
     }
 
     @Override
-    public void renderBackground(@NonNull final BufferedImage image) {
-        final var graphics = getGraphics(image);
-        graphics.setColor(backgroundColor);
-        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+    @NonNull
+    public String getBackgroundDescription() {
+        return "color=" + Integer.toHexString(backgroundColor.getRGB()); //NON-NLS
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+        // the background is not drawn on the frames
+        return null;
+    }
+
+    @Override
+    public void renderBackground(@NonNull final Canvas canvas) {
+        canvas.fill(backgroundColor);
     }
 
 }
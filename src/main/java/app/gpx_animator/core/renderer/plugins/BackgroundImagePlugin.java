@@ -17,30 +17,40 @@ package app.gpx_animator.core.renderer.plugins;
 
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.renderer.canvas.Canvas;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
-import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+import static app.gpx_animator.core.util.RenderUtil.setRenderingHints;
 
 @SuppressWarnings("unused") // Plugins are loaded using reflection
 public final class BackgroundImagePlugin implements RendererPlugin {
 
     private final BufferedImage backgroundImage;
+    private final String description;
+
+    // a lazily loaded background is rendered in regions, so the image is scaled only once
+    private BufferedImage scaledImage;
 
     public BackgroundImagePlugin(@NonNull final Configuration configuration) throws UserException {
         final var file = configuration.getBackgroundImage();
         if (file != null && file.exists()) {
             try {
                 backgroundImage = ImageIO.read(file);
+                description = "image=%s,%d,%d".formatted(file.getAbsolutePath(), file.lastModified(), file.length()); //NON-NLS
             } catch (final IOException e) {
                 throw new UserException("Can't read background image: ".concat(e.getMessage()));
             }
         } else {
             backgroundImage = null;
+            description = "";
         }
     }
 
@@ -50,20 +60,37 @@ public final class BackgroundImagePlugin implements RendererPlugin {
     }
 
     @Override
-    public void renderBackground(@NonNull final BufferedImage image) {
+    @NonNull
+    public String getBackgroundDescription() {
+        return backgroundImage == null ? "" : description;
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+        // the background is not drawn on the frames
+        return null;
+    }
+
+    @Override
+    public void renderBackground(@NonNull final Canvas canvas) {
         if (backgroundImage == null) {
             // no image defined
             return;
         }
 
-        final var scaledImage = backgroundImage.getWidth() <= image.getWidth() && backgroundImage.getHeight() <= image.getHeight()
-                ? backgroundImage
-                : Scalr.resize(Scalr.resize(backgroundImage,
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, image.getWidth()),
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, image.getHeight());
+        if (scaledImage == null) {
+            scaledImage = backgroundImage.getWidth() <= canvas.getWidth() && backgroundImage.getHeight() <= canvas.getHeight()
+                    ? backgroundImage
+                    : Scalr.resize(Scalr.resize(backgroundImage,
+                    Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, canvas.getWidth()),
+                    Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, canvas.getHeight());
+        }
 
-        final var graphics = getGraphics(image);
-        graphics.drawImage(scaledImage, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
+        canvas.draw(g2 -> {
+            setRenderingHints(g2).drawImage(scaledImage, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
+            return new Rectangle(0, 0, scaledImage.getWidth(), scaledImage.getHeight());
+        });
     }
 
 }
@@ -20,53 +20,89 @@ import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.preferences.Preferences;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
-import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TileFetcher;
+import app.gpx_animator.core.renderer.cache.TileKey;
+import app.gpx_animator.core.renderer.canvas.Canvas;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 
-import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.RescaleOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @SuppressWarnings("unused") // Plugins are loaded using reflection
 public final class BackgroundMapPlugin implements RendererPlugin {
 
-    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
-    // This regex is tested, and I don't want to rewrite it which may potentionally break it.
-    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
+    private static final int TILE_SIZE = 256;
+
+    // the number of tiles loaded in advance when the whole map is rendered at once
+    private static final int FETCH_WINDOW = 64;
 
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final String tmsUrlTemplate;
     private final String tmsApiKey;
     private final String tmsUserAgent;
+    private final int tmsConnectionsPerHost;
     private final float backgroundMapVisibility;
+    private final byte[] visibilityTable;
+    private final String tileCacheDir;
+    private final Long tileCacheTimeLimit;
 
     private Integer zoom;
-    private double minX;
-    private double maxX;
-    private double minY;
-    private double maxY;
+    private int tileX;
+    private int tileY;
+    private int offsetX;
+    private int offsetY;
+    private int maxXtile;
+    private int maxYtile;
 
     private RenderingContext context;
 
+    // the tiles of the lazily loaded background, until every region showing them is rendered
+    private final Map<TileKey, PendingTile> pendingTiles = new HashMap<>();
+    private TileFetcher fetcher;
+
     public BackgroundMapPlugin(@NonNull final Configuration configuration) {
         tmsUrlTemplate = configuration.getTmsUrlTemplate();
         tmsApiKey = configuration.getTmsApiKey();
         tmsUserAgent = configuration.getTmsUserAgent();
+        tmsConnectionsPerHost = configuration.getTmsConnectionsPerHost();
         backgroundMapVisibility = configuration.getBackgroundMapVisibility();
+        visibilityTable = createVisibilityTable(backgroundMapVisibility);
+
+        tileCacheDir = Preferences.getTileCacheDir();
+        tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
     }
 
     @Override
     public void setMetadata(@NotNull final Metadata metadata) {
         zoom = metadata.zoom();
-        minX = metadata.minX();
-        maxX = metadata.maxX();
-        minY = metadata.minY();
-        maxY = metadata.maxY();
+        if (zoom == null) {
+            return;
+        }
+
+        final var tileDblX = xToTileX(zoom, metadata.minX());
+        tileX = (int) Math.floor(tileDblX);
+        offsetX = (int) Math.floor(256.0 * (tileX - tileDblX));
+
+        final var tileDblY = yToTileY(zoom, metadata.minY());
+        tileY = (int) Math.floor(tileDblY);
+        offsetY = (int) Math.floor(256.0 * (tileDblY - tileY));
+
+        maxXtile = (int) Math.floor(xToTileX(zoom, metadata.maxX()));
+        maxYtile = (int) Math.floor(yToTileY(zoom, metadata.maxY()));
     }
 
     @Override
@@ -81,74 +117,264 @@ public final class BackgroundMapPlugin implements RendererPlugin {
     }
 
     @Override
-    public void renderBackground(@NonNull final BufferedImage image) throws UserException {
-        if (tmsUrlTemplate == null || tmsUrlTemplate.isBlank() || backgroundMapVisibility <= 0.0 || zoom == null) {
-            // no map defined or map should not be visible
+    @NonNull
+    public String getBackgroundDescription() {
+        if (!isMapVisible()) {
+            return "";
+        }
+        return "map=%s,%s,%s,%d,%d,%d,%d,%d,%d,%d".formatted(tmsUrlTemplate, tmsApiKey, backgroundMapVisibility, //NON-NLS
+                zoom, tileX, tileY, offsetX, offsetY, maxXtile, maxYtile);
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+        // the background is not drawn on the frames
+        return null;
+    }
+
+    private boolean isMapVisible() {
+        // no map defined or map should not be visible
+        return tmsUrlTemplate != null && !tmsUrlTemplate.isBlank() && backgroundMapVisibility > 0.0 && zoom != null;
+    }
+
+    @Override
+    public void renderBackground(@NonNull final Canvas canvas) throws UserException {
+        if (!isMapVisible()) {
             return;
         }
 
-        final var ga = (Graphics2D) image.getGraphics();
+        final var tileKeys = new ArrayList<TileKey>();
+        for (var y = tileY; y >= maxYtile; y--) {
+            for (var x = tileX; x <= maxXtile; x++) {
+                tileKeys.add(new TileKey(zoom, x, y));
+            }
+        }
 
-        final var tileDblX = xToTileX(zoom, minX);
-        final var tileX = (int) Math.floor(tileDblX);
-        final var offsetX = (int) Math.floor(256.0 * (tileX - tileDblX));
+        // the tiles are loaded in parallel and drawn row by row
+        final var total = tileKeys.size();
+        final var inFlight = new ArrayDeque<Future<BufferedImage>>();
+        final var row = new HashMap<TileKey, BufferedImage>();
+        Rectangle rowBounds = null;
+        var next = 0;
+        for (var i = 1; i <= total; i++) {
+            while (next < total && inFlight.size() < FETCH_WINDOW) {
+                inFlight.add(fetchTile(tileKeys.get(next++)));
+            }
+            if (context.isCancelled1()) {
+                return;
+            }
 
-        final var tileDblY = yToTileY(zoom, minY);
-        final var tileY = (int) Math.floor(tileDblY);
-        final var offsetY = (int) Math.floor(256.0 * (tileDblY - tileY));
+            context.setProgress1((int) (100.0 * i / total), String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+
+            final var tileKey = tileKeys.get(i - 1);
+            final var tile = getFetchedTile(inFlight.removeFirst());
+            row.put(tileKey, tile);
+            final var tileBounds = getTileBounds(canvas, tileKey, tile);
+            rowBounds = rowBounds == null ? tileBounds : rowBounds.union(tileBounds);
+            if (tileKey.x() == maxXtile) {
+                drawTiles(canvas, rowBounds, row);
+                row.clear();
+                rowBounds = null;
+            }
+        }
 
-        final var maxXtile = (int) Math.floor(xToTileX(zoom, maxX));
-        final var maxYtile = (int) Math.floor(yToTileY(zoom, maxY));
+        context.setProgress1(100, String.format(resourceBundle.getString("map.loadingtiles.progress"), total, total));
+    }
 
-        final var total = (maxXtile - tileX + 1) * (tileY - maxYtile + 1);
-        var i = 0;
+    @Override
+    public void prefetchBackground(@NonNull final Canvas canvas, @NonNull final Rectangle region) throws UserException {
+        if (!isMapVisible()) {
+            return;
+        }
+        forEachTile(canvas, region, tileKey -> pendingTiles.computeIfAbsent(tileKey, key -> new PendingTile(fetchTile(key))).regions++);
+    }
 
-        final var m = SWITCH_PATTERN.matcher(tmsUrlTemplate); // note that only one switch in pattern is supported
-        final var options = m.find() ? m.group(1).split(",") : null;
+    @Override
+    public void renderBackground(@NonNull final Canvas canvas, @NonNull final Rectangle region) throws UserException {
+        if (!isMapVisible()) {
+            return;
+        }
+        final var tiles = new HashMap<TileKey, BufferedImage>();
+        forEachTile(canvas, region, tileKey -> {
+            final var pendingTile = pendingTiles.get(tileKey);
+            tiles.put(tileKey, getFetchedTile(pendingTile.tile));
+            if (--pendingTile.regions == 0) {
+                pendingTiles.remove(tileKey);
+            }
+        });
+        drawTiles(canvas, region, tiles);
+    }
 
-        final var tileCacheDir = Preferences.getTileCacheDir();
-        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+    @Override
+    public void renderingFinished() {
+        stopFetcher();
+    }
 
-        for (var x = tileX; x <= maxXtile; x++) {
-            for (var y = tileY; y >= maxYtile; y--) {
-                if (context.isCancelled1()) {
-                    return;
-                }
+    @Override
+    public void renderingCanceled() {
+        stopFetcher();
+    }
 
-                i++;
+    private void stopFetcher() {
+        if (fetcher != null) {
+            fetcher.close();
+            fetcher = null;
+        }
+        pendingTiles.clear();
+    }
 
-                var url = tmsUrlTemplate
-                        .replace("{zoom}", Integer.toString(zoom)) //NON-NLS
-                        .replace("{x}", Integer.toString(x)) //NON-NLS
-                        .replace("{y}", Integer.toString(y)) //NON-NLS
-                        .replace("{apikey}", tmsApiKey); //NON-NLS
+    /**
+     * Calls the consumer for every tile of the map covering a region of the
+     * canvas. The tiles are positioned from the bottom left of the canvas.
+     */
+    private void forEachTile(@NonNull final Canvas canvas, @NonNull final Rectangle region,
+                             @NonNull final TileConsumer consumer) throws UserException {
+        final var firstX = Math.max(tileX, tileX + Math.floorDiv(region.x - offsetX, TILE_SIZE));
+        final var lastX = Math.min(maxXtile, tileX + Math.floorDiv(region.x + region.width - 1 - offsetX, TILE_SIZE));
+        // the tile rows are counted upwards from the bottom, rounding up
+        final var bottom = canvas.getHeight() - offsetY;
+        final var firstY = Math.max(maxYtile, tileY + Math.floorDiv(region.y - bottom, TILE_SIZE));
+        final var lastY = Math.min(tileY, tileY + Math.floorDiv(region.y + region.height - 1 - bottom, TILE_SIZE));
+        for (var x = firstX; x <= lastX; x++) {
+            for (var y = firstY; y <= lastY; y++) {
+                consumer.accept(new TileKey(zoom, x, y));
+            }
+        }
+    }
 
-                if (options != null) {
-                    final var sb = new StringBuilder();
-                    final var matcher = SWITCH_PATTERN.matcher(url);
-                    if (matcher.find()) {
-                        matcher.appendReplacement(sb, options[i % options.length]);
-                    }
-                    matcher.appendTail(sb);
-                    url = sb.toString();
-                }
+    private Future<BufferedImage> fetchTile(@NonNull final TileKey tileKey) {
+        if (fetcher == null) {
+            fetcher = new TileFetcher(tmsUrlTemplate, tmsApiKey, tmsUserAgent, tmsConnectionsPerHost, tileCacheDir, tileCacheTimeLimit);
+        }
+        return fetcher.fetch(tileKey);
+    }
 
-                context.setProgress1((int) (100.0 * i / total), String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+    private static BufferedImage getFetchedTile(@NonNull final Future<BufferedImage> tile) throws UserException {
+        try {
+            return tile.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a map tile", e); // NOPMD -- internal error
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("internal error when loading a map tile", cause); // NOPMD -- internal error
+        }
+    }
 
-                final var tile = TileCache.getTile(url, tmsUserAgent, tileCacheDir, tileCacheTimeLimit);
+    private Rectangle getTileBounds(@NonNull final Canvas canvas, @NonNull final TileKey tileKey, @NonNull final BufferedImage tile) {
+        return new Rectangle(TILE_SIZE * (tileKey.x() - tileX) + offsetX,
+                canvas.getHeight() - (TILE_SIZE * (tileY - tileKey.y()) + offsetY), tile.getWidth(), tile.getHeight());
+    }
 
-                // convert to RGB format
-                final var tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
-                tile1.getGraphics().drawImage(tile, 0, 0, null);
+    /**
+     * Draws the tiles into an area of the canvas. The tiles don't overlap,
+     * so they are drawn in parallel.
+     */
+    private void drawTiles(@NonNull final Canvas canvas, @NonNull final Rectangle area, @NonNull final Map<TileKey, BufferedImage> tiles) {
+        canvas.write(area, (pixels, offset, scanlineStride, part) -> tiles.entrySet().parallelStream().forEach(entry -> {
+            final var tile = entry.getValue();
+            final var tileBounds = getTileBounds(canvas, entry.getKey(), tile);
+            final var target = tileBounds.intersection(part);
+            if (!target.isEmpty()) {
+                drawTile(tile, target.x - tileBounds.x, target.y - tileBounds.y, target.width, target.height,
+                        pixels, offset + (target.y - part.y) * scanlineStride + (target.x - part.x) * 3, scanlineStride);
+            }
+        }));
+    }
 
-                ga.drawImage(tile1,
-                        new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null),
-                        256 * (x - tileX) + offsetX,
-                        image.getHeight() - (256 * (tileY - y) + offsetY));
+    /**
+     * Copies an area of a tile into the pixels of the canvas and blends it
+     * with white by the map visibility, in one pass over the pixels.
+     */
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // an area of the tile and its position in the pixels
+    private void drawTile(@NonNull final BufferedImage tile, final int x, final int y, final int width, final int height,
+                          @NonNull final byte[] pixels, final int offset, final int scanlineStride) {
+        final var table = visibilityTable;
+        final var raster = tile.getRaster();
+        final var type = tile.getType();
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel model
+                && raster.getDataBuffer() instanceof DataBufferByte buffer) {
+            // the pixels are stored as blue, green, red, with alpha in front of them
+            final var data = buffer.getData();
+            final var pixelStride = model.getPixelStride();
+            final var tileStride = model.getScanlineStride();
+            final var alpha = type == BufferedImage.TYPE_4BYTE_ABGR;
+            var source = buffer.getOffset() + (y - raster.getSampleModelTranslateY()) * tileStride
+                    + (x - raster.getSampleModelTranslateX()) * pixelStride;
+            var target = offset;
+            for (var row = 0; row < height; row++) {
+                for (int s = source, t = target, end = target + width * 3; t < end; s += pixelStride, t += 3) {
+                    if (alpha) {
+                        final var a = data[s] & 0xff;
+                        pixels[t] = table[premultiply(data[s + 1] & 0xff, a)];
+                        pixels[t + 1] = table[premultiply(data[s + 2] & 0xff, a)];
+                        pixels[t + 2] = table[premultiply(data[s + 3] & 0xff, a)];
+                    } else {
+                        pixels[t] = table[data[s] & 0xff];
+                        pixels[t + 1] = table[data[s + 1] & 0xff];
+                        pixels[t + 2] = table[data[s + 2] & 0xff];
+                    }
+                }
+                source += tileStride;
+                target += scanlineStride;
             }
+        } else {
+            // other image types, like palette images, are converted by their color model
+            final var argb = new int[width];
+            var target = offset;
+            for (var row = 0; row < height; row++) {
+                tile.getRGB(x, y + row, width, 1, argb, 0, width);
+                for (int i = 0, t = target; i < width; i++, t += 3) {
+                    final var a = argb[i] >>> 24;
+                    pixels[t] = table[premultiply(argb[i] & 0xff, a)];
+                    pixels[t + 1] = table[premultiply(argb[i] >> 8 & 0xff, a)];
+                    pixels[t + 2] = table[premultiply(argb[i] >> 16 & 0xff, a)];
+                }
+                target += scanlineStride;
+            }
+        }
+    }
+
+    /**
+     * Blends a color component with black, like drawing a translucent tile
+     * on an empty image, with the rounding of Java2D.
+     */
+    private static int premultiply(final int component, final int alpha) {
+        return alpha == 255 ? component : (component * alpha * 0x10101 + 0x800000) >>> 24;
+    }
+
+    /**
+     * Creates the lookup table blending a color component with white by the
+     * map visibility, calculated like a {@link java.awt.image.RescaleOp}.
+     */
+    private static byte[] createVisibilityTable(final float visibility) {
+        final var table = new byte[256];
+        final var offset = (1f - visibility) * 255f;
+        for (var i = 0; i < table.length; i++) {
+            table[i] = (byte) Math.max(0, Math.min(255, (int) (i * visibility + offset)));
         }
+        return table;
+    }
 
-        context.setProgress1(100, String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+    @FunctionalInterface
+    private interface TileConsumer {
+        void accept(@NonNull TileKey tileKey) throws UserException;
+    }
+
+    private static final class PendingTile {
+        private final Future<BufferedImage> tile;
+        private int regions;
+
+        private PendingTile(@NonNull final Future<BufferedImage> tile) {
+            this.tile = tile;
+        }
     }
 
     private static double yToTileY(final int zoom, final double minY) {
@@ -22,6 +22,7 @@ import app.gpx_animator.core.renderer.TextRenderer;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
@@ -45,16 +46,24 @@ public final class CommentPlugin extends TextRenderer implements RendererPlugin
     }
 
     @Override
-    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
         if (Position.HIDDEN.equals(position)) {
             // comment should not be visible
-            return;
+            return null;
         }
 
         final var comment = getCommentString(marker);
         if (comment != null && !comment.isBlank()) {
-            renderText(comment, position, margin, image);
+            return renderText(comment, position, margin, image);
         }
+        return null;
     }
 
     /**
@@ -26,6 +26,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.jetbrains.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.text.DateFormat;
@@ -77,10 +78,17 @@ public final class InformationPlugin extends TextRenderer implements RendererPlu
     }
 
     @Override
-    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
         if (marker == null || Position.HIDDEN.equals(position)) {
             // information should not be visible
-            return;
+            return null;
         }
 
         final var time = RenderUtil.getTime(frame, minTime, fps, speedup);
@@ -112,7 +120,7 @@ public final class InformationPlugin extends TextRenderer implements RendererPlu
                 .replace("%GPSDIFFTIME%", gpsDiffTimeString)        // Difference between frame time and last GPS time
                 .replace("%GPSLOSTTIME%", gpsLostTimeString)        // Difference between frame time and last GPS time if GSP LOST
                 .replace("%GPSSTATUS%", gpsStatusString);           // GPS status only [OK/LOST]
-        renderText(text, position, margin, image);
+        return renderText(text, position, margin, image);
     }
 
     private String getLatLonString(@NonNull final Point2D point) {
@@ -23,6 +23,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -56,13 +57,20 @@ public final class LogoPlugin extends ImageRenderer implements RendererPlugin {
     }
 
     @Override
-    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
         if (logo == null || position.equals(Position.HIDDEN)) {
             // no logo defined or logo should not be visible
-            return;
+            return null;
         }
 
-        renderImage(logo, position, margin, image);
+        return renderImage(logo, position, margin, image);
     }
 
 }
@@ -19,11 +19,11 @@ import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.data.Photo;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.util.RenderUtil;
-import app.gpx_animator.core.util.Utils;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.metadata.MetadataException;
@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -80,6 +81,7 @@ public final class PhotoPlugin implements RendererPlugin {
     private Metadata metadata;
     private FrameWriter frameWriter;
     private RenderingContext context;
+    private FrameBufferPool frameBufferPool = new FrameBufferPool();
 
     public PhotoPlugin(@NonNull final Configuration configuration) {
         this.fps = configuration.getFps();
@@ -105,6 +107,12 @@ public final class PhotoPlugin implements RendererPlugin {
         this.context = renderingContext;
     }
 
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "FrameBufferPool is shared with the renderer")
+    public void setFrameBufferPool(@NonNull final FrameBufferPool frameBufferPool) {
+        this.frameBufferPool = frameBufferPool;
+    }
+
     private Map<Long, List<Photo>> loadPhotos(@Nullable final File directory) {
         if (directory == null) {
             return new HashMap<>();
@@ -181,6 +189,12 @@ public final class PhotoPlugin implements RendererPlugin {
         return 1_000_000;
     }
 
+    @Override
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
     @Override
     public int getAdditionalFrameCount() {
         final var numberOfPhotos = remainingPhotos.size();
@@ -190,6 +204,14 @@ public final class PhotoPlugin implements RendererPlugin {
         return (int) Math.round(fps * milliseconds / 1_000);
     }
 
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage bi) {
+        // the photos are drawn on copies of the frame
+        renderFrame(frame, marker, bi);
+        return null;
+    }
+
     @Override
     public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage bi) {
         final var time = RenderUtil.getTime(frame, metadata.minTime(), fps, metadata.speedup());
@@ -212,7 +234,7 @@ public final class PhotoPlugin implements RendererPlugin {
 
         final var photoImage = readPhoto(photo, frameImage.getWidth() - 20, frameImage.getHeight() - 20);
         if (photoImage != null) {
-            final var bi2 = Utils.deepCopy(frameImage);
+            final var bi2 = frameBufferPool.acquireCopy(frameImage);
             final var g2d = bi2.createGraphics();
             final var posX = (frameImage.getWidth() - photoImage.getWidth()) / 2;
             final var posY = (frameImage.getHeight() - photoImage.getHeight()) / 2;
@@ -233,6 +255,8 @@ public final class PhotoPlugin implements RendererPlugin {
                 renderAnimationOut(frameImage, photoImage, inOutFrames, allFrames, filename);
             } catch (final UserException e) {
                 LOGGER.error("Problems rendering photo '{}'!", photo, e);
+            } finally {
+                frameBufferPool.release(bi2);
             }
         }
     }
@@ -282,13 +306,16 @@ public final class PhotoPlugin implements RendererPlugin {
         final var posX = (frameImage.getWidth() - scaledImage.getWidth()) / 2;
         final var posY = (frameImage.getHeight() - scaledImage.getHeight()) / 2;
 
-        final var bi2 = Utils.deepCopy(frameImage);
-        final var g2d = bi2.createGraphics();
-
-        g2d.drawImage(scaledImage, posX, posY, null);
-        g2d.dispose();
+        final var bi2 = frameBufferPool.acquireCopy(frameImage);
+        try {
+            final var g2d = bi2.createGraphics();
+            g2d.drawImage(scaledImage, posX, posY, null);
+            g2d.dispose();
 
-        frameWriter.addFrame(bi2);
+            frameWriter.addFrame(bi2);
+        } finally {
+            frameBufferPool.release(bi2);
+        }
     }
 
     private static BufferedImage addBorder(@NonNull final BufferedImage photoImage) {
@@ -18,12 +18,14 @@ package app.gpx_animator.core.renderer.plugins;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.preferences.Preferences;
 import app.gpx_animator.core.util.RenderUtil;
+import app.gpx_animator.core.util.Utils;
 import app.gpx_animator.ui.UIMode;
 import app.gpx_animator.ui.swing.PreviewDialog;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
@@ -53,6 +55,20 @@ public final class PreviewPlugin implements RendererPlugin {
         return Integer.MAX_VALUE;
     }
 
+    @Override
+    @NonNull
+    public String getBackgroundDescription() {
+        return ""; // no background is rendered
+    }
+
+    @Override
+    @Nullable
+    public Rectangle renderFrameRegion(final int frame, @Nullable final Point2D marker, @NotNull final BufferedImage image) {
+        // the preview shows a copy of the frame
+        renderFrame(frame, marker, image);
+        return null;
+    }
+
     @Override
     public void renderFrame(final int frame, @Nullable final Point2D marker, @NotNull final BufferedImage image) {
         if (!enabled && !configuration.isPreview()) {
@@ -70,8 +86,9 @@ public final class PreviewPlugin implements RendererPlugin {
             calculateImageSize(image);
         }
 
+        // the renderer reuses the frame buffers, so the preview needs its own copy
         final var sameSize = image.getWidth() == width && image.getHeight() == height;
-        final var previewImage = sameSize ? image : RenderUtil.scaleImage(image, width, height);
+        final var previewImage = sameSize ? Utils.deepCopy(image) : RenderUtil.scaleImage(image, width, height);
 
         if (preview == null) {
             preview = new PreviewDialog(this, previewImage);
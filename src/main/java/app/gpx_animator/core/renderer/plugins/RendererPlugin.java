@@ -16,12 +16,17 @@
 package app.gpx_animator.core.renderer.plugins;
 
 import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.canvas.ClippedCanvas;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
@@ -92,6 +97,15 @@ public interface RendererPlugin {
      */
     default void setRenderingContext(@NonNull RenderingContext renderingContext) { }
 
+    /**
+     * Overwrite this method, if you need additional frame sized images. Get
+     * them from the pool instead of creating new ones for every frame and
+     * release them when they are not used anymore.
+     *
+     * @param frameBufferPool the pool of frame sized images
+     */
+    default void setFrameBufferPool(@NonNull FrameBufferPool frameBufferPool) { }
+
     /**
      * This render method is called to render the background image of the
      * video. If the video does not use the moving map feature, the background
@@ -104,9 +118,72 @@ public interface RendererPlugin {
      */
     default void renderBackground(@NonNull BufferedImage image) throws UserException { }
 
+    /**
+     * This render method is called to render the background of the video on
+     * a canvas, which may be split into tiles for big moving maps. Overwrite
+     * this method to support such maps, the default implementation calls
+     * {@link #renderBackground(BufferedImage)} if the canvas is backed by a
+     * single image and ignores the canvas otherwise.
+     *
+     * @param canvas  the background canvas to be modified
+     * @throws UserException error to be shown to the user
+     */
+    default void renderBackground(@NonNull Canvas canvas) throws UserException {
+        if (canvas instanceof ImageCanvas imageCanvas) {
+            renderBackground(imageCanvas.getImage());
+        }
+    }
+
+    /**
+     * A rendered background is stored and reused by later renderings, as
+     * long as the descriptions of all plugins stay the same. Overwrite this
+     * method if your plugin renders a background and return everything the
+     * background depends on, except the size of the canvas. Plugins not
+     * rendering a background return an empty description. The default is
+     * <code>null</code>, the background can't be stored then, because it
+     * may depend on anything.
+     *
+     * @return the description of the background rendered by this plugin, <code>null</code> if it can't be stored
+     */
+    @Nullable
+    default String getBackgroundDescription() {
+        return null;
+    }
+
+    /**
+     * When the background of a moving map is loaded lazily, this method is
+     * called for every region of the canvas which will be visible in the
+     * next frames, before it is rendered with
+     * {@link #renderBackground(Canvas, Rectangle)}. Overwrite this method to
+     * start loading slow resources, like map tiles, in advance.
+     *
+     * @param canvas  the background canvas, which is not modified by this method
+     * @param region  the region which will be rendered soon
+     * @throws UserException error to be shown to the user
+     */
+    @SuppressWarnings("RedundantThrows") // implementations throw this exception
+    default void prefetchBackground(@NonNull Canvas canvas, @NonNull Rectangle region) throws UserException { }
+
+    /**
+     * When the background of a moving map is loaded lazily, this method is
+     * called instead of {@link #renderBackground(Canvas)} to render only
+     * the regions of the canvas which are visible in the video, just before
+     * they are used. Every region is rendered once. The default
+     * implementation renders the whole background clipped to the region.
+     *
+     * @param canvas  the background canvas to be modified
+     * @param region  the region of the canvas to render
+     * @throws UserException error to be shown to the user
+     */
+    default void renderBackground(@NonNull Canvas canvas, @NonNull Rectangle region) throws UserException {
+        renderBackground(new ClippedCanvas(canvas, region));
+    }
+
     /**
      * This render method is called to render one frame of the video. The size
-     * of this frame is equal to the resolution of the resulting video.
+     * of this frame is equal to the resolution of the resulting video. The
+     * renderer calls it through
+     * {@link #renderFrameRegion(int, Point2D, BufferedImage)}.
      *
      * @param frame   the frame number
      * @param image   the image of the frame to be modified
@@ -116,6 +193,27 @@ public interface RendererPlugin {
     @SuppressWarnings("RedundantThrows") // implementations throw this exception
     default void renderFrame(int frame, @Nullable Point2D marker, @NonNull BufferedImage image) throws UserException { }
 
+    /**
+     * This render method is called by the renderer for every frame of the
+     * video and returns the area of the frame which was drawn on. The frame
+     * buffers are reused for later frames and only the areas drawn on are
+     * restored, so the area must cover everything drawn by the plugin. The
+     * default implementation calls
+     * {@link #renderFrame(int, Point2D, BufferedImage)} and returns the whole
+     * frame. Overwrite this method to return a smaller area.
+     *
+     * @param frame   the frame number
+     * @param image   the image of the frame to be modified
+     * @param marker  the track point marking the actual position
+     * @return the area drawn on in the coordinates of the image, <code>null</code> if nothing was drawn
+     * @throws UserException error to be shown to the user
+     */
+    @Nullable
+    default Rectangle renderFrameRegion(int frame, @Nullable Point2D marker, @NonNull BufferedImage image) throws UserException {
+        renderFrame(frame, marker, image);
+        return new Rectangle(0, 0, image.getWidth(), image.getHeight());
+    }
+
     /**
      * This method is called when the rendering has finished successfully.
      *
@@ -125,7 +223,7 @@ public interface RendererPlugin {
     default void renderingFinished() throws UserException { }
 
     /**
-     * This method is called when the rendering was canceled.
+     * This method is called when the rendering was canceled or failed.
      *
      * @throws UserException error to be shown to the user
      */
@@ -16,39 +16,152 @@
 package app.gpx_animator.core.util;
 
 import app.gpx_animator.core.data.LatLon;
+import app.gpx_animator.core.data.TrackStore;
 import app.gpx_animator.core.data.gpx.GpxPoint;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
 import java.awt.geom.Point2D;
-import java.util.TreeMap;
 
+/**
+ * Interpolates the location on a track between its points. The methods of
+ * this class itself do a binary search for every call and can be used for
+ * random access. A {@link Cursor} remembers its position on the track and is
+ * much faster when it is called with increasing times.
+ */
 public final class LinearInterpolation {
-    private final TreeMap<Long, Point2D> map;
-    public LinearInterpolation(final TreeMap<Long, Point2D> map) {
-        this.map = new TreeMap<Long, Point2D>(map);
+
+    private static final int MAX_LINEAR_STEPS = 8;
+
+    private final TrackStore store;
+
+    public LinearInterpolation(final TrackStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates a new cursor on the track. A cursor is not thread safe, every
+     * thread needs its own cursor.
+     *
+     * @return a new cursor placed before the start of the track
+     */
+    public Cursor createCursor() {
+        return new Cursor();
     }
 
     public Point2D getPointAtTime(final long time) {
-        var point = this.map.get(time);
-        if (point == null) {
-            var time1 = this.map.floorKey(time);
-            var time2 = this.map.ceilingKey(time);
-            if (time1 == null || time2 == null) {
-                return null;
-            }
-            var point1 = this.map.get(time1);
-            var point2 = this.map.get(time2);
-            if (point1 instanceof GpxPoint gpxPoint1 && point2 instanceof GpxPoint gpxPoint2) {
-                var x = interpolate(time1, gpxPoint1.getX(), time2, gpxPoint2.getX(), time);
-                var y = interpolate(time1, gpxPoint1.getY(), time2, gpxPoint2.getY(), time);
-                var lat = interpolate(time1, gpxPoint1.getLatLon().getLat(), time2, gpxPoint2.getLatLon().getLat(), time);
-                var lon = interpolate(time1, gpxPoint1.getLatLon().getLon(), time2, gpxPoint2.getLatLon().getLon(), time);
-                point = new GpxPoint(x, y, new LatLon(lat, lon, time, null, null), time, null);
-            }
+        return getPointAtIndex(store.floorIndex(time), time);
+    }
+
+    /**
+     * Writes the location at the specified time into the target point
+     * without allocating a new point.
+     *
+     * @param time the time of the location
+     * @param target the point to store the location in
+     * @return <code>false</code> if the time is outside the track, the target is left unchanged then
+     */
+    public boolean getLocationAtTime(final long time, @NonNull final Point2D target) {
+        return getLocationAtIndex(store.floorIndex(time), time, target);
+    }
+
+    private Point2D getPointAtIndex(final int floorIndex, final long time) {
+        if (floorIndex < 0) {
+            return null;
+        }
+        if (store.getTime(floorIndex) == time) {
+            return store.getPoint(floorIndex);
         }
-        return point;
+        final var index2 = floorIndex + 1;
+        if (index2 >= store.size()) {
+            return null;
+        }
+        final var time1 = store.getTime(floorIndex);
+        final var time2 = store.getTime(index2);
+        final var x = interpolate(time1, store.getX(floorIndex), time2, store.getX(index2), time);
+        final var y = interpolate(time1, store.getY(floorIndex), time2, store.getY(index2), time);
+        final var lat = interpolate(time1, store.getLat(floorIndex), time2, store.getLat(index2), time);
+        final var lon = interpolate(time1, store.getLon(floorIndex), time2, store.getLon(index2), time);
+        return new GpxPoint(x, y, new LatLon(lat, lon, time, null, null), time, null);
     }
 
+    private boolean getLocationAtIndex(final int floorIndex, final long time, @NonNull final Point2D target) {
+        if (floorIndex < 0) {
+            return false;
+        }
+        if (store.getTime(floorIndex) == time) {
+            target.setLocation(store.getX(floorIndex), store.getY(floorIndex));
+            return true;
+        }
+        final var index2 = floorIndex + 1;
+        if (index2 >= store.size()) {
+            return false;
+        }
+        final var time1 = store.getTime(floorIndex);
+        final var time2 = store.getTime(index2);
+        target.setLocation(
+                interpolate(time1, store.getX(floorIndex), time2, store.getX(index2), time),
+                interpolate(time1, store.getY(floorIndex), time2, store.getY(index2), time));
+        return true;
+    }
 
     private double interpolate(final double time1, final double value1, final double time2, final double value2, final double time) {
         return value1 + (value2 - value1) * (time - time1) / (time2 - time1);
     }
+
+    /**
+     * A position on the track, which moves forward point by point. Moving
+     * backwards or far ahead falls back to a binary search, so a cursor
+     * always returns the same results as the random access methods.
+     */
+    public final class Cursor {
+
+        private int index = -1;
+
+        private Cursor() { }
+
+        /**
+         * Moves the cursor to the specified time.
+         *
+         * @param time the new time of the cursor
+         * @return the index of the last point at or before the time, <code>-1</code> if there is none
+         */
+        public int floorIndex(final long time) {
+            if (index >= 0 && time < store.getTime(index)) {
+                index = store.floorIndex(time);
+                return index;
+            }
+            var steps = 0;
+            while (index + 1 < store.size() && store.getTime(index + 1) <= time) {
+                if (++steps > MAX_LINEAR_STEPS) {
+                    index = store.floorIndex(time);
+                    return index;
+                }
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * Moves the cursor to the specified time and creates a point object
+         * for the plugins.
+         *
+         * @param time the new time of the cursor
+         * @return the point at the time, <code>null</code> if the time is outside the track
+         */
+        public Point2D getPointAtTime(final long time) {
+            return getPointAtIndex(floorIndex(time), time);
+        }
+
+        /**
+         * Moves the cursor to the specified time and writes the location into
+         * the target point without allocating a new point.
+         *
+         * @param time the new time of the cursor
+         * @param target the point to store the location in
+         * @return <code>false</code> if the time is outside the track, the target is left unchanged then
+         */
+        public boolean getLocationAtTime(final long time, @NonNull final Point2D target) {
+            return getLocationAtIndex(floorIndex(time), time, target);
+        }
+    }
 }
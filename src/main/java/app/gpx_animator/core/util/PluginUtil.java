@@ -16,6 +16,7 @@
 package app.gpx_animator.core.util;
 
 import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.renderer.plugins.RendererPlugin;
@@ -41,6 +42,7 @@ public final class PluginUtil {
 
     @SuppressWarnings("PMD.AvoidLiteralsInIfCondition") // checking parameter count in constructor examination is quite okay
     public static List<RendererPlugin> getAvailablePlugins(@NonNull final Configuration configuration, @NonNull final FrameWriter frameWriter,
+                                                           @NonNull final FrameBufferPool frameBufferPool,
                                                            @NonNull final RenderingContext renderingContext) {
         final var plugins = new ArrayList<RendererPlugin>();
 
@@ -59,6 +61,7 @@ public final class PluginUtil {
                         final var instance = aClass.cast(object);
                         instance.setFrameWriter(frameWriter);
                         instance.setRenderingContext(renderingContext);
+                        instance.setFrameBufferPool(frameBufferPool);
                         plugins.add(instance);
                     }
                 } catch (final Exception e) {
@@ -30,7 +30,10 @@ public final class RenderUtil {
     }
 
     public static Graphics2D getGraphics(@NonNull final BufferedImage image) {
-        final var graphics = (Graphics2D) image.getGraphics();
+        return setRenderingHints((Graphics2D) image.getGraphics());
+    }
+
+    public static Graphics2D setRenderingHints(@NonNull final Graphics2D graphics) {
         graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
@@ -15,11 +15,26 @@
  */
 package app.gpx_animator.core.util;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.text.Collator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public final class Utils {
 
@@ -29,15 +44,161 @@ public final class Utils {
         throw new InstantiationException("Utility classes can't be instantiated!");
     }
 
-    // copied from https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage
     public static BufferedImage deepCopy(final BufferedImage bi) {
         final var b = new BufferedImage(bi.getWidth(), bi.getHeight(), bi.getType());
-        final var g = (Graphics2D) b.getGraphics();
-        g.drawImage(bi, 0, 0, null);
-        g.dispose();
+        copy(bi, b);
         return b;
     }
 
+    /**
+     * Copies the content of the source image into the target image. Both
+     * images must have the same size. If they have the same type too, the
+     * pixel data is copied directly without using Java 2D.
+     *
+     * @param source the image to copy from
+     * @param target the image to copy into
+     */
+    public static void copy(@NonNull final BufferedImage source, @NonNull final BufferedImage target) {
+        if (source.getType() != target.getType()
+                || source.getWidth() != target.getWidth() || source.getHeight() != target.getHeight()
+                || !copyPixels(source.getRaster(), target.getRaster(), 0, 0, 0, 0, source.getWidth(), source.getHeight())) {
+            // copied from https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage
+            final var g = (Graphics2D) target.getGraphics();
+            g.drawImage(source, 0, 0, null);
+            g.dispose();
+        }
+    }
+
+    /**
+     * Copies a rectangular area of the source image into the same area of
+     * the target image. Both images must have the same size and type.
+     *
+     * @param source the image to copy from
+     * @param target the image to copy into
+     * @param area the area to copy, clipped to the image bounds
+     */
+    public static void copy(@NonNull final BufferedImage source, @NonNull final BufferedImage target, @NonNull final Rectangle area) {
+        copy(source, area, target, area.x, area.y);
+    }
+
+    /**
+     * Copies a rectangular area of the source image to the specified
+     * location of the target image. Both images must have the same type.
+     *
+     * @param source the image to copy from
+     * @param area the area of the source image to copy, clipped to the bounds of both images
+     * @param target the image to copy into
+     * @param targetX the x coordinate of the copied area in the target image
+     * @param targetY the y coordinate of the copied area in the target image
+     */
+    public static void copy(@NonNull final BufferedImage source, @NonNull final Rectangle area,
+                            @NonNull final BufferedImage target, final int targetX, final int targetY) {
+        final var dx = targetX - area.x;
+        final var dy = targetY - area.y;
+        final var clipped = area.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()))
+                .intersection(new Rectangle(-dx, -dy, target.getWidth(), target.getHeight()));
+        if (!clipped.isEmpty()
+                && !copyPixels(source.getRaster(), target.getRaster(), clipped.x, clipped.y, clipped.x + dx, clipped.y + dy,
+                        clipped.width, clipped.height)) {
+            target.getRaster().setRect(source.getRaster().createChild(
+                    clipped.x, clipped.y, clipped.width, clipped.height, clipped.x + dx, clipped.y + dy, null));
+        }
+    }
+
+    /**
+     * Copies the pixels row by row using {@link System#arraycopy}, if both
+     * rasters store their pixels interleaved in a byte array or packed in an
+     * int array with the same layout.
+     *
+     * @return <code>false</code> if the layout of the rasters is not supported
+     */
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // a rectangle and its position in the target
+    private static boolean copyPixels(@NonNull final Raster source, @NonNull final WritableRaster target,
+                                      final int x, final int y, final int targetX, final int targetY, final int width, final int height) {
+        final var sourceModel = source.getSampleModel();
+        final var targetModel = target.getSampleModel();
+        final int sourceStride;
+        final int targetStride;
+        final int pixelStride;
+        if (sourceModel instanceof PixelInterleavedSampleModel sourceInterleaved
+                && targetModel instanceof PixelInterleavedSampleModel targetInterleaved
+                && source.getDataBuffer() instanceof DataBufferByte && target.getDataBuffer() instanceof DataBufferByte
+                && sourceInterleaved.getPixelStride() == targetInterleaved.getPixelStride()
+                && Arrays.equals(sourceInterleaved.getBandOffsets(), targetInterleaved.getBandOffsets())) {
+            sourceStride = sourceInterleaved.getScanlineStride();
+            targetStride = targetInterleaved.getScanlineStride();
+            pixelStride = sourceInterleaved.getPixelStride();
+        } else if (sourceModel instanceof SinglePixelPackedSampleModel sourcePacked
+                && targetModel instanceof SinglePixelPackedSampleModel targetPacked
+                && source.getDataBuffer() instanceof DataBufferInt && target.getDataBuffer() instanceof DataBufferInt
+                && Arrays.equals(sourcePacked.getBitMasks(), targetPacked.getBitMasks())) {
+            sourceStride = sourcePacked.getScanlineStride();
+            targetStride = targetPacked.getScanlineStride();
+            pixelStride = 1;
+        } else {
+            return false;
+        }
+
+        final var sourceBuffer = source.getDataBuffer();
+        final var targetBuffer = target.getDataBuffer();
+        final var sourceData = sourceBuffer instanceof DataBufferByte byteBuffer ? byteBuffer.getData() : ((DataBufferInt) sourceBuffer).getData();
+        final var targetData = targetBuffer instanceof DataBufferByte byteBuffer ? byteBuffer.getData() : ((DataBufferInt) targetBuffer).getData();
+
+        var sourceOffset = sourceBuffer.getOffset() + (y - source.getSampleModelTranslateY()) * sourceStride
+                + (x - source.getSampleModelTranslateX()) * pixelStride;
+        var targetOffset = targetBuffer.getOffset() + (targetY - target.getSampleModelTranslateY()) * targetStride
+                + (targetX - target.getSampleModelTranslateX()) * pixelStride;
+        final var length = width * pixelStride;
+        for (var row = 0; row < height; row++) {
+            System.arraycopy(sourceData, sourceOffset, targetData, targetOffset, length);
+            sourceOffset += sourceStride;
+            targetOffset += targetStride;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the least recently modified files with an extension from a
+     * directory, until the remaining files don't exceed a total size. Caches
+     * touch their files when they are used, to keep them.
+     *
+     * @param directory the directory of the cache
+     * @param fileExtension the extension of the cache files, other files are kept
+     * @param maxBytes the maximum total size of the cache files
+     * @throws IOException if the directory can't be read
+     */
+    public static void deleteLeastRecentlyUsed(@NonNull final Path directory, @NonNull final String fileExtension,
+                                               final long maxBytes) throws IOException {
+        // the modification times are read once, other processes may change them while sorting
+        final List<Path> files;
+        try (var stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(fileExtension))
+                    .map(path -> Map.entry(path, getLastModified(path)))
+                    .sorted(Map.Entry.<Path, Long>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .toList();
+        }
+        var size = 0L;
+        for (final var path : files) {
+            try {
+                size += Files.size(path);
+                if (size > maxBytes) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (final NoSuchFileException e) {
+                // removed by another process
+            }
+        }
+    }
+
+    private static long getLastModified(@NonNull final Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
     @SuppressWarnings({"PMD.CompareObjectsWithEquals", "PMD.UseEqualsToCompareStrings", "StringEquality"})
     @SuppressFBWarnings("ES_COMPARING_PARAMETER_STRING_WITH_EQ") //NON-NLS
     public static boolean isEqual(final String source, final String target) {
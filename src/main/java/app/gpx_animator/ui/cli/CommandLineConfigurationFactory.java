@@ -26,6 +26,7 @@ import app.gpx_animator.core.data.Position;
 import app.gpx_animator.core.data.SpeedUnit;
 import app.gpx_animator.core.data.TrackIcon;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.TileCache;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javax.xml.XMLConstants;
@@ -68,6 +69,8 @@ public final class CommandLineConfigurationFactory {
 
     private final boolean gui;
 
+    private Integer prefetchMinZoom;
+    private Integer prefetchMaxZoom;
 
     private final Configuration configuration;
 
@@ -165,6 +168,24 @@ public final class CommandLineConfigurationFactory {
                         case PHOTO_TIME -> cfg.photoTime(Long.parseLong(args[++i]));
                         case PHOTO_ANIMATION_DURATION -> cfg.photoAnimationDuration(Long.parseLong(args[++i]));
                         case PREVIEW_LENGTH -> cfg.previewLength(Long.parseLong(args[++i]));
+                        case RENDER_THREADS -> cfg.renderThreads(Integer.parseInt(args[++i]));
+                        case ENCODER_QUEUE_SIZE -> cfg.encoderQueueSize(Integer.parseInt(args[++i]));
+                        case BACKGROUND_MAP_LOOKAHEAD -> cfg.backgroundMapLookahead(Long.parseLong(args[++i]));
+                        case TMS_CONNECTIONS_PER_HOST -> cfg.tmsConnectionsPerHost(Integer.parseInt(args[++i]));
+                        case BUILD_TILE_PACK -> {
+                            final var packFile = new File(args[++i]);
+                            final var tiles = TileCache.buildTilePack(packFile);
+                            try (var pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+                                pw.println(String.format(resourceBundle.getString("cli.tilepack.written"), tiles, packFile));
+                                pw.flush();
+                            }
+                            exit();
+                        }
+                        case PREFETCH_TILES -> {
+                            final var zooms = args[++i].split("-", 2);
+                            prefetchMinZoom = Integer.parseInt(zooms[0].trim());
+                            prefetchMaxZoom = zooms.length > 1 ? Integer.parseInt(zooms[1].trim()) : prefetchMinZoom;
+                        }
                         case SKIP_IDLE -> cfg.skipIdle(Boolean.parseBoolean(args[++i]));
                         case PRE_DRAW_TRACK -> cfg.preDrawTrack(true);
                         case PRE_DRAW_TRACK_COLOR -> preDrawTrackColorList.add((Color.decode(args[++i])));
@@ -399,4 +420,18 @@ public final class CommandLineConfigurationFactory {
         return gui;
     }
 
+    /**
+     * The lowest zoom level of the map tiles to download into the tile cache
+     * instead of rendering the video.
+     *
+     * @return the lowest zoom level, <code>null</code> to render the video
+     */
+    public Integer getPrefetchMinZoom() {
+        return prefetchMinZoom;
+    }
+
+    public Integer getPrefetchMaxZoom() {
+        return prefetchMaxZoom;
+    }
+
 }
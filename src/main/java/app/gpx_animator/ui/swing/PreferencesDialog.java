@@ -28,6 +28,7 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
@@ -41,6 +42,8 @@ public class PreferencesDialog extends EscapeDialog {
     @Serial
     private static final long serialVersionUID = -8767146323054030406L;
 
+    private static final long MEGABYTE = 1_024 * 1_024;
+
     public PreferencesDialog(final JFrame owner) {
         super(owner);
 
@@ -64,6 +67,11 @@ public class PreferencesDialog extends EscapeDialog {
         tileCacheTimeLimitSpinner.setModel(new DurationSpinnerModel());
         tileCacheTimeLimitSpinner.setEditor(new DurationEditor(tileCacheTimeLimitSpinner));
 
+        final var tileCacheSizeLimitSpinner = new JSpinner();
+        tileCacheSizeLimitSpinner.setToolTipText(resourceBundle.getString("ui.dialog.preferences.cachesizelimit.tooltip"));
+        tileCacheSizeLimitSpinner.setModel(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), Long.valueOf(Long.MAX_VALUE / MEGABYTE),
+                Long.valueOf(100)));
+
         final var tileCacheSize = TileCache.getSize();
         final var tileCacheSizeLabel = new JLabel(FormatUtil.readableFileSize(tileCacheSize));
         final var tileCacheDeleteButton = new JButton(resourceBundle.getString("ui.dialog.preferences.cachesize.delete"));
@@ -105,6 +113,7 @@ public class PreferencesDialog extends EscapeDialog {
         saveButton.addActionListener(e -> SwingUtilities.invokeLater(() -> {
             Preferences.setTileCacheDir(tileCachePathSelector.getFilename());
             Preferences.setTileCacheTimeLimit((Long) tileCacheTimeLimitSpinner.getValue());
+            Preferences.setTileCacheSizeLimit((Long) tileCacheSizeLimitSpinner.getValue() * MEGABYTE);
             Preferences.setTrackColorRandom(trackColorRandom.isSelected());
             Preferences.setTrackColorDefault(trackColorSelector.getColor());
             Preferences.setPreviewEnabled(enablePreview.isSelected());
@@ -115,30 +124,33 @@ public class PreferencesDialog extends EscapeDialog {
         setContentPane(FormBuilder.create()
                 .padding(new EmptyBorder(20, 20, 20, 20))
                 .columns("right:p, 5dlu, fill:[200dlu, pref]") //NON-NLS
-                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
+                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
 
                 .addSeparator(resourceBundle.getString("ui.dialog.preferences.cache.separator")).xyw(1, 1, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachepath.label")).xy(1, 3)
                 .add(tileCachePathSelector).xy(3, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachetimelimit.label")).xy(1, 5)
                 .add(tileCacheTimeLimitSpinner).xy(3, 5)
-                .add(resourceBundle.getString("ui.dialog.preferences.cachesize.label")).xy(1, 7)
-                .add(tileCacheSizePanel).xy(3, 7)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachesizelimit.label")).xy(1, 7)
+                .add(tileCacheSizeLimitSpinner).xy(3, 7)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachesize.label")).xy(1, 9)
+                .add(tileCacheSizePanel).xy(3, 9)
 
-                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 9, 3)
-                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 11)
-                .add(trackColorPanel).xy(3, 11)
+                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 11, 3)
+                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 13)
+                .add(trackColorPanel).xy(3, 13)
 
-                .addSeparator(resourceBundle.getString("ui.dialog.preferences.rendering")).xyw(1, 13, 3)
-                .add(resourceBundle.getString("ui.dialog.preferences.rendering.enablepreview")).xy(1, 15)
-                .add(enablePreview).xy(3, 15)
+                .addSeparator(resourceBundle.getString("ui.dialog.preferences.rendering")).xyw(1, 15, 3)
+                .add(resourceBundle.getString("ui.dialog.preferences.rendering.enablepreview")).xy(1, 17)
+                .add(enablePreview).xy(3, 17)
 
-                .addSeparator("").xyw(1, 17, 3)
-                .addBar(cancelButton, saveButton).xyw(1, 19, 3, CellConstraints.RIGHT, CellConstraints.FILL)
+                .addSeparator("").xyw(1, 19, 3)
+                .addBar(cancelButton, saveButton).xyw(1, 21, 3, CellConstraints.RIGHT, CellConstraints.FILL)
                 .build());
 
         tileCachePathSelector.setFilename(Preferences.getTileCacheDir());
         tileCacheTimeLimitSpinner.setValue(Preferences.getTileCacheTimeLimit());
+        tileCacheSizeLimitSpinner.setValue(Preferences.getTileCacheSizeLimit() / MEGABYTE);
 
         pack();
         setLocationRelativeTo(owner);
@@ -0,0 +1,138 @@
+package app.gpx_animator.core.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackStoreTest {
+
+    @Test
+    void duplicateTimesAreMovedLikeInATreeMap() {
+        final var random = new Random(42);
+        for (final var ordered : new boolean[] {true, false}) {
+            // GIVEN
+            final var builder = TrackStore.createBuilder();
+            final Map<Long, Integer> expected = new TreeMap<>();
+            var time = 0L;
+            for (var i = 0; i < 1_000; i++) {
+                time = ordered ? time + random.nextInt(3) : random.nextInt(500);
+                var freeTime = time;
+                while (expected.containsKey(freeTime)) {
+                    freeTime++;
+                }
+                expected.put(freeTime, i);
+                builder.add(time, i, 2 * i, 0, 0, null, null);
+            }
+
+            // WHEN
+            final var store = builder.build();
+
+            // THEN
+            assertEquals(expected.size(), store.size());
+            var index = 0;
+            for (final var entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), store.getTime(index));
+                assertEquals(entry.getValue().doubleValue(), store.getX(index));
+                assertEquals(2 * store.getX(index), store.getY(index));
+                index++;
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("HardCodedStringLiteral")
+    void optionalValues() {
+        // GIVEN
+        final var store = TrackStore.createBuilder()
+                .add(10, 0, 0, 47.0, 8.0, null, null)
+                .add(20, 0, 0, 47.1, 8.1, 5.5, "hello")
+                .build();
+
+        // WHEN
+        final var point = store.getPoint(1);
+
+        // THEN
+        assertNull(store.getSpeed(0));
+        assertNull(store.getComment(0));
+        assertEquals(5.5, point.getSpeed());
+        assertEquals("hello", point.getLatLon().getCmt());
+        assertEquals(47.1, point.getLatLon().getLat());
+        assertEquals(20, point.getTime());
+    }
+
+    @Test
+    void searchAndRange() {
+        // GIVEN
+        final var builder = TrackStore.createBuilder();
+        for (var time = 10; time <= 50; time += 10) {
+            builder.add(time, time, time, 0, 0, null, null);
+        }
+        final var store = builder.build();
+
+        // WHEN
+        final var range = store.range(15, 40);
+
+        // THEN
+        assertEquals(1, store.indexOf(20));
+        assertEquals(-3, store.indexOf(25));
+        assertEquals(1, store.floorIndex(25));
+        assertEquals(-1, store.floorIndex(5));
+        assertEquals(2, store.ceilingIndex(25));
+        assertEquals(-1, store.ceilingIndex(55));
+
+        assertEquals(3, range.size());
+        assertEquals(20, range.getFirstTime());
+        assertEquals(40, range.getLastTime());
+        assertEquals(0, range.indexOf(20));
+        assertEquals(-1, range.indexOf(15));
+        assertEquals(-4, range.indexOf(45));
+        assertEquals(0, store.range(60, 70).size());
+
+        range.setLocation(0, 1, 2);
+        assertEquals(1, store.getX(1));
+        assertEquals(2, store.getY(1));
+    }
+
+    @Test
+    @SuppressWarnings("HardCodedStringLiteral")
+    void spilledStore(@TempDir final Path tempDir) throws IOException {
+        // GIVEN
+        final var file = tempDir.resolve("tracks.tmp");
+        final TrackStore store;
+        try (var spill = new TrackSpill(file)) {
+            final var builder = TrackStore.createBuilder(100, spill);
+            for (var i = 0; i < 1_000; i++) {
+                builder.add(i / 2, i, -i, 47.0, 8.0, i == 10 ? 5.5 : null, i == 20 ? "hello" : null);
+            }
+
+            // WHEN
+            store = builder.build();
+
+            // THEN
+            assertTrue(spill.getSize() >= 1_000L * (Long.BYTES + 4 * Double.BYTES));
+            assertEquals(1_000, store.size());
+            assertEquals(999, store.getTime(999));
+            assertEquals(999, store.getX(999));
+            assertNull(store.getSpeed(11));
+            assertEquals(5.5, store.getSpeed(10));
+            assertNull(store.getComment(21));
+            assertEquals("hello", store.getComment(20));
+
+            store.setLocation(500, 1, 2);
+            assertEquals(1, store.range(500, 510).getX(0));
+            assertEquals(2, store.getY(500));
+        }
+        assertFalse(Files.exists(file));
+    }
+}
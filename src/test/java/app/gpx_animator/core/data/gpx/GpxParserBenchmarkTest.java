@@ -0,0 +1,114 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.FileInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the streaming GPX reader with the content handler used by a SAX
+ * parser, and both with the content handler used before as a baseline. The
+ * throughput is only measured if the environment variable
+ * <code>GPX_BENCHMARK</code> is <code>true</code>.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral", "java:S106" }) // the benchmark prints its results
+class GpxParserBenchmarkTest {
+
+    private static final File GPX_FILE = new File("src/test/resources/gpx/bikeride.gpx");
+
+    private static GpxContentHandler parseWithSax() throws Exception {
+        final var gch = new GpxContentHandler();
+        try (var in = new FileInputStream(GPX_FILE)) {
+            SAXParserFactory.newInstance().newSAXParser().parse(in, gch);
+        }
+        return gch;
+    }
+
+    private static LegacyGpxContentHandler parseWithLegacyHandler() throws Exception {
+        final var handler = new LegacyGpxContentHandler();
+        try (var in = new FileInputStream(GPX_FILE)) {
+            SAXParserFactory.newInstance().newSAXParser().parse(in, handler);
+        }
+        return handler;
+    }
+
+    private static GpxContentHandler parseWithStreamingReader() throws Exception {
+        final var gch = new GpxContentHandler();
+        GpxParser.parseGpx(GPX_FILE, gch);
+        return gch;
+    }
+
+    @Test
+    void readsTheSameAsTheSaxParser() throws Exception {
+        // WHEN
+        final var sax = parseWithSax();
+        final var streaming = parseWithStreamingReader();
+
+        // THEN
+        assertSamePoints(sax.getTrackPoints(), streaming.getTrackPoints());
+        assertSamePoints(sax.getWaypoints(), streaming.getWaypoints());
+    }
+
+    @Test
+    void readsTheSameAsTheLegacyHandler() throws Exception {
+        // WHEN
+        final var legacy = parseWithLegacyHandler();
+        final var streaming = parseWithStreamingReader();
+
+        // THEN
+        final var trackPoints = streaming.getTrackPoints();
+        assertEquals(legacy.getPointLists().size(), trackPoints.getSegmentCount());
+        var index = 0;
+        for (final var segment : legacy.getPointLists()) {
+            for (final var point : segment) {
+                assertEquals(point.getTime(), trackPoints.getTime(index));
+                assertEquals(point.getLat(), trackPoints.getLat(index));
+                assertEquals(point.getLon(), trackPoints.getLon(index));
+                assertEquals(point.getCmt(), trackPoints.getComment(index));
+                index++;
+            }
+        }
+        assertEquals(trackPoints.size(), index);
+        assertEquals(legacy.getWaypointList().size(), streaming.getWaypoints().size());
+    }
+
+    private static void assertSamePoints(final TrackBuffer expected, final TrackBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getSegmentCount(), actual.getSegmentCount());
+        for (var segment = 0; segment < expected.getSegmentCount(); segment++) {
+            assertEquals(expected.getSegmentEnd(segment), actual.getSegmentEnd(segment));
+        }
+        for (var i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTime(i), actual.getTime(i));
+            assertEquals(expected.getLat(i), actual.getLat(i));
+            assertEquals(expected.getLon(i), actual.getLon(i));
+            assertEquals(expected.getSpeed(i), actual.getSpeed(i));
+            assertEquals(expected.getName(i), actual.getName(i));
+            assertEquals(expected.getComment(i), actual.getComment(i));
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "GPX_BENCHMARK", matches = "true")
+    void measuresTheThroughput() throws Exception {
+        final var megabytes = GPX_FILE.length() / 1_000_000.0;
+        for (var round = 0; round < 5; round++) {
+            var start = System.nanoTime();
+            parseWithLegacyHandler();
+            final var legacy = megabytes / ((System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            parseWithSax();
+            final var sax = megabytes / ((System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            parseWithStreamingReader();
+            final var streaming = megabytes / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("legacy handler: %.1f MB/s, SAX parser: %.1f MB/s, streaming reader: %.1f MB/s (%.1fx)%n",
+                    legacy, sax, streaming, streaming / legacy);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class GpxParserTest {
+
+    private static List<File> createFiles(final Path dir, final int count) throws IOException {
+        final var files = new ArrayList<File>();
+        for (var i = 0; i < count; i++) {
+            final var file = dir.resolve("track" + i + ".gpx");
+            Files.writeString(file, """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <gpx version="1.1" creator="test"><trk><trkseg>
+                    <trkpt lat="%d.5" lon="8.0"><time>2021-08-14T10:00:00Z</time></trkpt>
+                    <trkpt lat="%d.5" lon="8.1"><time>2021-08-14T10:00:01Z</time></trkpt>
+                    </trkseg></trk></gpx>
+                    """.formatted(i, i));
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+    @Test
+    void parsesFilesInParallelInTheOrderOfTheFiles(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var files = createFiles(dir, 50);
+        final var indexes = new ArrayList<Integer>();
+        final var latitudes = new ArrayList<Double>();
+
+        // WHEN
+        GpxParser.parseGpx(files, 4, null, (index, gch) -> {
+            indexes.add(index);
+            latitudes.add(gch.getTrackPoints().getLat(1));
+        });
+
+        // THEN
+        assertEquals(50, indexes.size());
+        for (var i = 0; i < 50; i++) {
+            assertEquals(i, indexes.get(i));
+            assertEquals(i + 0.5, latitudes.get(i));
+        }
+    }
+
+    @Test
+    void failsOnTheFirstInvalidFile(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var files = createFiles(dir, 10);
+        Files.writeString(files.get(3).toPath(), "<gpx><trk>");
+        final var consumed = new ArrayList<Integer>();
+
+        // WHEN
+        assertThrows(UserException.class, () -> GpxParser.parseGpx(files, 4, null, (index, gch) -> consumed.add(index)));
+
+        // THEN
+        assertEquals(List.of(0, 1, 2), consumed);
+    }
+
+}
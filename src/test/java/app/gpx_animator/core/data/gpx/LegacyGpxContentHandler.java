@@ -0,0 +1,110 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.data.LatLon;
+import app.gpx_animator.core.data.Waypoint;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static app.gpx_animator.core.util.Utils.isEqual;
+
+/**
+ * The content handler used before the track points were kept in primitive
+ * buffers: element names are matched with a collator, every point is an
+ * object and timestamps are parsed with exceptions for the fallback. It is
+ * only kept as the baseline of the parser benchmark.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral", "PMD.BeanMembersShouldSerialize" })
+final class LegacyGpxContentHandler extends DefaultHandler {
+
+    private final List<List<LatLon>> timePointListList = new ArrayList<>();
+    private final List<LatLon> waypointList = new ArrayList<>();
+    private List<LatLon> timePointList;
+    private StringBuilder sb;
+    private long time = Long.MIN_VALUE;
+    private Double speed;
+    private double lat;
+    private double lon;
+    private String name;
+    private String cmt;
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+        if (isEqual("trkseg", qName)) {
+            timePointList = new ArrayList<>();
+        } else if (isEqual("trkpt", qName) || isEqual("wpt", qName)) {
+            lat = Double.parseDouble(attributes.getValue("lat"));
+            lon = Double.parseDouble(attributes.getValue("lon"));
+        } else if (isEqual("time", qName) || isEqual("speed", qName) || isEqual("name", qName) || isEqual("cmt", qName)) {
+            sb = new StringBuilder();
+        }
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if (sb != null) {
+            sb.append(ch, start, length);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.NullAssignment") // XML parsing ending elements, it's okay here
+    public void endElement(final String uri, final String localName, final String qName) {
+        if (isEqual("trkseg", qName)) {
+            timePointListList.add(timePointList);
+            timePointList = null;
+        } else if (isEqual("trkpt", qName)) {
+            timePointList.add(new LatLon(lat, lon, time, speed, cmt));
+            time = Long.MIN_VALUE;
+            speed = null;
+            cmt = null;
+        } else if (isEqual("wpt", qName)) {
+            waypointList.add(new Waypoint(lat, lon, time, name));
+        } else if (isEqual("time", qName)) {
+            final var dateTime = parseDateTime(sb.toString());
+            time = dateTime != null ? dateTime.toInstant().toEpochMilli() : 0;
+            sb = null;
+        } else if (isEqual("speed", qName)) {
+            if (!sb.isEmpty()) {
+                speed = Double.parseDouble(sb.toString());
+            }
+        } else if (isEqual("name", qName)) {
+            name = sb.toString();
+            sb = null;
+        } else if (isEqual("cmt", qName)) {
+            cmt = sb.toString();
+            sb = null;
+        }
+    }
+
+    private static ZonedDateTime parseDateTime(final String dateTimeString) {
+        if (dateTimeString == null || dateTimeString.isBlank()) {
+            return null;
+        }
+
+        try {
+            return ZonedDateTime.parse(dateTimeString);
+        } catch (final DateTimeParseException ignored) { }
+
+        try {
+            return LocalDateTime.parse(dateTimeString).atZone(ZoneId.systemDefault());
+        } catch (final DateTimeParseException ignored) { }
+
+        throw new IllegalArgumentException("Unable to parse date and time from string '" + dateTimeString + "'");
+    }
+
+    List<List<LatLon>> getPointLists() {
+        return timePointListList;
+    }
+
+    List<LatLon> getWaypointList() {
+        return waypointList;
+    }
+
+}
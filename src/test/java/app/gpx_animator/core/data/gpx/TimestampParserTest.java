@@ -0,0 +1,68 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TimestampParserTest {
+
+    private static long parseWithJavaTime(final String text) {
+        try {
+            return ZonedDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException ignored) { }
+        try {
+            return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException ignored) { }
+        return TimestampParser.UNSUPPORTED;
+    }
+
+    @Test
+    void parsesLikeJavaTime() {
+        // GIVEN
+        final var texts = new String[] {
+                "2021-08-14T10:15:30Z", "2021-08-14T10:15:30.250Z", "2021-08-14T10:15:30.123456789Z",
+                "2021-08-14T10:15:30.1234567891Z", "2021-08-14T10:15Z", "2021-08-14T10:15:30.Z",
+                "2021-08-14T12:15:30+02:00", "2021-08-14T02:15:30-08:00", "1969-12-31T23:59:59.999Z",
+                "2020-02-29T00:00:00Z", "2021-02-29T00:00:00Z", "2021-13-01T00:00:00Z", "2021-08-14T24:00:00Z",
+                "2021-08-14T10:15:60Z", "2021-08-14T10:15:30+18:00", "2021-08-14T10:15:30+19:00",
+                "2021-08-14T10:15:30", "2021-08-14T10:15:30.5", "2021-08-14 10:15:30Z", "2021-08-14T10:15:30+0200",
+                "2021-08-14T10:15:30z", "0000-01-01T00:00:00Z", "9999-12-31T23:59:59Z", "", "garbage",
+        };
+
+        // WHEN / THEN
+        for (final var text : texts) {
+            final var parsed = TimestampParser.parse(text);
+            if (parsed != TimestampParser.UNSUPPORTED) {
+                assertEquals(parseWithJavaTime(text), parsed, text);
+            }
+        }
+        assertEquals(TimestampParser.UNSUPPORTED, TimestampParser.parse("2021-02-29T00:00:00Z"));
+        assertEquals(1_628_936_130_250L, TimestampParser.parse("2021-08-14T10:15:30.250Z"));
+    }
+
+    @Test
+    void parsesRandomTimestampsLikeJavaTime() {
+        final var random = new Random(42);
+        for (var i = 0; i < 10_000; i++) {
+            // GIVEN
+            final var text = "%04d-%02d-%02dT%02d:%02d:%02d.%03d%s".formatted(random.nextInt(10_000), 1 + random.nextInt(12),
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1_000),
+                    random.nextBoolean() ? "Z" : "%s%02d:%02d".formatted(random.nextBoolean() ? "+" : "-",
+                            random.nextInt(18), random.nextInt(60)));
+
+            // WHEN
+            final var parsed = TimestampParser.parse(text);
+
+            // THEN
+            assertEquals(parseWithJavaTime(text), parsed, text);
+        }
+    }
+
+}
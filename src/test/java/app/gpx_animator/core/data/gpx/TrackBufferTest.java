@@ -0,0 +1,66 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TrackBufferTest {
+
+    @Test
+    void storesPointsInSegments() {
+        // GIVEN
+        final var buffer = new TrackBuffer();
+
+        // WHEN
+        for (var i = 0; i < 1_000; i++) {
+            buffer.add(47 + i / 1_000.0, 8, i * 1_000L, Float.NaN, null, null);
+            if (i == 599) {
+                buffer.endSegment();
+            }
+        }
+        buffer.endSegment();
+        buffer.trimToSize();
+
+        // THEN
+        assertEquals(1_000, buffer.size());
+        assertEquals(2, buffer.getSegmentCount());
+        assertEquals(0, buffer.getSegmentStart(0));
+        assertEquals(600, buffer.getSegmentEnd(0));
+        assertEquals(600, buffer.getSegmentStart(1));
+        assertEquals(1_000, buffer.getSegmentEnd(1));
+        assertEquals(47.999, buffer.getLat(999));
+        assertEquals(999_000L, buffer.getTime(999));
+        assertFalse(buffer.hasSpeeds());
+        assertFalse(buffer.hasComments());
+    }
+
+    @Test
+    void storesOptionalValuesOnlyWhenUsed() {
+        // GIVEN
+        final var buffer = new TrackBuffer();
+
+        // WHEN
+        buffer.add(47.0, 8.0, Long.MIN_VALUE, Float.NaN, null, null);
+        buffer.add(47.1, 8.1, 10, 5.5f, null, "Gate");
+        buffer.add(47.2, 8.2, 20, Float.NaN, "Hut", "Gate");
+        buffer.endSegment();
+
+        // THEN
+        assertTrue(Float.isNaN(buffer.getSpeed(0)));
+        assertEquals(5.5f, buffer.getSpeed(1));
+        assertTrue(Float.isNaN(buffer.getSpeed(2)));
+        assertNull(buffer.getComment(0));
+        assertEquals("Gate", buffer.getComment(1));
+        assertEquals("Gate", buffer.getComment(2));
+        assertNull(buffer.getName(1));
+        assertEquals("Hut", buffer.getName(2));
+        assertEquals(List.of("Gate", "Hut"), buffer.getStrings());
+    }
+
+}
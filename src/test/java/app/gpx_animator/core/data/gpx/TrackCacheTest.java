@@ -0,0 +1,159 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TrackCacheTest {
+
+    private static final String GPX = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <gpx version="1.1" creator="test">
+            <wpt lat="47.1" lon="8.1"><time>2021-08-14T09:00:00Z</time><name>Start</name></wpt>
+            <trk><trkseg>
+            <trkpt lat="47.5" lon="8.5"><time>2021-08-14T10:00:00Z</time><speed>1.5</speed><cmt>Gate</cmt></trkpt>
+            <trkpt lat="47.6" lon="8.6"><time>2021-08-14T10:00:01Z</time></trkpt>
+            </trkseg><trkseg>
+            <trkpt lat="%s" lon="8.7"><time>2021-08-14T10:05:00Z</time><cmt>Gate</cmt></trkpt>
+            </trkseg></trk></gpx>
+            """;
+
+    private static GpxContentHandler parseAndSave(final Path cacheDir, final Path gpxFile) throws Exception {
+        final var cache = TrackCache.of(cacheDir, gpxFile.toFile());
+        final var gch = new GpxContentHandler();
+        GpxParser.parseGpx(gpxFile.toFile(), gch);
+        cache.save(gch);
+        return gch;
+    }
+
+    @Test
+    void loadsTheStoredTrack(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var gpxFile = dir.resolve("track.gpx");
+        Files.writeString(gpxFile, GPX.formatted("47.7"));
+        final var parsed = parseAndSave(dir.resolve("cache"), gpxFile);
+
+        // WHEN
+        final var loaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+
+        // THEN
+        assertNotNull(loaded);
+        final var expected = parsed.getTrackPoints();
+        final var actual = loaded.getTrackPoints();
+        assertEquals(3, actual.size());
+        assertEquals(2, actual.getSegmentCount());
+        assertEquals(2, actual.getSegmentEnd(0));
+        assertEquals(3, actual.getSegmentEnd(1));
+        for (var i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLat(i), actual.getLat(i));
+            assertEquals(expected.getLon(i), actual.getLon(i));
+            assertEquals(expected.getTime(i), actual.getTime(i));
+            assertEquals(expected.getSpeed(i), actual.getSpeed(i));
+            assertEquals(expected.getComment(i), actual.getComment(i));
+        }
+        assertEquals(1.5f, actual.getSpeed(0));
+        assertTrue(Float.isNaN(actual.getSpeed(1)));
+        assertEquals("Gate", actual.getComment(2));
+        assertNull(actual.getComment(1));
+        final var waypoints = loaded.getWaypoints();
+        assertEquals(1, waypoints.size());
+        assertEquals("Start", waypoints.getName(0));
+        assertEquals(parsed.getWaypoints().getTime(0), waypoints.getTime(0));
+    }
+
+    @Test
+    void ignoresTheStoredTrackOfAChangedFile(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var gpxFile = dir.resolve("track.gpx");
+        Files.writeString(gpxFile, GPX.formatted("47.7"));
+        final var modified = Files.getLastModifiedTime(gpxFile);
+        parseAndSave(dir.resolve("cache"), gpxFile);
+
+        // WHEN
+        Files.writeString(gpxFile, GPX.formatted("47.8"));
+        Files.setLastModifiedTime(gpxFile, FileTime.fromMillis(modified.toMillis() + 1_000));
+        final var loaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+
+        // THEN
+        assertNull(loaded);
+    }
+
+    @Test
+    void usesTheStoredTrackOfATouchedFile(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var gpxFile = dir.resolve("track.gpx");
+        Files.writeString(gpxFile, GPX.formatted("47.7"));
+        final var modified = Files.getLastModifiedTime(gpxFile);
+        parseAndSave(dir.resolve("cache"), gpxFile);
+
+        // WHEN
+        Files.setLastModifiedTime(gpxFile, FileTime.fromMillis(modified.toMillis() + 1_000));
+        final var loaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+
+        // THEN
+        assertNotNull(loaded);
+        assertEquals(47.7, loaded.getTrackPoints().getLat(2));
+    }
+
+    @Test
+    void usesTheStoredTrackOfATouchedFileFromAReadOnlyCache(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var gpxFile = dir.resolve("track.gpx");
+        Files.writeString(gpxFile, GPX.formatted("47.7"));
+        final var modified = Files.getLastModifiedTime(gpxFile);
+        parseAndSave(dir.resolve("cache"), gpxFile);
+        final var cacheFile = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).getFile();
+        final var stored = Files.readAllBytes(cacheFile);
+        assertTrue(cacheFile.toFile().setReadOnly());
+
+        // WHEN
+        Files.setLastModifiedTime(gpxFile, FileTime.fromMillis(modified.toMillis() + 1_000));
+        final var loaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+
+        // THEN
+        assertNotNull(loaded);
+        assertEquals(47.7, loaded.getTrackPoints().getLat(2));
+        if (!Files.isWritable(cacheFile)) {
+            assertArrayEquals(stored, Files.readAllBytes(cacheFile));
+        }
+    }
+
+    @Test
+    void ignoresTheStoredTrackOfAnotherTimeZone(@TempDir final Path dir) throws Exception {
+        // GIVEN
+        final var gpxFile = dir.resolve("track.gpx");
+        // timestamps without an offset are local times
+        Files.writeString(gpxFile, GPX.formatted("47.7").replace("Z</time>", "</time>"));
+        final var defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Zurich"));
+            final var parsed = parseAndSave(dir.resolve("cache"), gpxFile);
+
+            // WHEN
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            final var loaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+            final var reparsed = parseAndSave(dir.resolve("cache"), gpxFile);
+
+            // THEN
+            assertNull(loaded);
+            assertEquals(parsed.getTrackPoints().getTime(0) + 6 * 3_600_000L, reparsed.getTrackPoints().getTime(0));
+            final var reloaded = TrackCache.of(dir.resolve("cache"), gpxFile.toFile()).load();
+            assertNotNull(reloaded);
+            assertEquals(reparsed.getTrackPoints().getTime(0), reloaded.getTrackPoints().getTime(0));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+}
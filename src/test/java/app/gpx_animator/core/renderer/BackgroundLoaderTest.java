@@ -0,0 +1,60 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import app.gpx_animator.core.renderer.plugins.RendererPlugin;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundLoaderTest {
+
+    private static final class RecordingPlugin implements RendererPlugin {
+        private final List<Rectangle> prefetched = new ArrayList<>();
+        private final List<Rectangle> rendered = new ArrayList<>();
+
+        @Override
+        public void prefetchBackground(final Canvas canvas, final Rectangle region) {
+            prefetched.add(region);
+        }
+
+        @Override
+        public void renderBackground(final Canvas canvas, final Rectangle region) {
+            assertTrue(prefetched.contains(region));
+            rendered.add(region);
+        }
+    }
+
+    @Test
+    void loadsOnlyTheCellsShownByTheViewport() throws Exception {
+        // GIVEN a viewport moving to the right along the top of the map
+        final var plan = new FramePlan(3, 300, 200, true);
+        plan.setViewport(1, 0, 0);
+        plan.setViewport(2, 200, 0);
+        plan.setViewport(3, 400, 0);
+        final var plugin = new RecordingPlugin();
+        final var canvas = new ImageCanvas(new BufferedImage(1_024, 1_024, BufferedImage.TYPE_3BYTE_BGR));
+        final var loader = new BackgroundLoader(List.of(plugin), canvas, plan, 1);
+
+        // WHEN
+        loader.start();
+        final var prefetchedAtStart = plugin.prefetched.size();
+        loader.prepareFrame(1);
+        final var renderedForFirstFrame = plugin.rendered.size();
+        loader.draw(g2 -> new Rectangle(600, 600, 100, 100));
+        loader.prepareFrame(2);
+        loader.prepareFrame(3);
+
+        // THEN the cells of 256 x 256 pixels from x = 0 to 767 are shown, the ones below never
+        assertEquals(2, prefetchedAtStart);
+        assertEquals(2, renderedForFirstFrame);
+        assertEquals(List.of(new Rectangle(0, 0, 256, 256), new Rectangle(256, 0, 256, 256), new Rectangle(512, 0, 256, 256)),
+                plugin.rendered);
+    }
+}
@@ -0,0 +1,125 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class FramePipelineTest {
+
+    @Test
+    void framesAreConsumedInOrder() throws UserException {
+        // GIVEN
+        final List<Integer> consumed = new ArrayList<>();
+        final List<Integer> finished = Collections.synchronizedList(new ArrayList<>());
+        final var done = new CountDownLatch[4];
+        for (var frame = 0; frame < done.length; frame++) {
+            done[frame] = new CountDownLatch(1);
+        }
+
+        // WHEN
+        try (var pipeline = new FramePipeline<Integer>(4, consumed::add)) {
+            for (var frame = 0; frame < 8; frame++) {
+                final var renderFrame = frame;
+                pipeline.submit(() -> {
+                    // the first frames wait for the next one, so they finish in reverse order
+                    if (renderFrame < done.length - 1) {
+                        await(done[renderFrame + 1]);
+                    }
+                    finished.add(renderFrame);
+                    if (renderFrame < done.length) {
+                        done[renderFrame].countDown();
+                    }
+                    return renderFrame;
+                });
+            }
+            pipeline.finish();
+        }
+
+        // THEN
+        assertEquals(List.of(3, 2, 1, 0), finished.stream().filter(frame -> frame < done.length).toList());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), consumed);
+    }
+
+    @Test
+    void renderErrorReachesTheCaller() {
+        // GIVEN
+        final var error = new UserException("broken frame");
+        final List<Integer> consumed = new ArrayList<>();
+
+        // WHEN
+        final var thrown = assertThrows(UserException.class, () -> {
+            try (var pipeline = new FramePipeline<Integer>(4, consumed::add)) {
+                pipeline.submit(() -> 0);
+                pipeline.submit(() -> {
+                    throw error;
+                });
+                pipeline.submit(() -> 2);
+                pipeline.finish();
+            }
+        });
+
+        // THEN
+        assertSame(error, thrown);
+        assertEquals(List.of(0), consumed);
+    }
+
+    @Test
+    void closeStopsTheWorkers() throws Exception {
+        // GIVEN
+        final List<Thread> workers = Collections.synchronizedList(new ArrayList<>());
+        final var started = new CountDownLatch(2);
+        final var interrupted = new CountDownLatch(2);
+        final var renderedAfterClose = new AtomicBoolean();
+        final var pipeline = new FramePipeline<Integer>(2, frame -> { });
+        for (var frame = 0; frame < 2; frame++) {
+            pipeline.submit(() -> {
+                workers.add(Thread.currentThread());
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 0;
+            });
+        }
+        pipeline.submit(() -> {
+            renderedAfterClose.set(true);
+            return 0;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // WHEN
+        pipeline.close();
+
+        // THEN
+        assertEquals(0, interrupted.getCount());
+        assertFalse(renderedAfterClose.get());
+        for (final var worker : workers) {
+            worker.join(10_000);
+            assertFalse(worker.isAlive());
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.renderer.cache.MemoryTileCache;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class RendererTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        MemoryTileCache.getShared().clear();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static boolean isTileFetcherRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.isAlive() && thread.getName().startsWith("tile fetcher "));
+    }
+
+    @Test
+    void failedRenderingStopsTheTileFetcher(@TempDir final Path outputDir) throws Exception {
+        // GIVEN
+        final var configuration = Configuration.createBuilder()
+                .addTrackConfiguration(TrackConfiguration.createBuilder()
+                        .inputGpx(new File("src/test/resources/gpx/bikeride.gpx"))
+                        .build())
+                .output(outputDir.resolve("f%05d.png").toFile())
+                .width(600)
+                .totalTime(4_000L)
+                .fps(10)
+                .tmsUrlTemplate("http://127.0.0.1:" + server.getAddress().getPort() + "/{zoom}/{x}/{y}.png")
+                .build();
+        final var renderer = new Renderer(configuration);
+
+        // WHEN
+        final var exception = assertThrows(UserException.class, () -> renderer.render(new RenderingContext() {
+            @Override
+            public void setProgress1(final int pct, final String message) { }
+
+            @Override
+            public boolean isCancelled1() {
+                return false;
+            }
+        }));
+
+        // THEN
+        assertTrue(exception.getMessage().contains("404"), exception.getMessage());
+        assertTrue(requests.get() > 0);
+        for (var wait = 0; wait < 100 && isTileFetcherRunning(); wait++) {
+            Thread.sleep(100);
+        }
+        assertFalse(isTileFetcherRunning());
+    }
+
+}
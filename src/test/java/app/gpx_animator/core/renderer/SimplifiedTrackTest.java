@@ -0,0 +1,50 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.TrackStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimplifiedTrackTest {
+
+    @Test
+    void skipsPointsOnTheLine() {
+        // GIVEN
+        final var builder = TrackStore.createBuilder();
+        for (var i = 0; i <= 1_000; i++) {
+            // ten points per pixel, along a straight line and back with a little noise
+            final var x = i <= 500 ? i / 10.0 : (1_000 - i) / 10.0;
+            final var y = i <= 500 ? (i % 2) * 0.05 : 10 + (i % 2) * 0.05;
+            builder.add(i, x, y, 0, 0, null, null);
+        }
+        final var trackStore = builder.build();
+
+        // WHEN
+        final var simplifiedTrack = new SimplifiedTrack(trackStore, 0.1);
+
+        // THEN
+        assertEquals(4, simplifiedTrack.size());
+        assertEquals(500, simplifiedTrack.nextIndex(0, 1_000));
+        assertEquals(501, simplifiedTrack.nextIndex(500, 1_000));
+        assertEquals(1_000, simplifiedTrack.nextIndex(501, 1_000));
+        assertEquals(1_001, simplifiedTrack.nextIndex(1_000, 1_000));
+    }
+
+    @Test
+    void alwaysDrawsTheLastPoint() {
+        // GIVEN
+        final var builder = TrackStore.createBuilder();
+        for (var i = 0; i <= 100; i++) {
+            builder.add(i, i, 0, 0, 0, null, null);
+        }
+        final var simplifiedTrack = new SimplifiedTrack(builder.build(), 0.1);
+
+        // WHEN
+        final var next = simplifiedTrack.nextIndex(10, 42);
+
+        // THEN
+        assertEquals(2, simplifiedTrack.size());
+        assertEquals(42, next);
+        assertEquals(43, simplifiedTrack.nextIndex(42, 42));
+    }
+}
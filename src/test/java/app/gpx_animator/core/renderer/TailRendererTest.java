@@ -0,0 +1,91 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.data.TrackStore;
+import app.gpx_animator.core.util.LinearInterpolation;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TailRendererTest {
+
+    private static final Color TRACK_COLOR = new Color(0, 0, 200);
+    private static final Color TAIL_COLOR = new Color(255, 200, 0);
+
+    private final TailRenderer tailRenderer = new TailRenderer(TrackConfiguration.createBuilder().color(TRACK_COLOR).build(), TAIL_COLOR);
+
+    @Test
+    void rampFadesFromTheTrackColorToTheTailColor() {
+        // WHEN
+        final var first = tailRenderer.getColor(Float.MIN_VALUE);
+        final var last = tailRenderer.getColor(1f);
+
+        // THEN
+        assertEquals(TAIL_COLOR, last);
+        assertEquals(TRACK_COLOR.getRed(), first.getRed(), 1);
+        assertEquals(TRACK_COLOR.getGreen(), first.getGreen(), 1);
+        assertEquals(TRACK_COLOR.getBlue(), first.getBlue(), 1);
+        assertNull(tailRenderer.getColor(0f));
+        assertNull(tailRenderer.getColor(-0.5f));
+        assertNull(tailRenderer.getColor(Float.NaN));
+    }
+
+    @Test
+    void rampHasOneSharedColorPerStep() {
+        // GIVEN
+        final var colors = Collections.newSetFromMap(new IdentityHashMap<Color, Boolean>());
+
+        // WHEN
+        for (var i = 1; i <= 10_000; i++) {
+            colors.add(tailRenderer.getColor(i / 10_000f));
+        }
+
+        // THEN
+        assertEquals(TailRenderer.RAMP_STEPS, colors.size());
+        assertSame(tailRenderer.getColor(0.5f), tailRenderer.getColor(0.5f + 0.4f / TailRenderer.RAMP_STEPS));
+    }
+
+    @Test
+    void tailIsCutAtTheSegmentBoundaries() {
+        // GIVEN
+        final var builder = TrackStore.createBuilder();
+        for (var i = 0; i <= 10; i++) {
+            // a zigzag line, so no point is simplified away
+            builder.add(i * 1_000L, i * 10.0, (i % 2) * 10.0, 0, 0, null, null);
+        }
+        final var trackStore = builder.build();
+        final var simplifiedTrack = new SimplifiedTrack(trackStore, 0.1);
+        final var interpolation = new LinearInterpolation(trackStore);
+        final var image = new BufferedImage(120, 20, BufferedImage.TYPE_INT_RGB);
+        final var g2 = image.createGraphics();
+        g2.setStroke(tailRenderer.getStroke(false));
+
+        // WHEN
+        final var between = tailRenderer.draw(g2, trackStore, simplifiedTrack, interpolation.createCursor(), interpolation.createCursor(),
+                2_500, 7_500, false, new Path2D.Double(), new Point2D.Double());
+        final var firstSegment = image.getRGB(27, 7);
+        final var lastSegment = image.getRGB(72, 8);
+        final var onPoints = tailRenderer.draw(g2, trackStore, simplifiedTrack, interpolation.createCursor(), interpolation.createCursor(),
+                2_000, 8_000, false, new Path2D.Double(), new Point2D.Double());
+
+        // THEN
+        assertEquals(25.0, between.getMinX(), 1e-9);
+        assertEquals(75.0, between.getMaxX(), 1e-9);
+        assertEquals(20.0, onPoints.getMinX(), 1e-9);
+        assertEquals(80.0, onPoints.getMaxX(), 1e-9);
+        // a segment gets the color of its end in the tail
+        assertEquals(tailRenderer.getColor(0.1f).getRGB(), firstSegment);
+        assertEquals(TAIL_COLOR.getRGB(), lastSegment);
+        g2.dispose();
+    }
+
+}
@@ -0,0 +1,111 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import app.gpx_animator.core.renderer.plugins.RendererPlugin;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TrackLayerTest {
+
+    private static final Rectangle VIEWPORT = new Rectangle(20, 10, 100, 80);
+
+    private static final class BadgePlugin implements RendererPlugin {
+        @Override
+        public Rectangle renderFrameRegion(final int frame, final Point2D marker, final BufferedImage image) {
+            final var badge = new Rectangle(5 + frame, 60, 12, 8);
+            final var g2 = image.createGraphics();
+            g2.setColor(Color.YELLOW);
+            g2.fill(badge);
+            g2.dispose();
+            return badge;
+        }
+    }
+
+    private static final class LegacyPlugin implements RendererPlugin {
+        @Override
+        public void renderFrame(final int frame, final Point2D marker, final BufferedImage image) {
+            image.setRGB(90 - frame, 5, Color.MAGENTA.getRGB());
+        }
+    }
+
+    private final ImageCanvas canvas = new ImageCanvas(new BufferedImage(200, 150, BufferedImage.TYPE_3BYTE_BGR));
+    private final TrackLayer trackLayer = new TrackLayer(canvas, new FrameBufferPool());
+
+    private void drawSegment(final int frame) {
+        trackLayer.commit(canvas.draw(g2 -> {
+            final var segment = new Rectangle(30 + frame * 7, 40, 6, 3);
+            g2.setColor(Color.RED);
+            g2.fill(segment);
+            return segment;
+        }));
+    }
+
+    private static void drawOverlay(final FrameLayer frameLayer, final int frame) throws Exception {
+        final var g2 = frameLayer.createGraphics();
+        final var tail = new Rectangle(25 + frame * 3, 20, 9, 9);
+        g2.setColor(Color.GREEN);
+        g2.fill(tail);
+        g2.dispose();
+        frameLayer.markDirty(tail);
+
+        for (final var plugin : new RendererPlugin[] {new BadgePlugin(), new LegacyPlugin()}) {
+            frameLayer.markImageDirty(plugin.renderFrameRegion(frame, null, frameLayer.getImage()));
+        }
+    }
+
+    private static void assertSameImage(final BufferedImage expected, final BufferedImage actual) {
+        for (var y = 0; y < expected.getHeight(); y++) {
+            for (var x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void restoredFrameLayerMatchesFreshCopy() throws Exception {
+        // GIVEN
+        canvas.fill(Color.BLUE);
+        trackLayer.commit(null);
+        final var frameLayer = trackLayer.createFrameLayer(VIEWPORT);
+
+        for (var frame = 1; frame <= 5; frame++) {
+            drawOverlay(frameLayer, frame);
+            drawSegment(frame);
+            assertNotEquals(trackLayer.getRevision(), frameLayer.getRevision());
+
+            // WHEN
+            trackLayer.restore(frameLayer, VIEWPORT);
+
+            // THEN
+            assertEquals(trackLayer.getRevision(), frameLayer.getRevision());
+            assertSameImage(trackLayer.createFrameLayer(VIEWPORT).getImage(), frameLayer.getImage());
+        }
+    }
+
+    @Test
+    void movedFrameLayerMatchesFreshCopy() throws Exception {
+        // GIVEN
+        canvas.fill(Color.BLUE);
+        final var frameLayer = trackLayer.createFrameLayer(VIEWPORT);
+        drawOverlay(frameLayer, 1);
+        drawSegment(1);
+        final var moved = new Rectangle(VIEWPORT.x + 13, VIEWPORT.y + 4, VIEWPORT.width, VIEWPORT.height);
+
+        // WHEN
+        trackLayer.restore(frameLayer, moved);
+
+        // THEN
+        assertEquals(moved, frameLayer.getArea());
+        assertEquals(trackLayer.getRevision(), frameLayer.getRevision());
+        assertSameImage(trackLayer.createFrameLayer(moved).getImage(), frameLayer.getImage());
+    }
+
+}
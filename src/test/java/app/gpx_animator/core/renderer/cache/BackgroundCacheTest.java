@@ -0,0 +1,100 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.renderer.canvas.Canvas;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import app.gpx_animator.core.renderer.canvas.TiledCanvas;
+import app.gpx_animator.core.renderer.plugins.RendererPlugin;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundCacheTest {
+
+    private static final int WIDTH = 700;
+    private static final int HEIGHT = 600;
+
+    private static RendererPlugin plugin(final String description) {
+        return new RendererPlugin() {
+            @Override
+            public String getBackgroundDescription() {
+                return description;
+            }
+        };
+    }
+
+    private static int[] pixels(final Canvas canvas) {
+        final var image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        canvas.copyTo(new Rectangle(0, 0, WIDTH, HEIGHT), image, 0, 0);
+        return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+
+    @Test
+    void loadsTheStoredBackground(@TempDir final Path cacheDir) throws IOException {
+        // GIVEN
+        final var rendered = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+        rendered.draw(g2 -> {
+            g2.setPaint(new GradientPaint(0, 0, Color.ORANGE, WIDTH, HEIGHT, Color.BLUE));
+            g2.fillRect(0, 0, WIDTH, HEIGHT);
+            return new Rectangle(0, 0, WIDTH, HEIGHT);
+        });
+        final var plugins = List.of(plugin("map=1"));
+
+        // WHEN
+        BackgroundCache.of(cacheDir, Long.MAX_VALUE, rendered, plugins).save(rendered, 1_000);
+        try (var loaded = new TiledCanvas(WIDTH, HEIGHT, 0, null)) {
+            final var found = BackgroundCache.of(cacheDir, Long.MAX_VALUE, loaded, plugins).load(loaded);
+
+            // THEN
+            assertTrue(found);
+            assertArrayEquals(pixels(rendered), pixels(loaded));
+        }
+    }
+
+    @Test
+    void storesOnlyBackgroundsWhichAreSlowToRender(@TempDir final Path cacheDir) {
+        // GIVEN
+        final var canvas = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+        final var fast = BackgroundCache.of(cacheDir, Long.MAX_VALUE, canvas, List.of(plugin("color=1")));
+        final var slow = BackgroundCache.of(cacheDir, Long.MAX_VALUE, canvas, List.of(plugin("color=2")));
+
+        // WHEN
+        fast.save(canvas, 1);
+        slow.save(canvas, 1_000);
+
+        // THEN
+        assertNotEquals(fast.getFile(), slow.getFile());
+        assertFalse(Files.exists(fast.getFile()));
+        assertTrue(Files.exists(slow.getFile()));
+        assertFalse(BackgroundCache.of(cacheDir, -1, canvas, List.of(plugin("color=2"))).load(canvas));
+    }
+
+    @Test
+    void skipsBackgroundsWhichAreNotDescribed(@TempDir final Path cacheDir) {
+        // GIVEN
+        final var canvas = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+
+        // WHEN
+        final var described = BackgroundCache.of(cacheDir, Long.MAX_VALUE, canvas, List.of(plugin("color=1"), plugin("")));
+        final var undescribed = BackgroundCache.of(cacheDir, Long.MAX_VALUE, canvas, List.of(plugin("color=1"), new RendererPlugin() { }));
+
+        // THEN
+        assertNotNull(described);
+        assertNull(undescribed);
+    }
+
+}
@@ -0,0 +1,58 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MemoryTileCacheTest {
+
+    // 256 x 256 pixels with 4 bytes each
+    private static final long TILE_BYTES = 256 * 256 * 4;
+
+    private static BufferedImage createTile() {
+        return new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedTiles() {
+        // GIVEN
+        final var cache = new MemoryTileCache(2 * TILE_BYTES);
+        final var tile1 = createTile();
+        final var tile2 = createTile();
+        cache.put("1", tile1);
+        cache.put("2", tile2);
+
+        // WHEN
+        assertSame(tile1, cache.get("1", Long.MAX_VALUE));
+        cache.put("3", createTile());
+
+        // THEN
+        assertSame(tile1, cache.get("1", Long.MAX_VALUE));
+        assertNull(cache.get("2", Long.MAX_VALUE));
+        assertEquals(2 * TILE_BYTES, cache.getBytes());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void ignoresTooOldAndTooBigTiles() {
+        // GIVEN
+        final var cache = new MemoryTileCache(TILE_BYTES);
+
+        // WHEN
+        cache.put("1", createTile());
+        cache.put("big", new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB));
+
+        // THEN
+        assertNull(cache.get("big", Long.MAX_VALUE));
+        assertNull(cache.get("1", -1));
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.getEvictions());
+    }
+
+}
@@ -0,0 +1,127 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheIndexTest {
+
+    private static String hash(final char c) {
+        return String.valueOf(c).repeat(64);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedTiles(@TempDir final Path cacheDir) {
+        // GIVEN
+        final var index = TileCacheIndex.open(cacheDir);
+        index.put(hash('a'), 100, 1_000, false);
+        index.put(hash('b'), 100, 1_000, false);
+        index.put(hash('c'), 100, 1_000, false);
+
+        // WHEN
+        assertNotNull(index.getFetched(hash('a')));
+        final var evicted = index.evict(200);
+
+        // THEN
+        assertEquals(List.of(hash('b')), evicted);
+        assertEquals(200, index.getSize());
+        assertNull(index.getFetched(hash('b')));
+        assertEquals(cacheDir.resolve("aa").resolve(hash('a') + ".gpxac.tile"), index.getTileFile(hash('a')));
+    }
+
+    @Test
+    void expiresOnlyTilesWhichCantBeRevalidated(@TempDir final Path cacheDir) {
+        // GIVEN
+        final var index = TileCacheIndex.open(cacheDir);
+        final var now = System.currentTimeMillis();
+        index.put(hash('a'), 100, now - 10_000, false);
+        index.put(hash('b'), 100, now - 10_000, true);
+        index.put(hash('c'), 100, now, false);
+
+        // WHEN
+        final var expired = index.expire(5_000, true);
+
+        // THEN
+        assertEquals(List.of(hash('a')), expired);
+        assertEquals(2, index.getTileCount());
+        assertEquals(200, index.getSize());
+    }
+
+    @Test
+    void savesAndLoadsTheIndex(@TempDir final Path cacheDir) throws IOException {
+        // GIVEN
+        final var index = TileCacheIndex.open(cacheDir);
+        index.put(hash('1'), 100, 1_000, false);
+        index.put(hash('2'), 200, 2_000, true);
+        index.put(hash('3'), 300, 3_000, false);
+        index.getFetched(hash('1'));
+
+        // WHEN
+        index.save();
+        final var loaded = TileCacheIndex.open(cacheDir);
+
+        // THEN
+        assertEquals(600, loaded.getSize());
+        assertEquals(2_000L, loaded.getFetched(hash('2')));
+        assertEquals(List.of(hash('3')), loaded.evict(500));
+    }
+
+    @Test
+    void mergesTheIndexOfAnotherProcess(@TempDir final Path cacheDir) throws IOException {
+        // GIVEN
+        final var first = TileCacheIndex.open(cacheDir);
+        first.put(hash('1'), 100, 1_000, false);
+        first.put(hash('2'), 200, 2_000, false);
+        first.save();
+        final var second = TileCacheIndex.open(cacheDir);
+
+        // WHEN
+        first.put(hash('3'), 300, 3_000, false);
+        first.remove(hash('1'));
+        first.save();
+        second.put(hash('4'), 400, 4_000, false);
+        second.save();
+
+        // THEN
+        assertEquals(900, second.getSize());
+        assertNull(second.getFetched(hash('1')));
+        assertEquals(3_000L, second.getFetched(hash('3')));
+        first.sync();
+        assertEquals(second.getSize(), first.getSize());
+        assertEquals(4_000L, first.getFetched(hash('4')));
+    }
+
+    @Test
+    void rebuildsTheIndexFromTheFiles(@TempDir final Path cacheDir) throws IOException {
+        // GIVEN
+        Files.write(cacheDir.resolve(hash('a') + ".gpxac.tile"), new byte[10]);
+        Files.writeString(cacheDir.resolve(hash('a') + ".gpxac.meta"), "etag=\"1\"\n");
+        Files.createDirectories(cacheDir.resolve("bb"));
+        Files.write(cacheDir.resolve("bb").resolve(hash('b') + ".gpxac.tile"), new byte[20]);
+        Files.write(cacheDir.resolve(hash('c') + ".gpxac.png"), new byte[30]);
+        Files.write(cacheDir.resolve("readme.txt"), new byte[40]);
+
+        // WHEN
+        final var index = TileCacheIndex.open(cacheDir);
+
+        // THEN
+        assertEquals(2, index.getTileCount());
+        assertEquals(10 + 9 + 20, index.getSize());
+        assertTrue(Files.isRegularFile(index.getTileFile(hash('a'))));
+        assertTrue(Files.isRegularFile(index.getMetadataFile(hash('a'))));
+        assertFalse(Files.exists(cacheDir.resolve(hash('c') + ".gpxac.png")));
+        assertTrue(Files.exists(cacheDir.resolve("readme.txt")));
+        assertEquals(List.of(hash('b')), index.expire(-1, true));
+    }
+
+}
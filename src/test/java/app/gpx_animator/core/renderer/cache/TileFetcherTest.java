@@ -0,0 +1,259 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileFetcherTest {
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private byte[] png;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicReference<String> userAgent = new AtomicReference<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        MemoryTileCache.getShared().clear();
+
+        final var out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB), "png", out);
+        png = out.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        userAgent.set(exchange.getRequestHeaders().getFirst("User-Agent"));
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(20);
+            if (failures.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+            } else if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, png.length);
+                exchange.getResponseBody().write(png);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private TileFetcher createFetcher(final String path, final int connectionsPerHost) {
+        final var template = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        return new TileFetcher(template, "key", "test agent", connectionsPerHost, "", null, 1);
+    }
+
+    @Test
+    void fetchesTileWithUserAgent() throws Exception {
+        // GIVEN
+        try (var fetcher = createFetcher("/{zoom}/{x}/{y}.png?key={apikey}", 2)) {
+
+            // WHEN
+            final var tile = fetcher.fetch(new TileKey(3, 4, 5)).get();
+
+            // THEN
+            assertEquals(256, tile.getWidth());
+            assertEquals("test agent", userAgent.get());
+            assertEquals("http://127.0.0.1:" + server.getAddress().getPort() + "/3/4/5.png?key=key",
+                    fetcher.getUrl(new TileKey(3, 4, 5)));
+        }
+    }
+
+    @Test
+    void retriesTemporaryErrors() throws Exception {
+        // GIVEN
+        failures.set(2);
+        try (var fetcher = createFetcher("/{zoom}/{x}/{y}.png", 2)) {
+
+            // WHEN
+            final var tile = fetcher.fetch(new TileKey(1, 0, 0)).get();
+
+            // THEN
+            assertEquals(256, tile.getHeight());
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void failsOnMissingTile() {
+        // GIVEN
+        try (var fetcher = createFetcher("/{zoom}/{x}/{y}.png", 2)) {
+            server.removeContext("/");
+            server.createContext("/", exchange -> {
+                requests.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            });
+
+            // WHEN
+            final var future = fetcher.fetch(new TileKey(1, 0, 0));
+
+            // THEN
+            final var exception = assertThrows(ExecutionException.class, future::get);
+            assertTrue(exception.getCause() instanceof UserException);
+            assertEquals(1, requests.get());
+        }
+    }
+
+    @Test
+    void revalidatesExpiredTiles(@TempDir final Path cacheDir) throws Exception {
+        // GIVEN
+        final var template = "http://127.0.0.1:" + server.getAddress().getPort() + "/{zoom}/{x}/{y}.png";
+        try (var fetcher = new TileFetcher(template, null, null, 2, cacheDir.toString(), -1L, 1)) {
+
+            // WHEN
+            fetcher.fetch(new TileKey(2, 1, 1)).get();
+            final var tile = fetcher.fetch(new TileKey(2, 1, 1)).get();
+
+            // THEN
+            assertEquals(256, tile.getWidth());
+            assertEquals(2, requests.get());
+            assertEquals(1, notModified.get());
+            try (var files = Files.walk(cacheDir)) {
+                final var tileFile = files.filter(file -> file.toString().endsWith(".gpxac.tile")).findFirst().orElseThrow();
+                assertArrayEquals(png, Files.readAllBytes(tileFile));
+            }
+        }
+    }
+
+    @Test
+    void prefetchesOnlyMissingTiles(@TempDir final Path cacheDir) throws Exception {
+        // GIVEN
+        final var template = "http://127.0.0.1:" + server.getAddress().getPort() + "/{zoom}/{x}/{y}.png";
+        try (var fetcher = new TileFetcher(template, null, null, 2, cacheDir.toString(), Long.MAX_VALUE, 1)) {
+
+            // WHEN
+            final var first = fetcher.prefetch(new TileKey(4, 2, 3)).get();
+            final var second = fetcher.prefetch(new TileKey(4, 2, 3)).get();
+
+            // THEN
+            assertTrue(first);
+            assertFalse(second);
+            assertEquals(1, requests.get());
+            assertEquals(0, MemoryTileCache.getShared().getBytes());
+        }
+    }
+
+    @Test
+    void downloadsTileNeededTwiceOnlyOnce(@TempDir final Path cacheDir) throws Exception {
+        // GIVEN
+        final var template = "http://127.0.0.1:" + server.getAddress().getPort() + "/{zoom}/{x}/{y}.png";
+        try (var first = new TileFetcher(template, null, null, 2, cacheDir.toString(), Long.MAX_VALUE, 1);
+             var second = new TileFetcher(template, null, null, 2, cacheDir.toString(), Long.MAX_VALUE, 1)) {
+
+            // WHEN
+            final var futures = new ArrayList<CompletableFuture<BufferedImage>>();
+            for (var i = 0; i < 4; i++) {
+                futures.add(first.fetch(new TileKey(6, 7, 8)));
+                futures.add(second.fetch(new TileKey(6, 7, 8)));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+
+            // THEN
+            assertEquals(1, requests.get());
+        }
+    }
+
+    @Test
+    void retriesFailingTileNeededTwiceOnlyOnce(@TempDir final Path cacheDir) {
+        // GIVEN
+        failures.set(Integer.MAX_VALUE);
+        final var template = "http://127.0.0.1:" + server.getAddress().getPort() + "/{zoom}/{x}/{y}.png";
+        try (var fetcher = new TileFetcher(template, null, null, 4, cacheDir.toString(), Long.MAX_VALUE, 1)) {
+
+            // WHEN
+            final var futures = new ArrayList<CompletableFuture<BufferedImage>>();
+            for (var i = 0; i < 4; i++) {
+                futures.add(fetcher.fetch(new TileKey(6, 7, 9)));
+            }
+
+            // THEN
+            for (final var future : futures) {
+                final var exception = assertThrows(ExecutionException.class, future::get);
+                assertTrue(exception.getCause() instanceof UserException);
+            }
+            assertEquals(4, requests.get());
+        }
+    }
+
+    @Test
+    void limitsConnectionsPerHost() throws Exception {
+        // GIVEN
+        try (var fetcher = createFetcher("/{zoom}/{x}/{y}.png", 3)) {
+
+            // WHEN
+            final var futures = new ArrayList<CompletableFuture<BufferedImage>>();
+            for (var x = 0; x < 24; x++) {
+                futures.add(fetcher.fetch(new TileKey(5, x, 0)));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+
+            // THEN
+            assertEquals(24, requests.get());
+            assertTrue(maxRunning.get() <= 3, "at most 3 parallel downloads, but was " + maxRunning.get());
+            assertTrue(maxRunning.get() > 1, "downloads in parallel");
+        }
+    }
+
+    @Test
+    void switchesSubdomainsByTilePosition() {
+        // GIVEN
+        try (var fetcher = new TileFetcher("https://{switch:a,b,c}.tile.example/{zoom}/{x}/{y}.png", null, null, 2, "", null)) {
+
+            // WHEN / THEN
+            assertEquals("https://a.tile.example/2/0/0.png", fetcher.getUrl(new TileKey(2, 0, 0)));
+            assertEquals("https://b.tile.example/2/1/0.png", fetcher.getUrl(new TileKey(2, 1, 0)));
+            assertEquals("https://c.tile.example/2/1/1.png", fetcher.getUrl(new TileKey(2, 1, 1)));
+            assertEquals(fetcher.getUrl(new TileKey(2, 1, 1)), fetcher.getUrl(new TileKey(2, 1, 1)));
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TilePackTest {
+
+    private static final String OSM = "https://tile.openstreetmap.org/{zoom}/{x}/{y}.png";
+    private static final String TOPO = "https://{switch:a,b,c}.tile.opentopomap.org/{zoom}/{x}/{y}.png";
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+        final var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void findsPackedTiles(@TempDir final Path dir) throws IOException {
+        // GIVEN
+        final var tiles = new ArrayList<TilePack.PackedTile>();
+        for (var x = 10; x >= 0; x--) {
+            for (final var template : new String[] {OSM, TOPO}) {
+                final var file = dir.resolve(x + "-" + template.length() + ".png");
+                Files.writeString(file, template + " " + x);
+                tiles.add(new TilePack.PackedTile(TilePack.getTemplateHash(template), new TileKey(7, x, 3), file));
+            }
+        }
+        final var packFile = dir.resolve("tiles" + TilePack.FILE_EXTENSION);
+
+        // WHEN
+        TilePack.write(packFile, tiles);
+
+        // THEN
+        try (var tilePack = TilePack.open(packFile)) {
+            assertEquals(22, tilePack.getTileCount());
+            for (var x = 0; x <= 10; x++) {
+                assertEquals(OSM + " " + x, new String(toBytes(tilePack.getTile(TilePack.getTemplateHash(OSM), new TileKey(7, x, 3)))));
+                assertEquals(TOPO + " " + x, new String(toBytes(tilePack.getTile(TilePack.getTemplateHash(TOPO), new TileKey(7, x, 3)))));
+            }
+            assertNull(tilePack.getTile(TilePack.getTemplateHash(OSM), new TileKey(7, 11, 3)));
+            assertNull(tilePack.getTile(TilePack.getTemplateHash(OSM), new TileKey(8, 0, 3)));
+            assertNull(tilePack.getTile(TilePack.getTemplateHash("https://other/{zoom}/{x}/{y}.png"), new TileKey(7, 0, 3)));
+        }
+        assertNotEquals(TilePack.getTemplateHash(OSM), TilePack.getTemplateHash(TOPO));
+    }
+
+    @Test
+    void rejectsOtherFiles(@TempDir final Path dir) throws IOException {
+        // GIVEN
+        final var file = dir.resolve("other" + TilePack.FILE_EXTENSION);
+        Files.write(file, new byte[64]);
+
+        // WHEN / THEN
+        assertThrows(IOException.class, () -> TilePack.open(file));
+    }
+
+    @Test
+    void rejectsBrokenPacks(@TempDir final Path dir) throws IOException {
+        // GIVEN
+        final var tileFile = dir.resolve("tile.png");
+        Files.writeString(tileFile, "tile");
+        final var packFile = dir.resolve("tiles" + TilePack.FILE_EXTENSION);
+        TilePack.write(packFile, List.of(new TilePack.PackedTile(TilePack.getTemplateHash(OSM), new TileKey(7, 1, 3), tileFile)));
+        final var pack = Files.readAllBytes(packFile);
+
+        final var otherVersion = pack.clone();
+        otherVersion[7]++;
+        final var negativeCount = pack.clone();
+        ByteBuffer.wrap(negativeCount).putInt(pack.length - 8, -1);
+        final var offsetInHeader = pack.clone();
+        ByteBuffer.wrap(offsetInHeader).putLong(pack.length - 16, 0);
+
+        for (final var bytes : List.of(new byte[0], new byte[5], Arrays.copyOf(pack, pack.length - 1), otherVersion,
+                negativeCount, offsetInHeader)) {
+            final var file = dir.resolve("broken" + TilePack.FILE_EXTENSION);
+            Files.write(file, bytes);
+
+            // WHEN / THEN
+            assertThrows(IOException.class, () -> TilePack.open(file));
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static app.gpx_animator.core.util.RenderUtil.setRenderingHints;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TiledCanvasTest {
+
+    private static final int WIDTH = 2_500;
+    private static final int HEIGHT = 1_500;
+
+    private static void drawLines(final Canvas canvas) {
+        canvas.fill(Color.DARK_GRAY);
+        canvas.fill(new Color(0, 0, 255, 64));
+        for (var i = 0; i < 20; i++) {
+            final var line = new Line2D.Double(i * 97.3, 50, WIDTH - i * 61.7, HEIGHT - 50);
+            final var color = new Color(i * 12, 255 - i * 12, 128);
+            canvas.draw(g2 -> {
+                setRenderingHints(g2).setStroke(new BasicStroke(5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2.setPaint(color);
+                g2.draw(line);
+                final var bounds = line.getBounds2D();
+                bounds.add(bounds.getMinX() - 4, bounds.getMinY() - 4);
+                bounds.add(bounds.getMaxX() + 4, bounds.getMaxY() + 4);
+                return bounds;
+            });
+        }
+    }
+
+    private static void assertSameArea(final Canvas expected, final Canvas actual, final Rectangle area) {
+        final var expectedImage = new BufferedImage(area.width, area.height, BufferedImage.TYPE_3BYTE_BGR);
+        final var actualImage = new BufferedImage(area.width, area.height, BufferedImage.TYPE_3BYTE_BGR);
+        expected.copyTo(area, expectedImage, 0, 0);
+        actual.copyTo(area, actualImage, 0, 0);
+        assertArrayEquals(expectedImage.getRGB(0, 0, area.width, area.height, null, 0, area.width),
+                actualImage.getRGB(0, 0, area.width, area.height, null, 0, area.width));
+    }
+
+    @Test
+    void drawsLikeAnImage() throws IOException {
+        // GIVEN
+        final var imageCanvas = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+        try (var tiledCanvas = new TiledCanvas(WIDTH, HEIGHT, 0, null)) {
+
+            // WHEN
+            drawLines(imageCanvas);
+            drawLines(tiledCanvas);
+
+            // THEN
+            assertSameArea(imageCanvas, tiledCanvas, new Rectangle(0, 0, WIDTH, HEIGHT));
+            assertSameArea(imageCanvas, tiledCanvas, new Rectangle(900, 1_000, 300, 200));
+        }
+    }
+
+    @Test
+    void spillsTilesToFile(@TempDir final Path tempDir) throws IOException {
+        // GIVEN
+        final var spillFile = tempDir.resolve("canvas.tmp");
+        final var imageCanvas = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+        try (var tiledCanvas = new TiledCanvas(WIDTH, HEIGHT, 2, spillFile)) {
+
+            // WHEN
+            drawLines(imageCanvas);
+            drawLines(tiledCanvas);
+
+            // THEN
+            assertEquals(2, tiledCanvas.getResidentTiles());
+            assertSameArea(imageCanvas, tiledCanvas, new Rectangle(0, 0, WIDTH, HEIGHT));
+            assertSameArea(imageCanvas, tiledCanvas, new Rectangle(-100, 1_000, 2_700, 700));
+        }
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void writesPixelsLikeAnImage() throws IOException {
+        // GIVEN
+        final var imageCanvas = new ImageCanvas(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+        final Canvas.PixelWriter writer = (pixels, offset, scanlineStride, part) -> {
+            for (var y = 0; y < part.height; y++) {
+                for (var x = 0; x < part.width; x++) {
+                    final var index = offset + y * scanlineStride + x * 3;
+                    pixels[index] = (byte) (part.x + x);
+                    pixels[index + 1] = (byte) (part.y + y);
+                    pixels[index + 2] = (byte) (part.x + x + part.y + y);
+                }
+            }
+        };
+        try (var tiledCanvas = new TiledCanvas(WIDTH, HEIGHT, 0, null)) {
+
+            // WHEN
+            drawLines(imageCanvas);
+            drawLines(tiledCanvas);
+            imageCanvas.write(new Rectangle(700, 900, 1_000, 800), writer);
+            tiledCanvas.write(new Rectangle(700, 900, 1_000, 800), writer);
+
+            // THEN
+            assertSameArea(imageCanvas, tiledCanvas, new Rectangle(0, 0, WIDTH, HEIGHT));
+        }
+    }
+}
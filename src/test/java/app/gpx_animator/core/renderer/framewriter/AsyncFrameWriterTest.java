@@ -0,0 +1,131 @@
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.FrameBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncFrameWriterTest {
+
+    @Test
+    void framesAreWrittenInOrder() throws UserException {
+        // GIVEN
+        final List<Integer> written = new ArrayList<>();
+        final var asyncFrameWriter = new AsyncFrameWriter(new FrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) {
+                written.add(bi.getRGB(0, 0) & 0xFF);
+            }
+
+            @Override
+            public void close() {
+                written.add(-1);
+            }
+        }, new FrameBufferPool(), 2);
+        final var image = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+
+        // WHEN
+        for (var frame = 0; frame < 100; frame++) {
+            image.setRGB(0, 0, frame);
+            asyncFrameWriter.addFrame(image);
+        }
+        asyncFrameWriter.close();
+
+        // THEN
+        assertEquals(101, written.size());
+        for (var frame = 0; frame < 100; frame++) {
+            assertEquals(frame, written.get(frame));
+        }
+        assertEquals(-1, written.get(100));
+    }
+
+    @Test
+    @SuppressWarnings("HardCodedStringLiteral")
+    void errorsArePropagated() throws UserException {
+        // GIVEN
+        final var asyncFrameWriter = new AsyncFrameWriter(new FrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) throws UserException {
+                throw new UserException("encoder failed");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, new FrameBufferPool(), 2);
+        final var image = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+        asyncFrameWriter.addFrame(image);
+
+        // WHEN
+        final var exception = assertThrows(RuntimeException.class, asyncFrameWriter::close);
+
+        // THEN
+        assertTrue(exception.getCause() instanceof UserException);
+        assertEquals("encoder failed", exception.getCause().getMessage());
+        assertThrows(UserException.class, () -> asyncFrameWriter.addFrame(image));
+    }
+
+    @Test
+    @SuppressWarnings("HardCodedStringLiteral")
+    void abortDropsQueuedFrames() throws UserException, InterruptedException {
+        // GIVEN
+        final List<Integer> written = new ArrayList<>();
+        final var encoding = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var asyncFrameWriter = new AsyncFrameWriter(new FrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) {
+                encoding.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(bi.getRGB(0, 0) & 0xFF);
+            }
+
+            @Override
+            public void close() {
+                written.add(-1);
+            }
+
+            @Override
+            public void abort() {
+                written.add(-2);
+            }
+        }, new FrameBufferPool(), 4);
+        final var image = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+        for (var frame = 0; frame < 4; frame++) {
+            image.setRGB(0, 0, frame);
+            asyncFrameWriter.addFrame(image);
+        }
+        encoding.await();
+        final var releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+
+        // WHEN
+        asyncFrameWriter.abort();
+        asyncFrameWriter.close();
+
+        // THEN
+        assertEquals(List.of(0, -2), written);
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> "frame-encoder".equals(thread.getName()) && thread.isAlive()));
+        releaser.join();
+    }
+}
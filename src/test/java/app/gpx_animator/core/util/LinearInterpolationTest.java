@@ -0,0 +1,69 @@
+package app.gpx_animator.core.util;
+
+import app.gpx_animator.core.data.TrackStore;
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinearInterpolationTest {
+
+    private static LinearInterpolation createInterpolation() {
+        final var builder = TrackStore.createBuilder();
+        for (var time = 1_000; time <= 100_000; time += 1_000) {
+            builder.add(time, time / 100.0, -time / 100.0, 47.0, 8.0, null, null);
+        }
+        return new LinearInterpolation(builder.build());
+    }
+
+    @Test
+    void interpolatesBetweenPoints() {
+        // GIVEN
+        final var interpolation = createInterpolation();
+        final var target = new Point2D.Double();
+
+        // WHEN
+        final var found = interpolation.getLocationAtTime(1_250, target);
+
+        // THEN
+        assertTrue(found);
+        assertEquals(12.5, target.getX(), 1e-9);
+        assertEquals(-12.5, target.getY(), 1e-9);
+        assertFalse(interpolation.getLocationAtTime(999, target));
+        assertFalse(interpolation.getLocationAtTime(100_001, target));
+        assertNull(interpolation.getPointAtTime(100_001));
+        assertEquals(new Point2D.Double(1_000, -1_000), interpolation.getPointAtTime(100_000));
+    }
+
+    @Test
+    void cursorMatchesRandomAccess() {
+        // GIVEN
+        final var interpolation = createInterpolation();
+        final var cursor = interpolation.createCursor();
+        final var random = new Random(7);
+        final var expected = new Point2D.Double();
+        final var actual = new Point2D.Double();
+
+        // WHEN / THEN
+        var time = 0L;
+        for (var i = 0; i < 2_000; i++) {
+            // mostly forward in small steps, sometimes jumping ahead or back
+            time += random.nextInt(10) == 0 ? random.nextInt(40_000) - 20_000 : random.nextInt(200);
+            final var found = interpolation.getLocationAtTime(time, expected);
+            assertEquals(found, cursor.getLocationAtTime(time, actual));
+            if (found) {
+                assertEquals(expected, actual);
+            }
+            final var point = cursor.getPointAtTime(time);
+            assertEquals(found, point != null);
+            if (found) {
+                assertEquals(expected, new Point2D.Double(point.getX(), point.getY()));
+            }
+        }
+    }
+}
@@ -2,6 +2,11 @@ package app.gpx_animator.core.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -28,4 +33,67 @@ class UtilsTest {
         assertFalse(Utils.isEqual("Александр", "Alexander"));
         assertFalse(Utils.isEqual("凤", "Feng"));
     }
+
+    @Test
+    void deepCopy() {
+        for (final var type : new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            final var image = createRandomImage(type);
+            assertImageEquals(image, Utils.deepCopy(image), new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        }
+    }
+
+    @Test
+    void copySubimage() {
+        final var image = createRandomImage(BufferedImage.TYPE_3BYTE_BGR);
+        final var subimage = image.getSubimage(7, 5, 20, 10);
+        final var copy = new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR);
+        Utils.copy(subimage, copy);
+        assertImageEquals(subimage, copy, new Rectangle(0, 0, 20, 10));
+    }
+
+    @Test
+    void copyArea() {
+        final var image = createRandomImage(BufferedImage.TYPE_3BYTE_BGR);
+        final var copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        final var area = new Rectangle(30, 20, 50, 50);
+        Utils.copy(image, copy, area);
+        assertImageEquals(image, copy, new Rectangle(30, 20, 20, 20));
+        assertEquals(0, copy.getRGB(29, 20) & 0xFFFFFF);
+        assertEquals(0, copy.getRGB(30, 19) & 0xFFFFFF);
+    }
+
+    @Test
+    void copyAreaToOtherLocation() {
+        for (final var type : new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY}) {
+            final var image = createRandomImage(type);
+            final var viewport = new BufferedImage(20, 10, type);
+            Utils.copy(image, new Rectangle(35, 25, 20, 10), viewport, 0, 0);
+            for (var y = 0; y < viewport.getHeight(); y++) {
+                for (var x = 0; x < viewport.getWidth(); x++) {
+                    // the source image is only 50 pixels wide
+                    final var expected = x < 15 ? image.getRGB(35 + x, 25 + y) : 0xFF000000;
+                    assertEquals(expected, viewport.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createRandomImage(final int type) {
+        final var random = new Random(42);
+        final var image = new BufferedImage(50, 40, type);
+        for (var y = 0; y < image.getHeight(); y++) {
+            for (var x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt() | 0xFF000000);
+            }
+        }
+        return image;
+    }
+
+    private static void assertImageEquals(final BufferedImage expected, final BufferedImage actual, final Rectangle area) {
+        for (var y = area.y; y < area.y + area.height; y++) {
+            for (var x = area.x; x < area.x + area.width; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel at %d, %d".formatted(x, y));
+            }
+        }
+    }
 }